@@ -0,0 +1,32 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.jar.JarFile
+
+def jar = new JarFile( new File( basedir, 'library/target/library-1.0-SNAPSHOT.jar' ) )
+try {
+    assert jar.manifest.mainAttributes.getValue( 'Multi-Release' ) == 'true'
+    assert jar.getEntry( 'mr/Feature.class' ) != null
+    assert jar.getEntry( 'META-INF/versions/17/mr/Feature.class' ) != null
+} finally {
+    jar.close()
+}
+
+// The application compiles only if the Java 17 entry of the multi-release JAR file has been selected.
+assert new File( basedir, 'application/target/classes/app/Main.class' ).exists()
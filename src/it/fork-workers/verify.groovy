@@ -0,0 +1,35 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+def logFile = new File( basedir, 'build.log' )
+assert logFile.exists()
+content = logFile.text
+
+// The worker started for the first module is reused for the second module.
+assert 1 == content.count( 'Started a compiler worker with' )
+assert !content.contains( 'Cannot start a compiler worker' )
+assert !content.contains( 'The compiler worker terminated unexpectedly' )
+
+assert new File( basedir, 'first/target/classes/first/Native.class' ).exists()
+assert new File( basedir, 'second/target/classes/second/Caller.class' ).exists()
+
+// The relative path of the `-h` option is resolved against the base directory of each module.
+assert new File( basedir, 'first/target/headers/first_Native.h' ).exists()
+assert new File( basedir, 'second/target/headers/second_Caller.h' ).exists()
+assert !new File( basedir, 'target/headers' ).exists()
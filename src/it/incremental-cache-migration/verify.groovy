@@ -0,0 +1,29 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+def logFile = new File( basedir, 'build.log' )
+assert logFile.exists()
+content = logFile.text
+
+// The cache of the previous release is read. Its hash code of compiler options does not match,
+// which causes a rebuild. A cache file which cannot be read would produce a different message.
+assert !content.contains( 'information about the previous build cannot be read' )
+assert 1 == content.count( 'Recompiling all files because of changes in compiler options.' )
+
+// The cache has been rewritten in the current format by the second build.
+assert 1 == content.count( 'Nothing to compile - all classes are up to date.' )
@@ -0,0 +1,34 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+def logFile = new File( basedir, 'build.log' )
+assert logFile.exists()
+content = logFile.text
+
+// The first build compiles both files, the second build the remaining one.
+assert 1 == content.count( 'Compiling 2 source files:' )
+assert 1 == content.count( 'Compiling 1 source files:' )
+
+// The secondary class `Extra` does not follow the naming convention, but was recorded as an output of Main.
+def classes = new File( basedir, 'target/classes/deleted' )
+assert !new File( classes, 'Main.class' ).exists()
+assert !new File( classes, 'Main$Inner.class' ).exists()
+assert !new File( classes, 'Extra.class' ).exists()
+assert new File( classes, 'MainHelper.class' ).exists()
+assert new File( classes, 'MainHelper$Inner.class' ).exists()
@@ -0,0 +1,35 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+def logFile = new File( basedir, 'build.log' )
+assert logFile.exists()
+content = logFile.text
+
+// Only the module without processor on its class-path is compiled with `-proc:none`.
+assert 1 == content.count( 'Annotation processing disabled because the class-path contains no processor.' )
+assert !new File( basedir, 'plain/target/generated-sources/annotations' ).exists()
+assert new File( basedir, 'plain/target/classes/plain/Plain.class' ).exists()
+
+// The module with the processor JAR on its class-path keeps the default annotation processing of javac,
+// which is to execute the processors found on the class-path before JDK 23.
+assert new File( basedir, 'user/target/generated-sources/annotations' ).isDirectory()
+if ( Runtime.version().feature() < 23 ) {
+    assert new File( basedir, 'user/target/generated-sources/annotations/user/AnnotatedMarked.java' ).exists()
+    assert new File( basedir, 'user/target/classes/user/AnnotatedMarked.class' ).exists()
+}
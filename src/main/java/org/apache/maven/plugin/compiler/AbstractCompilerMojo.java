@@ -18,6 +18,7 @@
  */
 package org.apache.maven.plugin.compiler;
 
+import javax.annotation.processing.Processor;
 import javax.lang.model.SourceVersion;
 import javax.tools.JavaCompiler;
 import javax.tools.JavaFileManager;
@@ -40,9 +41,11 @@ import java.nio.charset.UnsupportedCharsetException;
 import java.nio.file.DirectoryNotEmptyException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.EnumSet;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
@@ -55,7 +58,10 @@ import java.util.jar.Attributes;
 import java.util.jar.JarFile;
 import java.util.jar.Manifest;
 
+import org.apache.maven.api.DependencyCoordinates;
+import org.apache.maven.api.Exclusion;
 import org.apache.maven.api.JavaPathType;
+import org.apache.maven.api.LocalRepository;
 import org.apache.maven.api.PathScope;
 import org.apache.maven.api.PathType;
 import org.apache.maven.api.Project;
@@ -63,16 +69,17 @@ import org.apache.maven.api.ProjectScope;
 import org.apache.maven.api.Session;
 import org.apache.maven.api.Toolchain;
 import org.apache.maven.api.Type;
+import org.apache.maven.api.VersionConstraint;
 import org.apache.maven.api.annotations.Nonnull;
 import org.apache.maven.api.annotations.Nullable;
 import org.apache.maven.api.di.Inject;
+import org.apache.maven.api.model.Build;
 import org.apache.maven.api.plugin.Log;
 import org.apache.maven.api.plugin.Mojo;
 import org.apache.maven.api.plugin.MojoException;
 import org.apache.maven.api.plugin.annotations.Parameter;
 import org.apache.maven.api.services.ArtifactManager;
 import org.apache.maven.api.services.DependencyResolver;
-import org.apache.maven.api.services.DependencyResolverRequest;
 import org.apache.maven.api.services.DependencyResolverResult;
 import org.apache.maven.api.services.MessageBuilder;
 import org.apache.maven.api.services.MessageBuilderFactory;
@@ -111,6 +118,14 @@ public abstract class AbstractCompilerMojo implements Mojo {
      */
     private static final Locale LOCALE = null;
 
+    /**
+     * The kinds of dependencies which do not involve modules. The {@code --release} option is replaced
+     * by equivalent options only if all dependencies are of those kinds.
+     *
+     * @see PlatformModules
+     */
+    private static final Set<PathType> NON_MODULAR_PATHS = Set.of(JavaPathType.CLASSES, JavaPathType.PROCESSOR_CLASSES);
+
     // ----------------------------------------------------------------------
     // Configurables
     // ----------------------------------------------------------------------
@@ -516,7 +531,9 @@ public abstract class AbstractCompilerMojo implements Mojo {
      * recompile source files modified since the last build.
      * In addition, if a source file has been deleted, then all source files are recompiled.
      * This check is based on the modification times of source files
-     * rather than the modification times of the {@code *.class} files.</p>
+     * rather than the modification times of the {@code *.class} files.
+     * The source files which depend on a class whose API changed are also recompiled,
+     * using the dependencies between classes recorded during the previous build.</p>
      *
      * <p><b>{@code classes}:</b>
      * recompile source files ({@code *.java}) associated to no output file ({@code *.class})
@@ -545,8 +562,8 @@ public abstract class AbstractCompilerMojo implements Mojo {
      * This option is mutually exclusive with all other incremental compilation options.</p>
      *
      * <h4>Limitations</h4>
-     * In all cases, the current compiler-plugin does not detect structural changes other than file addition or removal.
-     * For example, the plugin does not detect whether a method has been removed in a class.
+     * Except with {@code sources}, the current compiler-plugin does not detect structural changes other than
+     * file addition or removal. For example, the plugin does not detect whether a method has been removed in a class.
      *
      * @see #staleMillis
      * @see #fileExtensions
@@ -591,6 +608,67 @@ public abstract class AbstractCompilerMojo implements Mojo {
     @Parameter(property = "lastModGranularityMs", defaultValue = "0")
     protected int staleMillis;
 
+    /**
+     * Whether to use a local cache of compilation results shared by all projects of the user.
+     * If {@code true}, the files written by the compiler are saved in the {@link #buildCacheDirectory}
+     * with a key computed from the content of the source files, the compiler options which may affect
+     * the output, the <abbr>API</abbr> of the dependencies, the annotation processors and the compiler version.
+     * When the same inputs are compiled again, for example after switching between branches,
+     * the files are restored from the cache instead of being compiled.
+     *
+     * <p>The cache is used only when all source files are compiled by the in-process compiler,
+     * with incremental compilation enabled. It is not used if {@link #fork} is {@code true}.</p>
+     *
+     * @see #buildCacheDirectory
+     * @see #buildCacheSize
+     * @since 4.0.0
+     */
+    @Parameter(property = "maven.compiler.buildCache", defaultValue = "false")
+    protected boolean useBuildCache;
+
+    /**
+     * Root directory of the local cache of compilation results.
+     *
+     * @see #useBuildCache
+     * @since 4.0.0
+     */
+    @Parameter(property = "maven.compiler.buildCacheDirectory", defaultValue = "${user.home}/.m2/compiler-cache")
+    protected Path buildCacheDirectory;
+
+    /**
+     * Maximal size, in megabytes, of the local cache of compilation results.
+     * When this size is exceeded, the least recently used results are deleted.
+     *
+     * @see #useBuildCache
+     * @since 4.0.0
+     */
+    @Parameter(property = "maven.compiler.buildCacheSize", defaultValue = "1024")
+    protected long buildCacheSize;
+
+    /**
+     * Base URL of a remote cache of compilation results shared by many machines, or {@code null} if none.
+     * When a result is not found in the local cache, it is downloaded from {@code <url>/<key>.zip} with
+     * a {@code GET} request. New results are uploaded to the same address with a {@code PUT} request.
+     * If the server is slow or unreachable, a warning is logged and the compilation continues normally.
+     * The server is then no longer contacted by the other modules of the same build.
+     *
+     * @see #useBuildCache
+     * @see #buildCacheTimeout
+     * @since 4.0.0
+     */
+    @Parameter(property = "maven.compiler.buildCacheUrl")
+    protected String buildCacheUrl;
+
+    /**
+     * Maximal time, in milliseconds, to wait for the remote cache of compilation results for each request.
+     * This time includes the transfer of the compilation results.
+     *
+     * @see #buildCacheUrl
+     * @since 4.0.0
+     */
+    @Parameter(property = "maven.compiler.buildCacheTimeout", defaultValue = "5000")
+    protected int buildCacheTimeout;
+
     /**
      * Allows running the compiler in a separate process.
      * If {@code false}, the plugin uses the built-in compiler, while if {@code true} it will use an executable.
@@ -686,32 +764,33 @@ public abstract class AbstractCompilerMojo implements Mojo {
     protected Boolean forceJavacCompilerUse;
 
     /**
-     * Strategy to re use {@code javacc} class created. Legal values are:
+     * Strategy for reusing the compiler and its {@link JavaFileManager} between the compilations of a Maven session.
+     * A reused file manager keeps the JDK image and the JAR files that it opened, which saves the time needed for
+     * reopening and indexing them in each module of a multi-module project. Legal values are:
      * <ul>
-     *   <li>{@code reuseCreated} (default) – will reuse already created but in case of multi-threaded builds,
-     *       each thread will have its own instance.</li>
-     *   <li>{@code reuseSame} – the same Javacc class will be used for each compilation even
-     *       for multi-threaded build.</li>
-     *   <li>{@code alwaysNew} – a new Javacc class will be created for each compilation.</li>
+     *   <li>{@code reuseCreated} (default) – reuse a file manager created by a previous compilation if it is idle.
+     *       In a multi-threaded build, concurrent compilations use different file managers.</li>
+     *   <li>{@code reuseSame} – use the same file manager for all compilations, even in a multi-threaded build.
+     *       In such case, the compilations are executed one after the other.</li>
+     *   <li>{@code alwaysNew} – create a new file manager for each compilation.</li>
      * </ul>
-     * Note this parameter value depends on the OS/JDK you are using, but the default value should work on most of env.
+     * A file manager is reused only by compilations having the same compiler options and encoding.
+     * Compilations of modular projects and compilations in a {@linkplain #fork forked} process
+     * always use a new file manager.
      *
      * @since 2.5
-     *
-     * @deprecated Not supported anymore. The reuse of {@link JavaFileManager} instance is plugin implementation details.
      */
-    @Deprecated(since = "4.0.0", forRemoval = true)
-    @Parameter(property = "maven.compiler.compilerReuseStrategy")
+    @Parameter(property = "maven.compiler.compilerReuseStrategy", defaultValue = "reuseCreated")
     protected String compilerReuseStrategy;
 
     /**
-     * @since 2.5
+     * Whether to omit the warning emitted when the {@code reuseSame} {@linkplain #compilerReuseStrategy
+     * compiler reuse strategy} is used in a multi-threaded build.
      *
-     * @deprecated Deprecated as a consequence of {@link #compilerReuseStrategy} deprecation.
+     * @since 2.5
      */
-    @Deprecated(since = "4.0.0", forRemoval = true)
-    @Parameter(property = "maven.compiler.skipMultiThreadWarning")
-    protected Boolean skipMultiThreadWarning;
+    @Parameter(property = "maven.compiler.skipMultiThreadWarning", defaultValue = "false")
+    protected boolean skipMultiThreadWarning;
 
     /**
      * Executable of the compiler to use when {@link #fork} is {@code true}.
@@ -746,6 +825,37 @@ public abstract class AbstractCompilerMojo implements Mojo {
     @Parameter(property = "maven.compiler.maxmem")
     protected String maxmem;
 
+    /**
+     * Maximal number of long-lived compiler processes per executable if {@link #fork} is {@code true}.
+     * If greater than zero, the compilations are sent to compiler processes which stay alive until the end
+     * of the Maven session, instead of launching a new {@code javac} process for each compilation.
+     * This saves the <abbr>JVM</abbr> startup and warm-up in each module of a multi-module project.
+     * The processes are shared by all modules using the same executable and {@code -J} options.
+     *
+     * <p>This mode requires an executable named {@code javac} with a {@code java} launcher in the same directory,
+     * from a <abbr>JDK</abbr> which can run this plugin. Otherwise, a new process is launched for each compilation.
+     * Relative paths given to the compiler options expecting files or directories are resolved against
+     * the project base directory, as for compilations executed in a new process.
+     * However, relative paths inside argument files ({@code @file}) are not resolved.</p>
+     *
+     * @see #fork
+     * @see #forkWorkerCompilations
+     * @since 4.0.0
+     */
+    @Parameter(property = "maven.compiler.forkWorkers", defaultValue = "0")
+    protected int forkWorkers;
+
+    /**
+     * Number of compilations after which a long-lived compiler process is replaced by a new one.
+     * A process is also replaced when the memory retained after garbage collection exceeds
+     * 75% of its maximal heap size, for protection against memory leaks in annotation processors.
+     *
+     * @see #forkWorkers
+     * @since 4.0.0
+     */
+    @Parameter(property = "maven.compiler.forkWorkerCompilations", defaultValue = "100")
+    protected int forkWorkerCompilations;
+
     // ----------------------------------------------------------------------
     // Read-only parameters
     // ----------------------------------------------------------------------
@@ -970,6 +1080,18 @@ public abstract class AbstractCompilerMojo implements Mojo {
     @Nullable
     protected abstract String getDebugFileName();
 
+    /**
+     * {@return the root directory of the classes for which to write a build stamp, or null if none}.
+     * The build stamp allows the other modules of the same reactor to detect cheaply whether the
+     * compiled classes changed. The default implementation returns {@code null}.
+     *
+     * @see BuildStamp
+     */
+    @Nullable
+    Path getBuildStampDirectory() {
+        return null;
+    }
+
     /**
      * {@return the debug file name with its path, or null if none}.
      */
@@ -1022,6 +1144,48 @@ public abstract class AbstractCompilerMojo implements Mojo {
         }
     }
 
+    /**
+     * {@return a file next to the {@linkplain #mojoStatusPath status file}, with a different extension}.
+     *
+     * @param extension the extension of the file, including the leading dot
+     */
+    private Path siblingOfStatusFile(String extension) {
+        String filename = mojoStatusPath.getFileName().toString();
+        int s = filename.lastIndexOf('.');
+        if (s > 0) {
+            filename = filename.substring(0, s);
+        }
+        return mojoStatusPath.resolveSibling(filename + extension);
+    }
+
+    /**
+     * {@return the directories against which the incremental build stores relative paths}.
+     * Keys are the names of the directories and values are their paths. Storing relative paths
+     * allows to restore the build directory in another workspace, for example on another agent
+     * of a continuous integration system, without forcing a full rebuild.
+     *
+     * @see RelocatablePaths
+     */
+    Map<String, Path> relocatableDirectories() {
+        final var directories = new LinkedHashMap<String, Path>();
+        final Build build = project.getBuild();
+        if (build != null && build.getDirectory() != null) {
+            directories.put("project.build.directory", Path.of(build.getDirectory()));
+        }
+        if (basedir != null) {
+            directories.put("project.basedir", basedir);
+        }
+        final Path topDirectory = session.getTopDirectory();
+        if (topDirectory != null) {
+            directories.put("session.topDirectory", topDirectory);
+        }
+        final LocalRepository repository = session.getLocalRepository();
+        if (repository != null && repository.getPath() != null) {
+            directories.put("session.localRepository", repository.getPath());
+        }
+        return directories;
+    }
+
     /**
      * {@return the compiler to use for compiling the code}.
      * If {@link #fork} is {@code true}, the returned compiler will be a wrapper for the command line.
@@ -1065,20 +1229,12 @@ public abstract class AbstractCompilerMojo implements Mojo {
             logger.debug(
                     "Using " + (compilerId != null ? ("compiler \"" + compilerId + '"') : "system compiler") + '.');
         }
+        final Optional<JavaCompiler> compiler = CompilerPool.forSession(session).compiler(compilerId);
         if (compilerId == null) {
             compilerId = DEFAULT_EXECUTABLE;
-            final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
-            if (compiler != null) {
-                return compiler;
-            }
-        } else {
-            for (JavaCompiler t : ServiceLoader.load(JavaCompiler.class)) {
-                if (compilerId.equals(t.name())) {
-                    return t;
-                }
-            }
         }
-        throw new CompilationFailureException("No such \"" + compilerId + "\" compiler.");
+        return compiler.orElseThrow(
+                () -> new CompilationFailureException("No such \"" + compilerId + "\" compiler."));
     }
 
     /**
@@ -1228,65 +1384,217 @@ public abstract class AbstractCompilerMojo implements Mojo {
                     break;
             }
         }
-        final Set<Path> generatedSourceDirectories = addGeneratedSourceDirectory(getGeneratedSourcesDirectory());
+        /*
+         * The directory of generated sources is created only if annotation processing may happen. If processors
+         * would be discovered by javac on the class-path, the decision is deferred after dependency resolution.
+         */
+        final boolean discoverProcessors = isProcessorDiscovery(compilerConfiguration);
+        Set<Path> generatedSourceDirectories =
+                addGeneratedSourceDirectory(getGeneratedSourcesDirectory(), !discoverProcessors);
+        /*
+         * Verify if a source file changed since the last build. This is done before dependency resolution because
+         * if no source file changed, the inputs of the dependency resolution are the same as in the previous build
+         * and the dependency files did not change, then the compilation and the dependency resolution are skipped.
+         */
+        final boolean checkSources = incAspects.contains(IncrementalBuild.Aspect.SOURCES);
+        final boolean checkClasses = incAspects.contains(IncrementalBuild.Aspect.CLASSES);
+        final boolean checkDepends = incAspects.contains(IncrementalBuild.Aspect.DEPENDENCIES);
+        final boolean checkOptions = incAspects.contains(IncrementalBuild.Aspect.OPTIONS);
+        final boolean rebuildOnAdd = incAspects.contains(IncrementalBuild.Aspect.ADDITIONS);
+        IncrementalBuild incrementalBuild = null;
+        String causeOfRebuild = null;
+        if (checkSources | checkClasses | checkDepends | checkOptions) {
+            incrementalBuild = new IncrementalBuild(this, sourceFiles);
+            if (checkSources) {
+                // Should be first, because this method deletes output files of removed sources.
+                causeOfRebuild = incrementalBuild.inputFileTreeChanges(staleMillis, rebuildOnAdd);
+            }
+            if (checkClasses && causeOfRebuild == null) {
+                causeOfRebuild = incrementalBuild.markNewOrModifiedSources(staleMillis, rebuildOnAdd);
+            }
+            if (checkDepends) {
+                if (fileExtensions == null || fileExtensions.isEmpty()) {
+                    fileExtensions = List.of("class", "jar");
+                }
+                incrementalBuild.setResolutionDigest(resolutionDigest(compilerConfiguration, hasModuleDeclaration));
+                if (causeOfRebuild == null
+                        && incrementalBuild.isResolutionUnchanged(fileExtensions)
+                        && IncrementalBuild.isEmptyOrIgnorable(incrementalBuild.getModifiedSources())) {
+                    logger.debug("Dependency resolution skipped because its inputs did not change.");
+                    logger.info("Nothing to compile - all classes are up to date.");
+                    return;
+                }
+            }
+        }
         /*
          * Get the dependencies. If the module-path contains any file-based dependency
          * and this MOJO is compiling the main code, then a warning will be logged.
-         *
-         * NOTE: this method assumes that the map and the list values are modifiable.
-         * This is true with org.apache.maven.internal.impl.DefaultDependencyResolverResult,
-         * but may not be true in the general case. To be safe, we should perform a deep copy.
-         * But it would be unnecessary copies in most cases.
+         * The map and the list values are modifiable copies of the resolution result,
+         * which may be shared with other executions in the same session.
          */
         final Map<PathType, List<Path>> dependencies = resolveDependencies(compilerConfiguration, hasModuleDeclaration);
         resolveProcessorPathEntries(dependencies);
         addImplicitDependencies(dependencies, hasModuleDeclaration);
         /*
-         * Verify if a dependency changed since the build started, or if a source file changed since the last build.
-         * If there is no change, we can skip the build. If a dependency or the source tree has changed, we may
-         * conservatively clean before rebuild.
+         * Verify if a dependency changed since the build started, or if the compiler options changed.
+         * If there is no change, we can skip the build. If a dependency or the source tree has changed,
+         * we may conservatively clean before rebuild.
          */
-        { // For reducing the scope of the Boolean flags.
-            final boolean checkSources = incAspects.contains(IncrementalBuild.Aspect.SOURCES);
-            final boolean checkClasses = incAspects.contains(IncrementalBuild.Aspect.CLASSES);
-            final boolean checkDepends = incAspects.contains(IncrementalBuild.Aspect.DEPENDENCIES);
-            final boolean checkOptions = incAspects.contains(IncrementalBuild.Aspect.OPTIONS);
-            final boolean rebuildOnAdd = incAspects.contains(IncrementalBuild.Aspect.ADDITIONS);
-            if (checkSources | checkClasses | checkDepends | checkOptions) {
-                final var incrementalBuild = new IncrementalBuild(this, sourceFiles);
-                String causeOfRebuild = null;
-                if (checkSources) {
-                    // Should be first, because this method deletes output files of removed sources.
-                    causeOfRebuild = incrementalBuild.inputFileTreeChanges(staleMillis, rebuildOnAdd);
+        DependencyGraph dependencyGraph = null;
+        boolean compileSubset = false;
+        Path classOutput = outputDirectory;
+        if (incrementalBuild != null) {
+            /*
+             * Check dependencies even if a rebuild has already been decided. It allows to record the list
+             * of dependencies and to update the fingerprints of the modified dependencies for the next build.
+             */
+            if (checkDepends) {
+                String cause = incrementalBuild.dependencyChanges(dependencies.values(), fileExtensions);
+                if (causeOfRebuild == null) {
+                    causeOfRebuild = cause;
                 }
-                if (checkClasses && causeOfRebuild == null) {
-                    causeOfRebuild = incrementalBuild.markNewOrModifiedSources(staleMillis, rebuildOnAdd);
+            }
+            if (checkOptions) {
+                String cause = incrementalBuild.optionChanges(compilerConfiguration);
+                if (causeOfRebuild == null) {
+                    causeOfRebuild = cause;
                 }
-                if (checkDepends && causeOfRebuild == null) {
-                    if (fileExtensions == null || fileExtensions.isEmpty()) {
-                        fileExtensions = List.of("class", "jar");
+            }
+            if (causeOfRebuild == null) {
+                List<SourceFile> modified = incrementalBuild.getModifiedSources();
+                if (IncrementalBuild.isEmptyOrIgnorable(modified)) {
+                    logger.info("Nothing to compile - all classes are up to date.");
+                    if (checkDepends) {
+                        incrementalBuild.writeCache(checkSources); // For saving the digest of resolution inputs.
                     }
-                    causeOfRebuild = incrementalBuild.dependencyChanges(dependencies.values(), fileExtensions);
+                    return;
                 }
-                int optionsHash = 0; // Hash code collision may happen, this is a "best effort" only.
-                if (checkOptions) {
-                    optionsHash = compilerConfiguration.options.hashCode();
-                    if (causeOfRebuild == null) {
-                        causeOfRebuild = incrementalBuild.optionChanges(optionsHash);
-                    }
+                if (checkSources) {
+                    dependencyGraph = incrementalBuild.dependencyGraph(logger);
+                    causeOfRebuild = incrementalBuild.dependencyGraphChanges(dependencyGraph);
                 }
-                if (causeOfRebuild != null) {
-                    logger.info(causeOfRebuild);
-                } else {
-                    sourceFiles = incrementalBuild.getModifiedSources();
-                    if (IncrementalBuild.isEmptyOrIgnorable(sourceFiles)) {
-                        logger.info("Nothing to compile - all classes are up to date.");
-                        return;
-                    }
+                if (causeOfRebuild == null) {
+                    sourceFiles = modified;
+                    compileSubset = true;
+                }
+            }
+            if (causeOfRebuild != null) {
+                logger.info(causeOfRebuild);
+                if (checkSources) {
+                    dependencyGraph = incrementalBuild.dependencyGraph(logger);
+                }
+            }
+            /*
+             * If only a subset of the source files is recompiled, the compiler writes the class files in a staging
+             * directory. The files are moved to the output directory only after success, so a failed compilation
+             * leaves the output directory, the dependency graph and the cache in the state of the previous build.
+             * The cache is written after successful compilation, so the next build is incremental again.
+             */
+            if (compileSubset) {
+                classOutput = incrementalBuild.createStagingDirectory();
+                if (dependencyGraph != null) {
+                    dependencyGraph.setStagingDirectory(outputDirectory, classOutput);
+                }
+            } else if (dependencyGraph != null) {
+                dependencyGraph.invalidate(); // Will be saved again after successful compilation.
+            }
+        }
+        /*
+         * Start opening the JAR files of the class-path in background threads. They are cached for the whole
+         * session, so the compiler will find them ready (see `ClassPathFileManager`). Meanwhile, this thread
+         * prepares the compilation. JAR files already in the persistent index of packages are not opened
+         * in advance, because the compiler will open only the ones containing the packages that it needs.
+         */
+        final List<Path> classPathEntries = dependencies.getOrDefault(JavaPathType.CLASSES, List.of());
+        ClassPathIndex classPathIndex = null;
+        if (mojoStatusPath != null) {
+            try {
+                classPathIndex = ClassPathIndex.read(
+                        siblingOfStatusFile(".classpath"), new RelocatablePaths(relocatableDirectories()));
+            } catch (IOException e) {
+                logger.warn("Cannot read the index of the class-path packages.", e);
+            }
+        }
+        if (!fork) {
+            JarArchives.forSession(session)
+                    .prefetch((classPathIndex != null) ? classPathIndex.unindexed(classPathEntries) : classPathEntries);
+        }
+        /*
+         * If annotation processing is not configured, javac searches for processors on the class-path.
+         * If the index tells that there is none, disable annotation processing. This avoids the search
+         * and the processing rounds. Otherwise, the directory of generated sources may be needed.
+         */
+        boolean noProcessors = false;
+        if (discoverProcessors) {
+            if (classPathIndex != null
+                    && !dependencies.containsKey(JavaPathType.PROCESSOR_CLASSES)
+                    && !dependencies.containsKey(JavaPathType.PROCESSOR_MODULES)) {
+                final var searched = new ArrayList<Path>(classPathEntries);
+                if (compileSubset && !hasModuleDeclaration) {
+                    searched.add(outputDirectory); // Will be on the class-path, see `classOutputFirst` below.
+                }
+                try {
+                    noProcessors = !classPathIndex.hasProcessors(searched, JarArchives.forSession(session));
+                } catch (IOException e) {
+                    logger.debug("Cannot search for annotation processors in the class-path.", e);
+                }
+                if (noProcessors && logger.isDebugEnabled()) {
+                    logger.debug("Annotation processing disabled because the class-path contains no processor.");
+                }
+            }
+            if (!noProcessors && generatedSourceDirectories.isEmpty()) {
+                generatedSourceDirectories = addGeneratedSourceDirectory(getGeneratedSourcesDirectory(), true);
+            }
+        }
+        final Path buildStampDirectory = getBuildStampDirectory();
+        final BuildStamp previousStamp =
+                (buildStampDirectory != null) ? BuildStamp.invalidate(buildStampDirectory) : null;
+        /*
+         * If all source files need to be compiled, try to restore the compilation result from the build cache.
+         * The cache requires the incremental build for recording the output files and saving the state.
+         */
+        BuildCache buildCache = null;
+        if (useBuildCache
+                && incrementalBuild != null
+                && !compileSubset
+                && !fork
+                && !incAspects.contains(IncrementalBuild.Aspect.MODULES)) {
+            final var roots = new ArrayList<Path>(generatedSourceDirectories.size() + 1);
+            roots.add(outputDirectory);
+            roots.addAll(generatedSourceDirectories);
+            RemoteBuildCache remote = null;
+            if (buildCacheUrl != null && !buildCacheUrl.isBlank()) {
+                remote = RemoteBuildCache.forSession(
+                        session, buildCacheUrl, Duration.ofMillis(buildCacheTimeout), logger);
+            }
+            buildCache = new BuildCache(buildCacheDirectory, buildCacheSize * (1024 * 1024), roots, remote, logger);
+            boolean restored = false;
+            try {
+                addToKey(buildCache, compiler, compilerConfiguration, sourceFiles, dependencies, incrementalBuild);
+            } catch (IOException e) {
+                logger.warn("Cannot compute the key of the build cache. The cache will not be used.", e);
+                buildCache = null;
+            }
+            if (buildCache != null) {
+                try {
+                    restored = buildCache.restore(sourceFiles);
+                } catch (IOException e) {
+                    logger.warn("Cannot restore the compiled classes from the build cache.", e);
+                }
+            }
+            if (restored) {
+                logger.info("Restored " + sourceFiles.size() + " compiled source files from the build cache.");
+                if (dependencyGraph != null) {
+                    dependencyGraph.update(sourceFiles);
+                    dependencyGraph.save();
                 }
                 if (checkSources | checkDepends | checkOptions) {
-                    incrementalBuild.writeCache(optionsHash, checkSources);
+                    incrementalBuild.writeCache(checkSources);
+                }
+                if (buildStampDirectory != null) {
+                    BuildStamp.write(buildStampDirectory, previousStamp, System.currentTimeMillis(), null);
                 }
+                return;
             }
         }
         if (logger.isDebugEnabled()) {
@@ -1318,13 +1626,100 @@ public abstract class AbstractCompilerMojo implements Mojo {
         final var unresolvedPaths = new ArrayList<Path>();
         final var compilerOutput = new StringWriter();
         final var listener = new DiagnosticLogger(logger, messageBuilderFactory, LOCALE);
-        try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(listener, LOCALE, charset())) {
+        OutputFileRecorder recorder = null;
+        /*
+         * The file manager may be reused from a previous compilation in the same Maven session. This is not
+         * done for modular projects, because the module-oriented locations cannot be reset after compilation.
+         */
+        final CompilerPool.Strategy reuseStrategy = CompilerPool.Strategy.parse(compilerReuseStrategy);
+        if (reuseStrategy == CompilerPool.Strategy.REUSE_SAME
+                && session.getDegreeOfConcurrency() > 1
+                && !skipMultiThreadWarning) {
+            logger.warn("The \"" + reuseStrategy + "\" compiler reuse strategy executes the compilations of a "
+                    + "multi-threaded build one after the other. Consider the \""
+                    + CompilerPool.Strategy.REUSE_CREATED + "\" strategy instead.");
+        }
+        boolean reusable = !hasModuleDeclaration && !(compiler instanceof ForkedCompiler);
+        final var locations = new HashSet<JavaFileManager.Location>();
+        final var archives = new ArrayList<Path>();
+        for (Map.Entry<PathType, List<Path>> entry : dependencies.entrySet()) {
+            Optional<JavaFileManager.Location> location = Optional.empty();
+            if (entry.getKey() instanceof JavaPathType type) {
+                location = type.location().filter(CompilerPool::isReusable);
+            }
+            reusable &= location.isPresent();
+            location.ifPresent(locations::add);
+            archives.addAll(entry.getValue());
+        }
+        /*
+         * If the release is the version of the compiler running in this JVM, replace `--release` by options
+         * giving the same view of the platform without opening `ct.sym` in each compilation task.
+         * This is possible only if there is no module, because `--limit-modules` applies to all modules.
+         */
+        List<String> taskOptions = compilerConfiguration.options;
+        if (noProcessors) {
+            taskOptions = new ArrayList<>(taskOptions);
+            taskOptions.add("-proc:none");
+        }
+        if (!hasModuleDeclaration
+                && !(compiler instanceof ForkedCompiler)
+                && NON_MODULAR_PATHS.containsAll(dependencies.keySet())) {
+            final List<String> withRelease = taskOptions;
+            taskOptions = PlatformModules.replaceRelease(compiler, withRelease);
+            if (taskOptions != withRelease && logger.isDebugEnabled()) {
+                logger.debug("Compiler options after replacement of --release: " + String.join(" ", taskOptions));
+            }
+        }
+        /*
+         * Share the class loader of annotation processors with other compilations using the same processor path,
+         * unless the user asked for new compiler instances. If the processor path is not specified, javac searches
+         * the processors on the class-path, which is specific to each module. In such case, nothing is shared.
+         */
+        ProcessorLoaders.Loader processorLoader = null;
+        String processorNames = null;
+        if (reuseStrategy != CompilerPool.Strategy.ALWAYS_NEW
+                && !(compiler instanceof ForkedCompiler)
+                && !taskOptions.contains("-proc:none")
+                && !taskOptions.contains("-Xprint")) {
+            List<Path> paths = dependencies.getOrDefault(JavaPathType.PROCESSOR_MODULES, List.of());
+            final boolean modular = !paths.isEmpty();
+            if (!modular) {
+                paths = dependencies.getOrDefault(JavaPathType.PROCESSOR_CLASSES, List.of());
+            }
+            if (!paths.isEmpty()) {
+                try {
+                    processorLoader = ProcessorLoaders.forSession(session).get(compiler, modular, paths);
+                } catch (IOException | RuntimeException e) {
+                    logger.debug("Cannot share the annotation processors class loader.", e);
+                }
+                final int i = taskOptions.indexOf("-processor");
+                if (i >= 0 && i + 1 < taskOptions.size()) {
+                    processorNames = taskOptions.get(i + 1);
+                }
+            }
+        }
+        final long startTime = System.nanoTime();
+        boolean warm = false;
+        ClassPathFileManager classPathFileManager = null;
+        try (CompilerPool.Lease lease = CompilerPool.forSession(session)
+                .acquire(
+                        reuseStrategy,
+                        compiler,
+                        listener,
+                        LOCALE,
+                        charset(),
+                        taskOptions,
+                        locations,
+                        archives,
+                        reusable)) {
+            final StandardJavaFileManager fileManager = lease.fileManager;
+            warm = lease.warm;
             /*
              * Dispatch all dependencies on the kind of paths determined by `DependencyResolver`:
              * class-path, module-path, annotation processor class-path/module-path, etc.
              * This configuration will be unchanged for all compilation units.
              */
-            List<String> patchedOptions = compilerConfiguration.options; // Workaround for JDK-TBD.
+            List<String> patchedOptions = taskOptions; // Workaround for JDK-TBD.
             for (Map.Entry<PathType, List<Path>> entry : dependencies.entrySet()) {
                 List<Path> paths = entry.getValue();
                 PathType key = entry.getKey(); // TODO: replace by pattern matching in Java 21.
@@ -1340,7 +1735,7 @@ public abstract class AbstractCompilerMojo implements Mojo {
                         try {
                             fileManager.setLocationForModule(location.get(), type.moduleName(), paths);
                         } catch (UnsupportedOperationException e) { // Workaround forJDK-TBD.
-                            if (patchedOptions == compilerConfiguration.options) {
+                            if (patchedOptions == taskOptions) {
                                 patchedOptions = new ArrayList<>(patchedOptions);
                             }
                             patchedOptions.addAll(Arrays.asList(type.option(paths)));
@@ -1357,6 +1752,23 @@ public abstract class AbstractCompilerMojo implements Mojo {
                 }
                 logger.warn(sb);
             }
+            /*
+             * If only a subset of the source files is recompiled, put the output directory in front of
+             * the class-path and do not declare the source path (see below). The compiler will load the
+             * unchanged types from the class files of the previous build instead of parsing their sources.
+             * The staging directory is put first for the classes compiled in a previous round.
+             * This is not done for modular projects because the module source path is needed.
+             * In all cases, the previous outputs of the recompiled sources are hidden before each round
+             * (see `hidePreviousOutputs`), so that the compiler does not find the classes which were removed.
+             */
+            final boolean classOutputFirst = compileSubset && !hasModuleDeclaration;
+            if (classOutputFirst) {
+                final var classpath = new ArrayList<Path>();
+                classpath.add(classOutput);
+                classpath.add(outputDirectory);
+                classpath.addAll(dependencies.getOrDefault(JavaPathType.CLASSES, List.of()));
+                fileManager.setLocationFromPaths(StandardLocation.CLASS_PATH, classpath);
+            }
             /*
              * Configure all paths to source files. Each compilation unit has its own set of source.
              * More than one compilation unit may exist in the case of a multi-releases project.
@@ -1365,39 +1777,80 @@ public abstract class AbstractCompilerMojo implements Mojo {
             if (!generatedSourceDirectories.isEmpty()) {
                 fileManager.setLocationFromPaths(StandardLocation.SOURCE_OUTPUT, generatedSourceDirectories);
             }
+            /*
+             * List the class-path with the JAR files cached for the session, and record the files written by the
+             * compiler for each source file, for more accurate incremental builds. This is not possible when the
+             * compiler is executed in a separated process.
+             */
+            StandardJavaFileManager taskFileManager = fileManager;
+            if (!(fileManager instanceof ForkedToolSources)) {
+                classPathFileManager = new ClassPathFileManager(
+                        taskFileManager, JarArchives.forSession(session), classPathIndex, taskOptions, charset());
+                taskFileManager = classPathFileManager;
+                if (incrementalBuild != null) {
+                    recorder = new OutputFileRecorder(taskFileManager);
+                    taskFileManager = recorder;
+                }
+            }
+            /*
+             * The outer loop is executed more than once only if some classes have been compiled with a different API,
+             * in which case the classes that depend on them are recompiled. The dependency graph is non-null only if
+             * the incremental build is based on the `SOURCES` aspect.
+             */
+            List<SourceFile> round = sourceFiles;
             compile:
-            for (SourcesForRelease unit : SourcesForRelease.groupByReleaseAndModule(sourceFiles)) {
-                for (Map.Entry<String, Set<Path>> root : unit.roots.entrySet()) {
-                    String moduleName = root.getKey();
-                    if (moduleName.isBlank()) {
-                        fileManager.setLocationFromPaths(StandardLocation.SOURCE_PATH, root.getValue());
-                    } else {
-                        fileManager.setLocationForModule(
-                                StandardLocation.MODULE_SOURCE_PATH, moduleName, root.getValue());
-                    }
+            do {
+                if (compileSubset) {
+                    incrementalBuild.hidePreviousOutputs(outputDirectory, round);
                 }
-                /*
-                 * TODO: for all compilations after the base one, add the base to class-path or module-path.
-                 * TODO: prepend META-INF/version/## to output directory if needed.
-                 */
-                fileManager.setLocationFromPaths(StandardLocation.CLASS_OUTPUT, Set.of(outputDirectory));
-                /*
-                 * Compile the source files now. The following loop should be executed exactly once.
-                 * It may be executed twice when compiling test classes overwriting the `module-info`,
-                 * in which case the `module-info` needs to be compiled separately from other classes.
-                 * However, this is a deprecated practice.
-                 */
-                JavaCompiler.CompilationTask task;
-                for (CompilationTaskSources c : toCompilationTasks(unit)) {
-                    Iterable<? extends JavaFileObject> sources = fileManager.getJavaFileObjectsFromPaths(c.files);
-                    task = compiler.getTask(compilerOutput, fileManager, listener, patchedOptions, null, sources);
-                    patchedOptions = compilerConfiguration.options; // Patched options shall be used only once.
-                    success = c.compile(task);
-                    if (!success) {
-                        break compile;
+                for (SourcesForRelease unit : SourcesForRelease.groupByReleaseAndModule(round)) {
+                    for (Map.Entry<String, Set<Path>> root : unit.roots.entrySet()) {
+                        String moduleName = root.getKey();
+                        if (moduleName.isBlank()) {
+                            // If `classOutputFirst`, an empty source path prevents searching sources in the class-path.
+                            fileManager.setLocationFromPaths(
+                                    StandardLocation.SOURCE_PATH, classOutputFirst ? List.of() : root.getValue());
+                        } else {
+                            fileManager.setLocationForModule(
+                                    StandardLocation.MODULE_SOURCE_PATH, moduleName, root.getValue());
+                        }
+                    }
+                    /*
+                     * TODO: for all compilations after the base one, add the base to class-path or module-path.
+                     * TODO: prepend META-INF/version/## to output directory if needed.
+                     */
+                    fileManager.setLocationFromPaths(StandardLocation.CLASS_OUTPUT, Set.of(classOutput));
+                    /*
+                     * Compile the source files now. The following loop should be executed exactly once.
+                     * It may be executed twice when compiling test classes overwriting the `module-info`,
+                     * in which case the `module-info` needs to be compiled separately from other classes.
+                     * However, this is a deprecated practice.
+                     */
+                    JavaCompiler.CompilationTask task;
+                    for (CompilationTaskSources c : toCompilationTasks(unit)) {
+                        Iterable<? extends JavaFileObject> sources = fileManager.getJavaFileObjectsFromPaths(c.files);
+                        task = compiler.getTask(
+                                compilerOutput, taskFileManager, listener, patchedOptions, null, sources);
+                        if (processorLoader != null) {
+                            List<Processor> processors = processorLoader.newProcessors(processorNames);
+                            if (processors != null) {
+                                task.setProcessors(processors);
+                            }
+                        }
+                        patchedOptions = taskOptions; // Patched options shall be used only once.
+                        success = c.compile(task);
+                        if (!success) {
+                            break compile;
+                        }
+                        if (recorder != null) {
+                            recorder.compiled(c.files);
+                        }
                     }
                 }
-            }
+                if (recorder != null) {
+                    recorder.assignTo(round); // For attributing the generated classes in the dependency graph.
+                }
+            } while (dependencyGraph != null && !(round = dependencyGraph.update(round)).isEmpty());
             /*
              * Post-compilation.
              */
@@ -1408,6 +1861,22 @@ public abstract class AbstractCompilerMojo implements Mojo {
         } catch (Exception e) {
             success = false;
             failureCause = e;
+        } finally {
+            if (classPathFileManager != null) {
+                classPathFileManager.release();
+            }
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug("Compilation of " + sourceFiles.size() + " source files took "
+                    + (System.nanoTime() - startTime) / 1000000 + " ms with a "
+                    + (warm ? "reused" : "new") + " file manager (" + reuseStrategy + " strategy).");
+        }
+        if (classPathIndex != null) {
+            try {
+                classPathIndex.write();
+            } catch (IOException e) {
+                logger.warn("Cannot save the index of the class-path packages.", e);
+            }
         }
         /*
          * The compilation errors or warnings should have already been reported by `DiagnosticLogger`.
@@ -1446,6 +1915,17 @@ public abstract class AbstractCompilerMojo implements Mojo {
                 suppressed = e;
             }
             if (!success) {
+                if (incrementalBuild != null) {
+                    try {
+                        incrementalBuild.discardStagedFiles();
+                    } catch (IOException e) {
+                        if (suppressed == null) {
+                            suppressed = e;
+                        } else {
+                            suppressed.addSuppressed(e);
+                        }
+                    }
+                }
                 var message = new StringBuilder(100)
                         .append("Cannot compile ")
                         .append(project.getId())
@@ -1465,6 +1945,20 @@ public abstract class AbstractCompilerMojo implements Mojo {
                 throw suppressed;
             }
         }
+        if (incrementalBuild != null) {
+            if (compileSubset) {
+                incrementalBuild.promoteStagedFiles(outputDirectory);
+                if (recorder != null) {
+                    recorder.relocate(classOutput, outputDirectory);
+                }
+            }
+            if (dependencyGraph != null) {
+                dependencyGraph.save();
+            }
+            if (checkSources | checkDepends | checkOptions) {
+                incrementalBuild.writeCache(checkSources, recorder);
+            }
+        }
         /*
          * Workaround for MCOMPILER-542, needed only if a modular project is compiled with a JDK older than Java 22.
          * Note: a previous version used as an heuristic way to detect if Reproducible Build was enabled. This check
@@ -1484,6 +1978,69 @@ public abstract class AbstractCompilerMojo implements Mojo {
                 }
             }
         }
+        if (buildCache != null && recorder != null) {
+            try {
+                recorder.assignTo(sourceFiles);
+                buildCache.store(recorder.outputFiles(), sourceFiles);
+            } catch (IOException e) {
+                logger.warn("Cannot save the compiled classes in the build cache.", e);
+            }
+        }
+        if (buildStampDirectory != null) {
+            BuildStamp.write(
+                    buildStampDirectory,
+                    previousStamp,
+                    System.currentTimeMillis(),
+                    (recorder != null) ? recorder.outputFiles() : null);
+        }
+    }
+
+    /**
+     * Adds all inputs of the compilation to the key of the given build cache.
+     * Dependencies are represented by the fingerprint of their <abbr>ABI</abbr>, except directories and
+     * annotation processors which are represented by their full content because their implementation matters:
+     * directories are usually the output of another module of the reactor, where tests may access
+     * package-private members, while processors are executed by the compiler.
+     *
+     * @param buildCache the cache where to add the inputs to the key
+     * @param compiler the compiler, for identifying the compiler version
+     * @param options the compiler options
+     * @param sourceFiles all source files to compile
+     * @param dependencies all dependencies, including the annotation processors
+     * @param incrementalBuild the incremental build, for reusing the <abbr>ABI</abbr> fingerprints
+     * @throws IOException if an error occurred while reading a file
+     */
+    private void addToKey(
+            final BuildCache buildCache,
+            final JavaCompiler compiler,
+            final Options options,
+            final List<SourceFile> sourceFiles,
+            final Map<PathType, List<Path>> dependencies,
+            final IncrementalBuild incrementalBuild)
+            throws IOException {
+        buildCache.addToKey(compiler.name());
+        buildCache.addToKey(compiler.getClass().getName());
+        buildCache.addToKey(Runtime.version().toString());
+        buildCache.addToKey(isTestCompile ? "test" : "main");
+        buildCache.addToKey(options.outputDigest());
+        buildCache.addSourcesToKey(sourceFiles);
+        for (Map.Entry<PathType, List<Path>> entry : dependencies.entrySet()) {
+            final PathType type = entry.getKey();
+            final boolean isProcessor = type == JavaPathType.PROCESSOR_CLASSES
+                    || type == JavaPathType.PROCESSOR_MODULES
+                    || (type instanceof JavaPathType.Modular m && m.rawType() == JavaPathType.PROCESSOR_MODULES);
+            buildCache.addToKey(type.toString());
+            for (Path root : entry.getValue()) {
+                if (!Files.exists(root)) {
+                    continue;
+                }
+                if (isProcessor || Files.isDirectory(root)) {
+                    buildCache.addContentToKey(root);
+                } else {
+                    buildCache.addToKey(incrementalBuild.fingerprint(root));
+                }
+            }
+        }
     }
 
     /**
@@ -1567,13 +2124,17 @@ public abstract class AbstractCompilerMojo implements Mojo {
             allowedTypes.add(JavaPathType.MODULES);
             allowedTypes.add(JavaPathType.PROCESSOR_MODULES);
         }
-        DependencyResolverResult dependencies = resolver.resolve(DependencyResolverRequest.builder()
-                .session(session)
-                .project(project)
-                .requestType(DependencyResolverRequest.RequestType.RESOLVE)
-                .pathScope(isTestCompile ? PathScope.TEST_COMPILE : PathScope.MAIN_COMPILE)
-                .pathTypeFilter(allowedTypes)
-                .build());
+        /*
+         * The result may have been computed by a previous execution on the same project. Module names
+         * and descriptors read by the resolver are cached in the result, so `addModuleOptions` reuses them.
+         */
+        DependencyResolverResult dependencies = ResolverCache.forSession(session)
+                .resolve(
+                        resolver,
+                        session,
+                        project,
+                        isTestCompile ? PathScope.TEST_COMPILE : PathScope.MAIN_COMPILE,
+                        allowedTypes);
         /*
          * Report errors or warnings. If possible, we rethrow the first exception directly without
          * wrapping in a `MojoException` for making the stack-trace a little bit easier to analyze.
@@ -1610,8 +2171,77 @@ public abstract class AbstractCompilerMojo implements Mojo {
         if (hasModuleDeclaration) {
             addModuleOptions(dependencies, compilerConfiguration);
         }
-        // TODO: to be safe, we should perform a deep clone here.
-        return dependencies.getDispatchedPaths();
+        return ResolverCache.dispatchedPaths(dependencies); // Deep copy because the result may be cached.
+    }
+
+    /**
+     * Computes a digest of the inputs of the dependency resolution. Those inputs are the dependencies declared
+     * in the project model, the managed dependencies, the annotation processor paths and the compiler options
+     * before they are completed by the dependency resolution. If this digest and the dependency files did not
+     * change since the previous build, then the dependency resolution produces the same result.
+     *
+     * <p>This digest does not take in account the dependencies declared in the <abbr>POM</abbr> of other artifacts
+     * (transitive dependencies). Those declarations are immutable for released artifacts, but not for snapshots
+     * or for the other projects of the reactor. Therefore, no digest is computed when a direct dependency is
+     * a snapshot or a project of the reactor. Changes in dependency files are detected by {@link IncrementalBuild}.
+     * Only the compiler options which may affect the output are included, as in the build cache key.</p>
+     *
+     * @param compilerConfiguration the compiler options before dependency resolution
+     * @param hasModuleDeclaration whether to allow placement of dependencies on the module-path
+     * @return digest of the inputs of the dependency resolution, or 0 if the resolution may produce
+     *         a different result with the same inputs (for example because of version ranges or snapshots)
+     */
+    @SuppressWarnings("deprecation")
+    private long resolutionDigest(Options compilerConfiguration, boolean hasModuleDeclaration) {
+        final var inputs = new ArrayList<String>();
+        inputs.add(isTestCompile ? "test" : "main");
+        inputs.add(String.valueOf(hasModuleDeclaration));
+        final var reactor = new HashSet<String>();
+        for (Project other : session.getProjects()) {
+            reactor.add(other.getGroupId() + ':' + other.getArtifactId());
+        }
+        final List<DependencyCoordinates> direct = project.getDependencies();
+        for (List<DependencyCoordinates> list : List.of(direct, project.getManagedDependencies())) {
+            for (DependencyCoordinates dependency : list) {
+                VersionConstraint version = dependency.getVersionConstraint();
+                if (version != null && version.getVersionRange() != null) {
+                    return 0;
+                }
+                if (list == direct) {
+                    if ((version != null && version.asString().endsWith("SNAPSHOT"))
+                            || reactor.contains(dependency.getGroupId() + ':' + dependency.getArtifactId())) {
+                        return 0; // The transitive dependencies may have changed.
+                    }
+                }
+                var sb = new StringBuilder(dependency.getId())
+                        .append(':')
+                        .append(dependency.getType().id())
+                        .append(':')
+                        .append(dependency.getScope().id())
+                        .append(':')
+                        .append(dependency.getOptional());
+                for (Exclusion exclusion : dependency.getExclusions()) {
+                    sb.append(':')
+                            .append(exclusion.getGroupId())
+                            .append('/')
+                            .append(exclusion.getArtifactId());
+                }
+                inputs.add(sb.toString());
+            }
+            inputs.add("");
+        }
+        if (annotationProcessorPaths != null) {
+            for (DependencyCoordinate coordinate : annotationProcessorPaths) {
+                String id = coordinate.toString();
+                if (id.indexOf('[') >= 0 || id.indexOf('(') >= 0 || id.contains("SNAPSHOT")) {
+                    return 0;
+                }
+                inputs.add(id + '#' + coordinate.hashCode()); // Hash code includes the exclusions.
+            }
+        }
+        inputs.add(String.valueOf(annotationProcessorPathsUseDepMgmt));
+        inputs.add(Long.toString(compilerConfiguration.outputDigest()));
+        return ClassScanner.digest(inputs);
     }
 
     /**
@@ -1637,20 +2267,14 @@ public abstract class AbstractCompilerMojo implements Mojo {
                 List<org.apache.maven.api.DependencyCoordinates> coords = dependencies.stream()
                         .map((coord) -> coord.toCoordinate(project, session))
                         .toList();
-                Session sessionWithRepo =
-                        session.withRemoteRepositories(projectManager.getRemoteProjectRepositories(project));
                 addTo.merge(
                         JavaPathType.PROCESSOR_CLASSES,
-                        sessionWithRepo
-                                .getService(DependencyResolver.class)
-                                .resolve(DependencyResolverRequest.builder()
-                                        .session(sessionWithRepo)
-                                        .dependencies(coords)
-                                        .managedDependencies(project.getManagedDependencies())
-                                        .requestType(DependencyResolverRequest.RequestType.RESOLVE)
-                                        .pathScope(PathScope.MAIN_RUNTIME)
-                                        .build())
-                                .getPaths(),
+                        ProcessorPathCache.forSession(session)
+                                .resolve(
+                                        session,
+                                        coords,
+                                        project.getManagedDependencies(),
+                                        projectManager.getRemoteProjectRepositories(project)),
                         (oldPaths, newPaths) -> {
                             oldPaths.addAll(newPaths);
                             return oldPaths;
@@ -1664,16 +2288,38 @@ public abstract class AbstractCompilerMojo implements Mojo {
         }
     }
 
+    /**
+     * {@return whether javac would search for annotation processors on the class-path}.
+     * This is the case when no option related to annotation processing has been specified,
+     * neither by the plugin parameters nor by the compiler arguments. The processor path
+     * is not known at this stage and needs to be verified by the caller.
+     *
+     * @param compilerConfiguration the compiler options
+     */
+    private static boolean isProcessorDiscovery(final Options compilerConfiguration) {
+        for (String option : compilerConfiguration.options) {
+            if (option.startsWith("-proc:")
+                    || option.startsWith("-processor")
+                    || option.startsWith("--processor-")
+                    || option.equals("-Xprint")) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * Ensures that the directory for generated sources exists, and adds it to the list of source directories
      * known to the project manager. This is used for adding the output of annotation processor.
      * The given directory should be the result of {@link #getGeneratedSourcesDirectory()}.
      *
      * @param generatedSourcesDirectory the directory to add, or {@code null} if none
+     * @param create whether to create the directory if it does not exist
      * @return the added directory in a singleton set, or an empty set if none
      * @throws IOException if the directory cannot be created
      */
-    private Set<Path> addGeneratedSourceDirectory(Path generatedSourcesDirectory) throws IOException {
+    private Set<Path> addGeneratedSourceDirectory(Path generatedSourcesDirectory, boolean create)
+            throws IOException {
         if (generatedSourcesDirectory == null) {
             return Set.of();
         }
@@ -1684,7 +2330,7 @@ public abstract class AbstractCompilerMojo implements Mojo {
          *
          * TODO: "none" become the default starting with Java 23.
          */
-        if ("none".equalsIgnoreCase(proc) && Files.notExists(generatedSourcesDirectory)) {
+        if ((!create || "none".equalsIgnoreCase(proc)) && Files.notExists(generatedSourcesDirectory)) {
             return Set.of();
         } else {
             // `createDirectories(Path)` does nothing if the directory already exists.
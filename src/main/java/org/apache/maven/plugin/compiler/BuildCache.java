@@ -0,0 +1,588 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugin.compiler;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+import org.apache.maven.api.plugin.Log;
+
+/**
+ * A local cache of compilation results, shared by all projects of the user.
+ * The local cache may be backed by a {@linkplain RemoteBuildCache remote cache} shared by many machines.
+ * Each entry contains the files written by the compiler for a given set of inputs. The entry is identified
+ * by a key computed from the content of the source files, the compiler options which may affect the output,
+ * the <abbr>ABI</abbr> of the dependencies, the annotation processors and the compiler version.
+ * When the same inputs are compiled again, for example after switching between branches,
+ * the files are restored from the cache instead of invoking the compiler.
+ *
+ * <h2>Directory layout</h2>
+ * Each entry is a sub-directory named by the hexadecimal value of the key. The entry contains one sub-directory
+ * for each output root (class files, generated source files) named by the index of the root in the list given
+ * at construction time, and a {@value #MANIFEST} file listing all files together with their sizes and checksums.
+ * The manifest also lists the output files of each source file, which are given back to the incremental build
+ * when the entry is restored.
+ * Entries are built in a temporary directory, then moved to their final location with an atomic operation.
+ * Therefore, concurrent builds never see a partially written entry.
+ *
+ * <h2>Restoration</h2>
+ * Files are copied from the cache entry to the output directories. Hard links are not used because
+ * a later compilation, or any tool editing the output files in place, would write through the links
+ * and corrupt the entry shared by all projects. The checksums of the cached files are verified before
+ * restoration, and an entry which has been modified by other means is discarded.
+ *
+ * <h2>Eviction</h2>
+ * The last modification time of an entry directory is updated each time that the entry is restored.
+ * When the total size of the cache exceeds the maximal size, the least recently used entries are deleted.
+ */
+final class BuildCache {
+    /**
+     * The magic number for identifying the format of the manifest file.
+     */
+    private static final long MAGIC_NUMBER = 0x4D43424341434832L;
+
+    /**
+     * Name of the file listing the files of an entry.
+     */
+    static final String MANIFEST = "manifest";
+
+    /**
+     * Name of the directory where entries are built or deleted.
+     */
+    private static final String TEMPORARY = "tmp";
+
+    /**
+     * Age after which a file in the temporary directory is considered abandoned by an interrupted build.
+     */
+    private static final long ABANDONED_AGE = TimeUnit.DAYS.toMillis(1);
+
+    /**
+     * Information about a file in a cache entry.
+     *
+     * @param root index of the output root of the file
+     * @param path path of the file relative to the output root, with {@code '/'} as the name separator
+     * @param size size of the file in bytes
+     * @param checksum CRC32C checksum of the file content
+     */
+    private static record FileInfo(int root, String path, long size, long checksum) {
+        /**
+         * {@return the path to this file in the given cache entry}.
+         */
+        Path cached(Path entry) {
+            return entry.resolve(Integer.toString(root)).resolve(path);
+        }
+    }
+
+    /**
+     * Content of the manifest of a cache entry.
+     *
+     * @param files the files of the entry
+     * @param outputs indexes in {@code files} of the outputs of each source file, with source names as keys
+     */
+    private static record Manifest(List<FileInfo> files, Map<String, int[]> outputs) {}
+
+    /**
+     * Usage of a cache entry, for deciding which entries to evict.
+     *
+     * @param entry the entry directory
+     * @param size total size of the files of the entry
+     * @param lastUsed last time that the entry was created or restored
+     */
+    private static record Usage(Path entry, long size, FileTime lastUsed) {}
+
+    /**
+     * The root directory of the cache.
+     */
+    private final Path directory;
+
+    /**
+     * Maximal size in bytes of all entries. Older entries are evicted when this size is exceeded.
+     */
+    private final long maxSize;
+
+    /**
+     * The directories where the compiler writes its outputs. The first element is the class output directory.
+     */
+    private final List<Path> roots;
+
+    /**
+     * The digest where the inputs of the compilation are added for computing the key.
+     */
+    private final MessageDigest digest;
+
+    /**
+     * The key computed from the digest, or {@code null} if not yet computed.
+     *
+     * @see #key()
+     */
+    private String key;
+
+    /**
+     * The remote tier of the cache, or {@code null} if none.
+     */
+    private final RemoteBuildCache remote;
+
+    /**
+     * Where to report debug information.
+     */
+    private final Log logger;
+
+    /**
+     * Creates a new cache for the compilation of a set of source files.
+     * The caller shall add all inputs to the key before to restore or store the entry.
+     *
+     * @param directory the root directory of the cache
+     * @param maxSize maximal size in bytes of all entries
+     * @param roots the directories where the compiler writes its outputs
+     * @param remote the remote tier of the cache, or {@code null} if none
+     * @param logger where to report debug information
+     */
+    BuildCache(Path directory, long maxSize, List<Path> roots, RemoteBuildCache remote, Log logger) {
+        this.directory = directory;
+        this.maxSize = maxSize;
+        this.roots = List.copyOf(roots);
+        this.remote = remote;
+        this.logger = logger;
+        digest = ClassScanner.sha256();
+    }
+
+    /**
+     * Adds the given value to the key of the cache entry.
+     *
+     * @param value the value to add
+     */
+    void addToKey(String value) {
+        digest.update(value.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+
+    /**
+     * Adds the given value to the key of the cache entry.
+     *
+     * @param value the value to add
+     */
+    void addToKey(long value) {
+        for (int i = 0; i < Long.BYTES; i++) {
+            digest.update((byte) (value >>> (i * Byte.SIZE)));
+        }
+    }
+
+    /**
+     * Adds the path and the content of the given source files to the key of the cache entry.
+     * The paths are relative to the source directories, so that the same project compiled
+     * from different directories (e.g. two checkouts) can share the same entries.
+     *
+     * @param sources the source files to add
+     * @throws IOException if an error occurred while reading a file
+     */
+    void addSourcesToKey(Collection<SourceFile> sources) throws IOException {
+        final var sorted = new TreeMap<String, Path>();
+        for (SourceFile source : sources) {
+            sorted.put(name(source), source.file);
+        }
+        for (Map.Entry<String, Path> entry : sorted.entrySet()) {
+            addToKey(entry.getKey());
+            addFileToKey(entry.getValue());
+        }
+    }
+
+    /**
+     * Adds the content of the given file or directory to the key of the cache entry.
+     * In the case of a directory, the content of all regular files is added in the order of their paths.
+     *
+     * @param file the file or directory to add
+     * @throws IOException if an error occurred while reading a file
+     */
+    void addContentToKey(Path file) throws IOException {
+        if (Files.isDirectory(file)) {
+            final List<Path> files;
+            try (Stream<Path> stream = Files.walk(file)) {
+                files = stream.filter(Files::isRegularFile).sorted().toList();
+            }
+            for (Path member : files) {
+                addToKey(portable(file.relativize(member)));
+                addFileToKey(member);
+            }
+        } else {
+            addFileToKey(file);
+        }
+    }
+
+    /**
+     * Adds the content of the given regular file to the key of the cache entry, followed by its length.
+     */
+    private void addFileToKey(final Path file) throws IOException {
+        long length = 0;
+        try (InputStream in = Files.newInputStream(file)) {
+            @SuppressWarnings("checkstyle:MagicNumber")
+            var buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) >= 0) {
+                digest.update(buffer, 0, n);
+                length += n;
+            }
+        }
+        addToKey(length);
+    }
+
+    /**
+     * {@return the key of the cache entry, computed from all inputs added so far}.
+     * No input can be added after this method has been invoked.
+     */
+    String key() {
+        if (key == null) {
+            key = HexFormat.of().formatHex(digest.digest());
+        }
+        return key;
+    }
+
+    /**
+     * {@return a name identifying the given source file independently of the project location}.
+     */
+    private static String name(final SourceFile source) {
+        final SourceDirectory dir = source.directory;
+        return dir.moduleName + ":" + dir.release + ':' + portable(dir.root.relativize(source.file));
+    }
+
+    /**
+     * {@return the given relative path with {@code '/'} as the name separator}.
+     */
+    private static String portable(Path path) {
+        return path.toString().replace(File.separatorChar, '/');
+    }
+
+    /**
+     * {@return the CRC32C checksum of the content of the given file}.
+     */
+    private static long checksum(final Path file) throws IOException {
+        var crc = new CRC32C();
+        try (InputStream in = Files.newInputStream(file)) {
+            @SuppressWarnings("checkstyle:MagicNumber")
+            var buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) >= 0) {
+                crc.update(buffer, 0, n);
+            }
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * Reads the list of files of the given cache entry.
+     *
+     * @param entry the entry directory
+     * @return the content of the manifest, or {@code null} if the entry does not exist or is invalid
+     * @throws IOException if an error occurred while reading the manifest
+     */
+    private Manifest readManifest(final Path entry) throws IOException {
+        try (DataInputStream in =
+                new DataInputStream(new BufferedInputStream(Files.newInputStream(entry.resolve(MANIFEST))))) {
+            if (in.readLong() != MAGIC_NUMBER) {
+                return null;
+            }
+            in.readLong(); // Total size, used only for eviction.
+            int count = in.readInt();
+            final var files = new ArrayList<FileInfo>(count);
+            while (--count >= 0) {
+                files.add(new FileInfo(in.readUnsignedByte(), in.readUTF(), in.readLong(), in.readLong()));
+            }
+            count = in.readInt();
+            final var outputs = new HashMap<String, int[]>(count + count / 3);
+            while (--count >= 0) {
+                final String source = in.readUTF();
+                final var indexes = new int[in.readInt()];
+                for (int i = 0; i < indexes.length; i++) {
+                    indexes[i] = Objects.checkIndex(in.readInt(), files.size());
+                }
+                outputs.put(source, indexes);
+            }
+            return new Manifest(files, outputs);
+        } catch (NoSuchFileException | EOFException | IndexOutOfBoundsException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Restores the files of the cache entry identified by the key, if that entry exists.
+     * If the entry does not exist locally, it is downloaded from the remote tier if any.
+     * The files are restored in the output roots given at construction time, and the
+     * {@linkplain SourceFile#setOutputFiles output files} of the given sources are set.
+     *
+     * @param sources the source files of the compilation, for setting their output files
+     * @return whether the entry exists and its files have been restored
+     * @throws IOException if an error occurred while reading the entry or writing the files
+     */
+    boolean restore(final Collection<SourceFile> sources) throws IOException {
+        final Path entry = directory.resolve(key());
+        Manifest manifest = readManifest(entry);
+        if (manifest == null && remote != null) {
+            final Path work = createWorkDirectory();
+            try {
+                if (remote.download(key, work)) {
+                    publish(work, entry);
+                    manifest = readManifest(entry);
+                }
+            } finally {
+                IncrementalBuild.deleteTree(work);
+            }
+        }
+        if (manifest == null) {
+            return false;
+        }
+        final List<FileInfo> files = manifest.files();
+        for (FileInfo file : files) {
+            final Path cached = file.cached(entry);
+            if (file.root() >= roots.size()
+                    || Files.size(cached) != file.size()
+                    || checksum(cached) != file.checksum()) {
+                logger.warn("Discarding the build cache entry " + entry + " because its content has been modified.");
+                remove(entry);
+                return false;
+            }
+        }
+        final var targets = new Path[files.size()];
+        for (int i = 0; i < targets.length; i++) {
+            final FileInfo file = files.get(i);
+            final Path cached = file.cached(entry);
+            final Path target = roots.get(file.root()).resolve(file.path());
+            targets[i] = target;
+            Files.createDirectories(target.getParent());
+            Files.copy(cached, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        for (SourceFile source : sources) {
+            final int[] indexes = manifest.outputs().get(name(source));
+            if (indexes != null) {
+                final var outputs = new Path[indexes.length];
+                for (int i = 0; i < indexes.length; i++) {
+                    outputs[i] = targets[indexes[i]];
+                }
+                source.setOutputFiles(List.of(outputs));
+            }
+        }
+        Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+        return true;
+    }
+
+    /**
+     * Saves the given files in a new cache entry identified by the key, uploads the entry to the remote tier
+     * if any, then evicts the least recently used entries if the cache is too large. The files are copied in
+     * the cache, so that tools modifying the output files in place after this method call do not alter the cache.
+     * This method does nothing if a valid entry already exists for the key, or if a file is not in an output root.
+     * The output files of each source file, if known, are recorded in the entry.
+     *
+     * @param files the files written by the compiler
+     * @param sources the source files of the compilation
+     * @throws IOException if an error occurred while writing the entry
+     */
+    void store(final Collection<Path> files, final Collection<SourceFile> sources) throws IOException {
+        final Path entry = directory.resolve(key());
+        if (Files.isDirectory(entry)) {
+            if (readManifest(entry) != null) {
+                return;
+            }
+            remove(entry); // Entry written in an older format.
+        }
+        final var infos = new ArrayList<FileInfo>(files.size());
+        final var indexes = new HashMap<Path, Integer>(files.size() + files.size() / 3);
+        next:
+        for (Path file : files) {
+            for (int i = 0; i < roots.size(); i++) {
+                final Path root = roots.get(i);
+                if (file.startsWith(root)) {
+                    indexes.put(file, infos.size());
+                    infos.add(new FileInfo(i, portable(root.relativize(file)), 0, 0));
+                    continue next;
+                }
+            }
+            logger.debug("Compilation result not cached because " + file + " is outside the output directories.");
+            return;
+        }
+        final Path work = createWorkDirectory();
+        try {
+            long totalSize = 0;
+            for (int i = 0; i < infos.size(); i++) {
+                final FileInfo info = infos.get(i);
+                final byte[] content = Files.readAllBytes(roots.get(info.root()).resolve(info.path()));
+                final Path cached = info.cached(work);
+                Files.createDirectories(cached.getParent());
+                Files.write(cached, content);
+                var crc = new CRC32C();
+                crc.update(content);
+                infos.set(i, new FileInfo(info.root(), info.path(), content.length, crc.getValue()));
+                totalSize += content.length;
+            }
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(work.resolve(MANIFEST))))) {
+                out.writeLong(MAGIC_NUMBER);
+                out.writeLong(totalSize);
+                out.writeInt(infos.size());
+                for (FileInfo info : infos) {
+                    out.writeByte(info.root());
+                    out.writeUTF(info.path());
+                    out.writeLong(info.size());
+                    out.writeLong(info.checksum());
+                }
+                final var outputs = new LinkedHashMap<String, int[]>();
+                for (SourceFile source : sources) {
+                    final List<Path> outputFiles = source.getOutputFiles();
+                    if (outputFiles != null) {
+                        final int[] list = outputFiles.stream()
+                                .map(indexes::get)
+                                .filter(Objects::nonNull)
+                                .mapToInt(Integer::intValue)
+                                .toArray();
+                        if (list.length == outputFiles.size()) {
+                            outputs.put(name(source), list);
+                        }
+                    }
+                }
+                out.writeInt(outputs.size());
+                for (Map.Entry<String, int[]> output : outputs.entrySet()) {
+                    out.writeUTF(output.getKey());
+                    out.writeInt(output.getValue().length);
+                    for (int index : output.getValue()) {
+                        out.writeInt(index);
+                    }
+                }
+            }
+            if (publish(work, entry) && remote != null) {
+                remote.upload(key, entry, work.getParent());
+            }
+        } finally {
+            IncrementalBuild.deleteTree(work);
+        }
+        evict();
+    }
+
+    /**
+     * {@return a new empty directory where to build an entry before to publish it}.
+     */
+    private Path createWorkDirectory() throws IOException {
+        return Files.createTempDirectory(Files.createDirectories(directory.resolve(TEMPORARY)), key());
+    }
+
+    /**
+     * Moves a complete entry from its work directory to its final location with an atomic operation.
+     *
+     * @param work the directory where the entry has been built
+     * @param entry the final location of the entry
+     * @return whether the entry has been moved, or {@code false} if it has been published concurrently
+     * @throws IOException if an error occurred while moving the directory
+     */
+    private static boolean publish(final Path work, final Path entry) throws IOException {
+        try {
+            Files.move(work, entry, StandardCopyOption.ATOMIC_MOVE);
+        } catch (FileAlreadyExistsException | DirectoryNotEmptyException e) {
+            return false; // The same entry has been stored concurrently by another build.
+        }
+        Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+        return true;
+    }
+
+    /**
+     * Deletes the least recently used entries until the total size of the cache is not greater than the maximal
+     * size. This method also deletes the temporary files abandoned by interrupted builds.
+     *
+     * @throws IOException if an error occurred while listing or deleting the entries
+     */
+    private void evict() throws IOException {
+        final var usages = new ArrayList<Usage>();
+        long totalSize = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path entry : stream) {
+                if (TEMPORARY.equals(entry.getFileName().toString())) {
+                    continue;
+                }
+                try (DataInputStream in = new DataInputStream(Files.newInputStream(entry.resolve(MANIFEST)))) {
+                    if (in.readLong() == MAGIC_NUMBER) {
+                        final long size = in.readLong();
+                        usages.add(new Usage(entry, size, Files.getLastModifiedTime(entry)));
+                        totalSize += size;
+                    }
+                } catch (NoSuchFileException | EOFException e) {
+                    // Not an entry, or entry deleted concurrently.
+                }
+            }
+        }
+        if (totalSize > maxSize) {
+            usages.sort(Comparator.comparing(Usage::lastUsed));
+            for (Usage usage : usages) {
+                remove(usage.entry());
+                totalSize -= usage.size();
+                if (totalSize <= maxSize) {
+                    break;
+                }
+            }
+        }
+        final long abandoned = System.currentTimeMillis() - ABANDONED_AGE;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory.resolve(TEMPORARY))) {
+            for (Path file : stream) {
+                if (Files.getLastModifiedTime(file).toMillis() < abandoned) {
+                    IncrementalBuild.deleteTree(file);
+                }
+            }
+        } catch (NoSuchFileException e) {
+            // Deleted concurrently, ignore.
+        }
+    }
+
+    /**
+     * Deletes the given cache entry. The entry is first moved to the temporary directory with an atomic
+     * operation, so that concurrent builds do not see a partially deleted entry.
+     */
+    private void remove(final Path entry) throws IOException {
+        final Path trash = Files.createTempDirectory(Files.createDirectories(directory.resolve(TEMPORARY)), "evicted");
+        try {
+            Files.move(entry, trash.resolve(entry.getFileName()), StandardCopyOption.ATOMIC_MOVE);
+        } catch (NoSuchFileException e) {
+            // Deleted concurrently by another build.
+        } finally {
+            IncrementalBuild.deleteTree(trash);
+        }
+    }
+}
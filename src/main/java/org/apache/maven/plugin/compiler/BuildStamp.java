@@ -0,0 +1,342 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugin.compiler;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static org.apache.maven.plugin.compiler.SourceDirectory.CLASS_FILE_SUFFIX;
+
+/**
+ * A small file written after the successful compilation of the main classes of a module.
+ * The stamp contains a generation number, which increases after each compilation,
+ * and the fingerprint of the Application Binary Interface (ABI) of the compiled classes.
+ * When a module depends on the output directory of another module of the same reactor,
+ * the incremental build reads this stamp instead of parsing all class files.
+ *
+ * <p>The stamp is deleted before compilation starts and written again only after success.
+ * Therefore, the absence of stamp means that the directory content is unknown,
+ * in which case the dependent modules fallback on scanning the directory.
+ * A stamp which is not older than the output directory is trusted without listing the class files.
+ * If files have been added or removed in the output directory after the stamp was written, for example
+ * by another tool, the directory is more recent than the stamp. In that case, the number, total size and
+ * latest modification time of the class files, which are also stored in the stamp, are compared with the
+ * content of the directory before the stamp is trusted.</p>
+ *
+ * <p>The stamp contains also the fingerprint of each class, together with the size and modification
+ * time of the class file. This information is used for updating the stamp after an incremental build
+ * by parsing only the class files written by the compiler.</p>
+ *
+ * <h2>File format</h2>
+ * The file is stored in the {@code maven-status/maven-compiler-plugin} directory, which is a sibling
+ * of the output directory. The file name is the name of the output directory with the {@code ".stamp"}
+ * extension. The content is in big-endian order:
+ *
+ * <ul>
+ *   <li>The magic number, the generation number and the ABI fingerprint, as <var>long</var>.</li>
+ *   <li>The number of class files as an <var>int</var>, their total size and their latest modification
+ *       time in milliseconds since January 1st, 1970, as <var>long</var>.</li>
+ *   <li>For each class file, the path relative to the output directory as written by
+ *       {@link DataOutputStream#writeUTF(String)}, the size and modification time as <var>long</var>,
+ *       and the {@linkplain ClassScanner#classFingerprint(byte[], boolean) class fingerprint} as written by
+ *       {@code writeUTF}, or an empty string if the class is not part of the ABI.</li>
+ * </ul>
+ */
+final class BuildStamp {
+    /**
+     * The magic number for identifying the file format.
+     */
+    private static final long MAGIC_NUMBER = 0x4D434253544D5033L;
+
+    /**
+     * The extension of stamp files.
+     */
+    private static final String EXTENSION = ".stamp";
+
+    /**
+     * Number which increases each time that the classes are compiled.
+     * This is the build time in milliseconds, or the previous generation + 1 if the clock went backward.
+     * Using the time instead of a counter keeps the number increasing even after a {@code mvn clean}.
+     */
+    final long generation;
+
+    /**
+     * Fingerprint of the ABI of the compiled classes.
+     *
+     * @see ClassScanner#fingerprint(Path)
+     */
+    final long fingerprint;
+
+    /**
+     * Summary of the class files when the stamp was written.
+     */
+    private final Summary summary;
+
+    /**
+     * Information about each class file, with paths relative to the output directory as keys.
+     * This map is empty if the stamp has been read by {@link #read(Path)}.
+     */
+    private final Map<String, ClassInfo> classes;
+
+    /**
+     * Number, total size and latest modification time of the class files in an output directory.
+     *
+     * @param count number of class files
+     * @param size total size of the class files in bytes
+     * @param lastModified latest modification time of the class files, in milliseconds since January 1st, 1970
+     */
+    private record Summary(int count, long size, long lastModified) {}
+
+    /**
+     * Information about a class file when the stamp was written.
+     *
+     * @param size size of the class file in bytes
+     * @param lastModified modification time of the class file, in milliseconds since January 1st, 1970
+     * @param fingerprint fingerprint of the class, or an empty string if the class is not part of the ABI
+     */
+    private record ClassInfo(long size, long lastModified, String fingerprint) {
+        /**
+         * Returns whether the given attributes are the same as the ones recorded in this object.
+         */
+        boolean isSameFile(final BasicFileAttributes attributes) {
+            return size == attributes.size()
+                    && lastModified == attributes.lastModifiedTime().toMillis();
+        }
+    }
+
+    /**
+     * Creates a new build stamp.
+     *
+     * @param generation number which increases each time that the classes are compiled
+     * @param fingerprint fingerprint of the ABI of the compiled classes
+     * @param summary summary of the class files when the stamp was written
+     * @param classes information about each class file, or an empty map if not loaded
+     */
+    private BuildStamp(long generation, long fingerprint, Summary summary, Map<String, ClassInfo> classes) {
+        this.generation = generation;
+        this.fingerprint = fingerprint;
+        this.summary = summary;
+        this.classes = classes;
+    }
+
+    /**
+     * {@return the file where to store the build stamp of the given output directory}.
+     *
+     * @param outputDirectory the root directory of the compiled classes
+     */
+    static Path file(Path outputDirectory) {
+        return outputDirectory
+                .resolveSibling("maven-status")
+                .resolve("maven-compiler-plugin")
+                .resolve(outputDirectory.getFileName() + EXTENSION);
+    }
+
+    /**
+     * Reads the build stamp of the given output directory. If the output directory has been modified
+     * after the stamp was written, the stamp is returned only if the class files have the same number,
+     * total size and latest modification time as when the stamp was written. That check requires to list
+     * the directory content, but is performed only in the uncommon case where the directory is more recent.
+     *
+     * @param outputDirectory the root directory of the compiled classes
+     * @return the build stamp, or {@code null} if none, if the file is not a valid stamp,
+     *         or if the class files have been modified after the stamp was written
+     * @throws IOException if an error occurred while reading the file or listing the directory
+     */
+    static BuildStamp read(Path outputDirectory) throws IOException {
+        final BuildStamp stamp = read(outputDirectory, false);
+        if (stamp != null) {
+            try {
+                final FileTime stampTime = Files.getLastModifiedTime(file(outputDirectory));
+                if (Files.getLastModifiedTime(outputDirectory).compareTo(stampTime) <= 0) {
+                    return stamp;
+                }
+            } catch (NoSuchFileException e) {
+                // Stamp deleted concurrently, or no output directory. Checked below.
+            }
+            if (stamp.summary.equals(listClassFiles(outputDirectory, null))) {
+                return stamp;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reads the build stamp of the given output directory without checking the class files.
+     *
+     * @param outputDirectory the root directory of the compiled classes
+     * @param entries whether to read also the information about each class file
+     * @return the build stamp, or {@code null} if none or if the file is not a valid stamp
+     * @throws IOException if an error occurred while reading the file
+     */
+    private static BuildStamp read(Path outputDirectory, boolean entries) throws IOException {
+        try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file(outputDirectory))))) {
+            if (in.readLong() != MAGIC_NUMBER) {
+                return null;
+            }
+            final long generation = in.readLong();
+            final long fingerprint = in.readLong();
+            final var summary = new Summary(in.readInt(), in.readLong(), in.readLong());
+            final var classes = new HashMap<String, ClassInfo>();
+            if (entries) {
+                for (int i = 0; i < summary.count; i++) {
+                    classes.put(in.readUTF(), new ClassInfo(in.readLong(), in.readLong(), in.readUTF()));
+                }
+                if (in.read() >= 0) {
+                    return null;
+                }
+            }
+            return new BuildStamp(generation, fingerprint, summary, classes);
+        } catch (NoSuchFileException e) {
+            // No stamp, or compilation in progress.
+        } catch (EOFException e) {
+            // Truncated or older format, handled as no stamp.
+        }
+        return null;
+    }
+
+    /**
+     * Deletes the build stamp of the given output directory before compilation.
+     * This method returns the previous stamp, for making sure that the next generation
+     * number will be greater and for reusing the fingerprints of unmodified classes.
+     *
+     * @param outputDirectory the root directory of the classes to compile
+     * @return the stamp of the previous build, or {@code null} if unknown
+     * @throws IOException if an error occurred while reading or deleting the file
+     */
+    static BuildStamp invalidate(Path outputDirectory) throws IOException {
+        BuildStamp previous = read(outputDirectory, true);
+        Files.deleteIfExists(file(outputDirectory));
+        return previous;
+    }
+
+    /**
+     * Writes the build stamp of the given output directory after successful compilation.
+     * The fingerprint is computed from the compiled classes. Only the class files written by the compiler,
+     * or which have a different size or modification time than in the previous stamp, are parsed.
+     *
+     * @param outputDirectory the root directory of the compiled classes
+     * @param previous the value returned by {@link #invalidate(Path)}, or {@code null} if none
+     * @param buildTime the build time in milliseconds since January 1st, 1970
+     * @param written the files written by the compiler, or {@code null} if unknown
+     * @throws IOException if an error occurred while reading the classes or writing the file
+     */
+    static void write(Path outputDirectory, BuildStamp previous, long buildTime, Set<Path> written)
+            throws IOException {
+        final long generation = Math.max((previous != null ? previous.generation : 0) + 1, buildTime);
+        final var files = new HashMap<Path, BasicFileAttributes>();
+        final Summary summary = listClassFiles(outputDirectory, files);
+        final var classes = new HashMap<String, ClassInfo>(files.size() + files.size() / 3);
+        final var fingerprints = new HashMap<String, String>(files.size() + files.size() / 3);
+        for (Map.Entry<Path, BasicFileAttributes> entry : files.entrySet()) {
+            final Path file = entry.getKey();
+            final BasicFileAttributes attributes = entry.getValue();
+            final String name = outputDirectory.relativize(file).toString();
+            ClassInfo info = (previous != null && (written == null || !written.contains(file)))
+                    ? previous.classes.get(name)
+                    : null;
+            if (info == null || !info.isSameFile(attributes)) {
+                String value = ClassScanner.classFingerprint(Files.readAllBytes(file), false);
+                info = new ClassInfo(
+                        attributes.size(),
+                        attributes.lastModifiedTime().toMillis(),
+                        (value != null) ? value : "");
+            }
+            classes.put(name, info);
+            if (!info.fingerprint.isEmpty()) {
+                fingerprints.put(name, info.fingerprint);
+            }
+        }
+        final long fingerprint = ClassScanner.fingerprint(fingerprints);
+        final Path file = Files.createDirectories(file(outputDirectory).getParent())
+                .resolve(outputDirectory.getFileName() + EXTENSION);
+        final Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeLong(MAGIC_NUMBER);
+            out.writeLong(generation);
+            out.writeLong(fingerprint);
+            out.writeInt(summary.count);
+            out.writeLong(summary.size);
+            out.writeLong(summary.lastModified);
+            for (Map.Entry<String, ClassInfo> entry : classes.entrySet()) {
+                final ClassInfo info = entry.getValue();
+                out.writeUTF(entry.getKey());
+                out.writeLong(info.size);
+                out.writeLong(info.lastModified);
+                out.writeUTF(info.fingerprint);
+            }
+        }
+        try {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Lists the class files in the given directory and computes a summary of them.
+     *
+     * @param outputDirectory the root directory of the compiled classes
+     * @param addTo where to add the class files with their attributes, or {@code null} if not needed
+     * @return number, total size and latest modification time of the class files
+     * @throws IOException if an error occurred while listing the directory
+     */
+    private static Summary listClassFiles(Path outputDirectory, Map<Path, BasicFileAttributes> addTo)
+            throws IOException {
+        final var visitor = new SimpleFileVisitor<Path>() {
+            int count;
+            long size;
+            long lastModified;
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                if (attributes.isRegularFile() && file.getFileName().toString().endsWith(CLASS_FILE_SUFFIX)) {
+                    count++;
+                    size += attributes.size();
+                    lastModified = Math.max(lastModified, attributes.lastModifiedTime().toMillis());
+                    if (addTo != null) {
+                        addTo.put(file, attributes);
+                    }
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        };
+        try {
+            Files.walkFileTree(outputDirectory, visitor);
+        } catch (NoSuchFileException e) {
+            // No class file.
+        }
+        return new Summary(visitor.count, visitor.size, visitor.lastModified);
+    }
+}
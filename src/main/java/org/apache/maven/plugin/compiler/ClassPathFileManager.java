@@ -0,0 +1,715 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugin.compiler;
+
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.tools.FileObject;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+
+/**
+ * A file manager which lists the content of the class-path using the JAR files cached for the whole session.
+ * The standard file manager opens and indexes each JAR file of the class-path for each compilation.
+ * This file manager uses instead the {@linkplain JarArchives archives} opened by previous compilations
+ * of the session, or prefetched in background while the compilation was prepared.
+ * If a {@linkplain ClassPathIndex persistent index} of the packages is available, then a JAR file
+ * is opened only when the compiler requests a package contained in that JAR file.
+ *
+ * <p>Only the listing and lookup of files in the {@link StandardLocation#CLASS_PATH} location are intercepted.
+ * The class-path is still declared to the wrapped file manager, which handles all other operations.
+ * If a JAR file cannot be indexed, then this file manager delegates to the wrapped file manager,
+ * which will report the error.</p>
+ *
+ * <p>This file manager holds a lease on each archive that it opened, so that an archive replaced
+ * because its JAR file has been modified is not closed while the compilation may still read it.
+ * The leases shall be {@linkplain #release() released} after the compilation.</p>
+ */
+final class ClassPathFileManager extends ForwardingStandardJavaFileManager {
+    /**
+     * The cache of JAR files opened in the current session.
+     */
+    private final JarArchives archives;
+
+    /**
+     * The Java release for which to select the entries of multi-release JAR files.
+     */
+    private final int release;
+
+    /**
+     * The encoding of source files found on the class-path, or {@code null} for the platform default.
+     */
+    private final Charset charset;
+
+    /**
+     * The persistent index of the packages contained in the JAR files, or {@code null} if none.
+     * If {@code null}, all JAR files of the class-path are opened for listing their packages.
+     */
+    private final ClassPathIndex index;
+
+    /**
+     * The class-path for which {@link #containers} has been computed.
+     * Used for detecting changes in the class-path declared to the wrapped file manager.
+     */
+    private Iterable<? extends Path> classpath;
+
+    /**
+     * The elements of the class-path as {@link Jar} or {@link Directory} instances,
+     * or {@code null} if the listing shall be delegated.
+     */
+    private List<Object> containers;
+
+    /**
+     * The directories of the class-path, in class-path order.
+     * Directories are not indexed, so they are searched for all packages.
+     */
+    private List<Directory> directories;
+
+    /**
+     * The JAR files of the class-path which contain each package directory, in class-path order.
+     * Keys use {@code '/'} separators.
+     */
+    private Map<String, List<Jar>> jarsByPackage;
+
+    /**
+     * The archives on which this file manager holds a lease.
+     * They are released by {@link #release()}.
+     */
+    private final List<JarArchives.Archive> leased;
+
+    /**
+     * A directory of the class-path.
+     *
+     * @param position index of this element in the class-path
+     * @param root the directory
+     */
+    private record Directory(int position, Path root) {}
+
+    /**
+     * A JAR file of the class-path. The JAR file is opened only when a file is requested
+     * in one of its packages, unless the JAR file needed to be opened for updating the index.
+     */
+    private final class Jar {
+        /**
+         * Index of this element in the class-path.
+         */
+        final int position;
+
+        /**
+         * Path to the JAR file.
+         */
+        final Path file;
+
+        /**
+         * The opened JAR file, or {@code null} if not yet opened.
+         */
+        private JarArchives.Archive archive;
+
+        /**
+         * Creates a reference to the given JAR file.
+         */
+        Jar(final int position, final Path file) {
+            this.position = position;
+            this.file = file;
+        }
+
+        /**
+         * {@return the opened JAR file}.
+         *
+         * @throws IOException if the JAR file cannot be opened
+         */
+        JarArchives.Archive archive() throws IOException {
+            if (archive == null) {
+                archive = archives.acquire(file);
+                leased.add(archive);
+            }
+            return archive;
+        }
+    }
+
+    /**
+     * Creates a new file manager wrapping the given file manager.
+     *
+     * @param fileManager the file manager to which to delegate the operations
+     * @param archives the cache of JAR files opened in the current session
+     * @param index the persistent index of the packages of JAR files, or {@code null} if none
+     * @param options the compiler options, used for selecting the entries of multi-release JAR files
+     * @param charset the encoding of source files, or {@code null} for the platform default
+     */
+    ClassPathFileManager(
+            StandardJavaFileManager fileManager,
+            JarArchives archives,
+            ClassPathIndex index,
+            List<String> options,
+            Charset charset) {
+        super(fileManager);
+        this.archives = archives;
+        this.index = index;
+        this.release = release(options);
+        this.charset = charset;
+        leased = new ArrayList<>();
+    }
+
+    /**
+     * Releases the leases held on the archives opened by this file manager.
+     * This method shall be invoked after the compilation. The wrapped file manager is not closed,
+     * since it may be reused by other compilations.
+     */
+    void release() {
+        for (JarArchives.Archive archive : leased) {
+            archives.release(archive);
+        }
+        leased.clear();
+    }
+
+    /**
+     * {@return the Java release targeted by the given compiler options}.
+     * This is the value of the {@code --release} or {@code --target} option,
+     * or the version of the running Java environment if none.
+     *
+     * @param options the compiler options
+     */
+    static int release(final List<String> options) {
+        String release = null;
+        String target = null;
+        for (Iterator<String> it = options.iterator(); it.hasNext(); ) {
+            final String option = it.next();
+            switch (option) {
+                case "--release":
+                    release = it.hasNext() ? it.next() : null;
+                    break;
+                case "--target":
+                case "-target":
+                    target = it.hasNext() ? it.next() : null;
+                    break;
+                default:
+                    if (option.startsWith("--release=")) {
+                        release = option.substring(option.indexOf('=') + 1);
+                    } else if (option.startsWith("--target=")) {
+                        target = option.substring(option.indexOf('=') + 1);
+                    }
+                    break;
+            }
+        }
+        String version = (release != null) ? release : target;
+        if (version != null) {
+            version = version.trim();
+            if (version.startsWith("1.")) {
+                version = version.substring(2);
+            }
+            try {
+                return Integer.parseInt(version);
+            } catch (NumberFormatException e) {
+                // Let the compiler report the error.
+            }
+        }
+        return Runtime.version().feature();
+    }
+
+    /**
+     * {@return the elements of the class-path, or {@code null} if the listing shall be delegated}.
+     * The list is recomputed if the class-path declared to the wrapped file manager changed.
+     * The packages of each JAR file are taken from the index, so that only the JAR files
+     * which are not indexed yet or which have been modified need to be opened.
+     */
+    private List<Object> containers() {
+        final Iterable<? extends Path> paths = fileManager.getLocationAsPaths(StandardLocation.CLASS_PATH);
+        if (paths != classpath) {
+            classpath = paths;
+            containers = null;
+            if (paths != null) {
+                final var list = new ArrayList<Object>();
+                final var dirs = new ArrayList<Directory>();
+                final var byPackage = new HashMap<String, List<Jar>>();
+                try {
+                    for (Path path : paths) {
+                        if (Files.isDirectory(path)) {
+                            final var directory = new Directory(list.size(), path);
+                            dirs.add(directory);
+                            list.add(directory);
+                        } else if (Files.isRegularFile(path)) {
+                            final var jar = new Jar(list.size(), path);
+                            final Collection<String> packages;
+                            if (index != null) {
+                                packages = index.packages(path, archives);
+                            } else {
+                                packages = jar.archive().directories();
+                            }
+                            for (String directory : packages) {
+                                byPackage.computeIfAbsent(directory, (key) -> new ArrayList<>()).add(jar);
+                            }
+                            list.add(jar);
+                        }
+                    }
+                    containers = list;
+                    directories = dirs;
+                    jarsByPackage = byPackage;
+                } catch (IOException e) {
+                    // Let the wrapped file manager report the error.
+                }
+            }
+        }
+        return containers;
+    }
+
+    /**
+     * {@return the elements of the class-path which may contain the given package directory}.
+     * Those elements are the JAR files containing that package and all directories, in class-path order.
+     *
+     * @param directory the package directory with {@code '/'} separators
+     */
+    private List<Object> containers(final String directory) {
+        final List<Jar> jars = jarsByPackage.getOrDefault(directory, List.of());
+        if (directories.isEmpty()) {
+            return List.copyOf(jars);
+        }
+        final var merged = new ArrayList<Object>(jars.size() + directories.size());
+        int i = 0;
+        for (Directory d : directories) {
+            while (i < jars.size() && jars.get(i).position < d.position) {
+                merged.add(jars.get(i++));
+            }
+            merged.add(d);
+        }
+        merged.addAll(jars.subList(i, jars.size()));
+        return merged;
+    }
+
+    /**
+     * Lists the files in the given package. If the location is the class-path, then the files are listed
+     * from the archives cached for the session. Only the JAR files which contain the package are opened.
+     */
+    @Override
+    public Iterable<JavaFileObject> list(
+            Location location, String packageName, Set<JavaFileObject.Kind> kinds, boolean recurse)
+            throws IOException {
+        if (location == StandardLocation.CLASS_PATH && containers() != null) {
+            final String directory = packageName.replace('.', '/');
+            final var files = new ArrayList<JavaFileObject>();
+            for (Object container : recurse ? containers : containers(directory)) {
+                if (container instanceof Jar jar) {
+                    if (recurse) {
+                        for (String d : jar.archive().directories()) {
+                            if (isInPackage(d, directory)) {
+                                addEntries(files, jar.archive(), d, kinds);
+                            }
+                        }
+                    } else {
+                        addEntries(files, jar.archive(), directory, kinds);
+                    }
+                } else {
+                    addFiles(files, ((Directory) container).root, directory, kinds, recurse);
+                }
+            }
+            return files;
+        }
+        return super.list(location, packageName, kinds, recurse);
+    }
+
+    /**
+     * Returns the class of the given name and kind. If the location is the class-path,
+     * then only the JAR files which contain the package of the class are searched.
+     */
+    @Override
+    public JavaFileObject getJavaFileForInput(Location location, String className, JavaFileObject.Kind kind)
+            throws IOException {
+        if (location == StandardLocation.CLASS_PATH && containers() != null) {
+            return find(className.replace('.', '/') + kind.extension);
+        }
+        return super.getJavaFileForInput(location, className, kind);
+    }
+
+    /**
+     * Returns the resource of the given name in the given package. If the location is the class-path,
+     * then only the JAR files which contain the package of the resource are searched.
+     */
+    @Override
+    public FileObject getFileForInput(Location location, String packageName, String relativeName)
+            throws IOException {
+        if (location == StandardLocation.CLASS_PATH && containers() != null) {
+            String name = relativeName;
+            if (!packageName.isEmpty()) {
+                name = packageName.replace('.', '/') + '/' + name;
+            }
+            return find(name);
+        }
+        return super.getFileForInput(location, packageName, relativeName);
+    }
+
+    /**
+     * Searches the given file in the class-path elements which may contain its package directory.
+     *
+     * @param name the name of the file relative to the class-path elements, with {@code '/'} separators
+     * @return the first file found in class-path order, or {@code null} if none
+     * @throws IOException if a JAR file cannot be opened
+     */
+    private JavaFileObject find(final String name) throws IOException {
+        final int s = name.lastIndexOf('/');
+        final String directory = (s >= 0) ? name.substring(0, s) : "";
+        final String simpleName = name.substring(s + 1);
+        final JavaFileObject.Kind kind = kind(simpleName);
+        for (Object container : containers(directory)) {
+            if (container instanceof Jar jar) {
+                for (JarArchives.Entry entry : jar.archive().list(directory, release)) {
+                    if (entry.name().equals(simpleName)) {
+                        return new ClassPathFile(jar.archive(), entry.entry(), name, kind, charset);
+                    }
+                }
+            } else {
+                final Path root = ((Directory) container).root;
+                final Path file = root.resolve(name);
+                if (Files.isRegularFile(file)) {
+                    return new ClassPathFile(root, file, kind, charset);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * {@return whether the given directory is the given package directory or one of its sub-packages}.
+     */
+    private static boolean isInPackage(final String directory, final String packageDirectory) {
+        return packageDirectory.isEmpty()
+                || (directory.startsWith(packageDirectory)
+                        && (directory.length() == packageDirectory.length()
+                                || directory.charAt(packageDirectory.length()) == '/'));
+    }
+
+    /**
+     * Adds the entries of the given package directory of a JAR file.
+     */
+    private void addEntries(
+            final List<JavaFileObject> files,
+            final JarArchives.Archive archive,
+            final String directory,
+            final Set<JavaFileObject.Kind> kinds) {
+        for (JarArchives.Entry entry : archive.list(directory, release)) {
+            final JavaFileObject.Kind kind = kind(entry.name());
+            if (kinds.contains(kind)) {
+                final String name = directory.isEmpty() ? entry.name() : directory + '/' + entry.name();
+                files.add(new ClassPathFile(archive, entry.entry(), name, kind, charset));
+            }
+        }
+    }
+
+    /**
+     * Adds the files of the given package directory of a class-path directory.
+     */
+    private void addFiles(
+            final List<JavaFileObject> files,
+            final Path root,
+            final String directory,
+            final Set<JavaFileObject.Kind> kinds,
+            final boolean recurse)
+            throws IOException {
+        final Path packageDirectory = directory.isEmpty() ? root : root.resolve(directory);
+        if (Files.isDirectory(packageDirectory)) {
+            try (Stream<Path> stream = Files.walk(packageDirectory, recurse ? Integer.MAX_VALUE : 1)) {
+                stream.forEach((file) -> {
+                    final JavaFileObject.Kind kind = kind(file.getFileName().toString());
+                    if (kinds.contains(kind) && Files.isRegularFile(file)) {
+                        files.add(new ClassPathFile(root, file, kind, charset));
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * {@return the kind of the file of the given name}.
+     */
+    private static JavaFileObject.Kind kind(final String name) {
+        for (JavaFileObject.Kind kind : JavaFileObject.Kind.values()) {
+            if (kind != JavaFileObject.Kind.OTHER && name.endsWith(kind.extension)) {
+                return kind;
+            }
+        }
+        return JavaFileObject.Kind.OTHER;
+    }
+
+    /**
+     * Infers the binary name of the given file, which may be a file listed by this file manager.
+     */
+    @Override
+    public String inferBinaryName(Location location, JavaFileObject file) {
+        if (file instanceof ClassPathFile f) {
+            return f.binaryName;
+        }
+        return super.inferBinaryName(location, file);
+    }
+
+    /**
+     * Compares the given files, which may be files listed by this file manager.
+     */
+    @Override
+    public boolean isSameFile(FileObject a, FileObject b) {
+        if (a instanceof ClassPathFile || b instanceof ClassPathFile) {
+            return a.equals(b);
+        }
+        return super.isSameFile(a, b);
+    }
+
+    /**
+     * Returns the path of the given file, which may be a file listed by this file manager.
+     *
+     * @throws IllegalArgumentException if the file is an entry of a JAR file
+     */
+    @Override
+    public Path asPath(FileObject file) {
+        if (file instanceof ClassPathFile f) {
+            if (f.file == null) {
+                throw new IllegalArgumentException("Not a file of the default file system: " + f.getName());
+            }
+            return f.file;
+        }
+        return super.asPath(file);
+    }
+
+    /**
+     * A file of the class-path, either in a directory or in a JAR file. This class does not extend
+     * {@link javax.tools.SimpleJavaFileObject} because the URI of a JAR entry has no path component.
+     * Those files are read-only.
+     */
+    private static final class ClassPathFile implements JavaFileObject {
+        /**
+         * The URI of this file.
+         */
+        private final URI uri;
+
+        /**
+         * The kind of this file.
+         */
+        private final Kind kind;
+
+        /**
+         * The binary name of the class, or the name of the resource with {@code '.'} separators.
+         */
+        final String binaryName;
+
+        /**
+         * The file in a directory, or {@code null} if this is an entry of a JAR file.
+         */
+        final Path file;
+
+        /**
+         * The JAR file, or {@code null} if this is a file in a directory.
+         */
+        private final JarArchives.Archive archive;
+
+        /**
+         * The entry in the JAR file, or {@code null} if this is a file in a directory.
+         */
+        private final ZipEntry entry;
+
+        /**
+         * The encoding of source files, or {@code null} for the platform default.
+         */
+        private final Charset charset;
+
+        /**
+         * The name of the file relative to the class-path element, with {@code '/'} separators.
+         */
+        private final String relativeName;
+
+        /**
+         * Creates a file for an entry of a JAR file.
+         */
+        ClassPathFile(JarArchives.Archive archive, ZipEntry entry, String name, Kind kind, Charset charset) {
+            this.uri = jarURI(archive.file, name);
+            this.kind = kind;
+            this.archive = archive;
+            this.entry = entry;
+            this.file = null;
+            this.charset = charset;
+            this.relativeName = name;
+            this.binaryName = binaryName(name, kind);
+        }
+
+        /**
+         * Creates a file for a file in a directory.
+         */
+        ClassPathFile(Path root, Path file, Kind kind, Charset charset) {
+            this.uri = file.toUri();
+            this.kind = kind;
+            this.archive = null;
+            this.entry = null;
+            this.file = file;
+            this.charset = charset;
+            this.relativeName = root.relativize(file).toString().replace(file.getFileSystem().getSeparator(), "/");
+            this.binaryName = binaryName(relativeName, kind);
+        }
+
+        /**
+         * {@return the URI of the given entry of the given JAR file}.
+         */
+        private static URI jarURI(final Path jar, final String name) {
+            try {
+                return new URI("jar", jar.toUri() + "!/" + name, null);
+            } catch (URISyntaxException e) {
+                throw new IllegalArgumentException(e);
+            }
+        }
+
+        /**
+         * {@return the binary name for the given relative file name}.
+         */
+        private static String binaryName(final String name, final Kind kind) {
+            int end = name.length();
+            if (kind != Kind.OTHER) {
+                end -= kind.extension.length();
+            }
+            return name.substring(0, end).replace('/', '.');
+        }
+
+        @Override
+        public URI toUri() {
+            return uri;
+        }
+
+        @Override
+        public Kind getKind() {
+            return kind;
+        }
+
+        @Override
+        public NestingKind getNestingKind() {
+            return null;
+        }
+
+        @Override
+        public Modifier getAccessLevel() {
+            return null;
+        }
+
+        /**
+         * {@return the name of this file for diagnostics}.
+         * The format is the same as the standard file manager.
+         */
+        @Override
+        public String getName() {
+            if (archive != null) {
+                return archive.file + "(/" + relativeName + ')';
+            }
+            return file.toString();
+        }
+
+        /**
+         * {@return whether this file has the given simple name and kind}.
+         */
+        @Override
+        public boolean isNameCompatible(String simpleName, Kind kind) {
+            return this.kind == kind
+                    && relativeName.substring(relativeName.lastIndexOf('/') + 1).equals(simpleName + kind.extension);
+        }
+
+        /**
+         * Opens the file for reading its bytes.
+         */
+        @Override
+        public InputStream openInputStream() throws IOException {
+            if (archive != null) {
+                return archive.zip.getInputStream(entry);
+            }
+            return Files.newInputStream(file);
+        }
+
+        /**
+         * Reads the content of the file as characters. Used for source files found on the class-path.
+         */
+        @Override
+        public CharSequence getCharContent(boolean ignoreEncodingErrors) throws IOException {
+            try (InputStream in = openInputStream()) {
+                return new String(in.readAllBytes(), (charset != null) ? charset : Charset.defaultCharset());
+            }
+        }
+
+        @Override
+        public Reader openReader(boolean ignoreEncodingErrors) throws IOException {
+            return new InputStreamReader(openInputStream(), (charset != null) ? charset : Charset.defaultCharset());
+        }
+
+        @Override
+        public OutputStream openOutputStream() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Writer openWriter() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean delete() {
+            return false;
+        }
+
+        /**
+         * {@return the time when the file was last modified}.
+         */
+        @Override
+        public long getLastModified() {
+            if (archive != null) {
+                return entry.getTime();
+            }
+            try {
+                return Files.getLastModifiedTime(file).toMillis();
+            } catch (IOException e) {
+                return 0;
+            }
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return (other instanceof ClassPathFile f) && uri.equals(f.uri);
+        }
+
+        @Override
+        public int hashCode() {
+            return uri.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return getName();
+        }
+    }
+}
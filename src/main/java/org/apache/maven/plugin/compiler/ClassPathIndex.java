@@ -0,0 +1,287 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugin.compiler;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Persistent index of the packages contained in the JAR files of the class-path.
+ * With this index, the compiler opens only the JAR files which contain the packages that it needs,
+ * instead of opening all JAR files of the class-path. Each JAR file is identified by its path,
+ * size and modification time. A JAR file which is not in the index, or which has been modified,
+ * is opened for updating the index. The index tells also whether each JAR file declares annotation
+ * processors, which allows to disable the search for annotation processors when there is none.
+ *
+ * <h2>File format</h2>
+ * The index is saved in a file next to the incremental build cache, with the {@code ".classpath"} extension.
+ * The file starts with a magic number followed by the number of JAR files. Then, for each JAR file,
+ * the path {@linkplain RelocatablePaths encoded} as an UTF string, the size, the modification time in
+ * milliseconds, whether the JAR file declares annotation processors, the number of package directories,
+ * and the package directories as UTF strings.
+ * Package directories use {@code '/'} separators.
+ *
+ * <p>This class is not thread-safe. An instance is used by only one compilation.</p>
+ */
+final class ClassPathIndex {
+    /**
+     * Magic number identifying the file format.
+     */
+    private static final long MAGIC_NUMBER = 0x4D4343504944582L;
+
+    /**
+     * The file which declares the annotation processors provided by a <abbr>JAR</abbr> file or directory.
+     */
+    private static final String PROCESSOR_SERVICE = "META-INF/services/javax.annotation.processing.Processor";
+
+    /**
+     * The file where the index is saved.
+     */
+    private final Path file;
+
+    /**
+     * Converts the paths to strings relative to well-known directories.
+     */
+    private final RelocatablePaths paths;
+
+    /**
+     * The JAR files read from the file, indexed by path.
+     */
+    private final Map<Path, Element> previous;
+
+    /**
+     * The JAR files used by the current compilation, in class-path order.
+     * Only those JAR files are saved, so that the index does not grow indefinitely.
+     */
+    private final Map<Path, Element> elements;
+
+    /**
+     * Whether {@link #elements} differs from the content of the file.
+     */
+    private boolean modified;
+
+    /**
+     * Information about a JAR file of the class-path.
+     *
+     * @param size size of the JAR file
+     * @param lastModified modification time of the JAR file in milliseconds
+     * @param processors whether the JAR file declares annotation processors
+     * @param packages the package directories, with {@code '/'} separators
+     */
+    private record Element(long size, long lastModified, boolean processors, Set<String> packages) {}
+
+    /**
+     * Creates an empty index.
+     */
+    private ClassPathIndex(final Path file, final RelocatablePaths paths) {
+        this.file = file;
+        this.paths = paths;
+        previous = new HashMap<>();
+        elements = new LinkedHashMap<>();
+    }
+
+    /**
+     * Reads the index saved in the given file. If the file does not exist
+     * or has not been written by this class, then an empty index is returned.
+     *
+     * @param file the file where the index is saved
+     * @param paths converter of the paths to strings relative to well-known directories
+     * @return the index, initially empty if the file does not exist or is invalid
+     * @throws IOException if an error occurred while reading the file
+     */
+    static ClassPathIndex read(final Path file, final RelocatablePaths paths) throws IOException {
+        final var index = new ClassPathIndex(file, paths);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readLong() != MAGIC_NUMBER) {
+                return index;
+            }
+            int count = in.readInt();
+            while (--count >= 0) {
+                final Path jar = paths.decode(in.readUTF());
+                final long size = in.readLong();
+                final long lastModified = in.readLong();
+                final boolean processors = in.readBoolean();
+                final var packages = new String[in.readInt()];
+                for (int i = 0; i < packages.length; i++) {
+                    packages[i] = in.readUTF();
+                }
+                index.previous.put(jar, new Element(size, lastModified, processors, Set.of(packages)));
+            }
+        } catch (NoSuchFileException | EOFException e) {
+            index.previous.clear();
+        }
+        return index;
+    }
+
+    /**
+     * {@return the JAR files of the given collection which are not in the index or which have been modified}.
+     * Those JAR files will need to be opened for updating the index.
+     *
+     * @param jars the JAR files of the class-path
+     */
+    List<Path> unindexed(final Collection<Path> jars) {
+        final var list = new ArrayList<Path>();
+        for (Path jar : jars) {
+            if (current(jar) == null) {
+                list.add(jar);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * {@return the element of the given JAR file if it is in the index and has not been modified, or null}.
+     */
+    private Element current(final Path jar) {
+        Element element = elements.get(jar);
+        if (element == null) {
+            element = previous.get(jar);
+            if (element == null) {
+                return null;
+            }
+        }
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(jar, BasicFileAttributes.class);
+            if (attributes.size() == element.size
+                    && attributes.lastModifiedTime().toMillis() == element.lastModified) {
+                return element;
+            }
+        } catch (IOException e) {
+            // Handled as a modified file.
+        }
+        return null;
+    }
+
+    /**
+     * {@return the information about the given JAR file}.
+     * If the JAR file is not in the index or has been modified, it is opened for updating the index.
+     *
+     * @param jar the JAR file
+     * @param archives the JAR files opened in the session, used if the index needs to be updated
+     * @throws IOException if the JAR file cannot be opened
+     */
+    private Element element(final Path jar, final JarArchives archives) throws IOException {
+        Element element = current(jar);
+        if (element == null) {
+            final BasicFileAttributes attributes = Files.readAttributes(jar, BasicFileAttributes.class);
+            final JarArchives.Archive archive = archives.acquire(jar);
+            try {
+                element = new Element(
+                        attributes.size(),
+                        attributes.lastModifiedTime().toMillis(),
+                        archive.zip.getEntry(PROCESSOR_SERVICE) != null,
+                        Set.copyOf(archive.directories()));
+            } finally {
+                archives.release(archive);
+            }
+            modified = true;
+        }
+        if (elements.put(jar, element) == null && !previous.containsKey(jar)) {
+            modified = true;
+        }
+        return element;
+    }
+
+    /**
+     * {@return the package directories of the given JAR file}.
+     * If the JAR file is not in the index or has been modified, it is opened for updating the index.
+     *
+     * @param jar the JAR file
+     * @param archives the JAR files opened in the session, used if the index needs to be updated
+     * @throws IOException if the JAR file cannot be opened
+     */
+    Set<String> packages(final Path jar, final JarArchives archives) throws IOException {
+        return element(jar, archives).packages;
+    }
+
+    /**
+     * {@return whether at least one element of the given class-path declares annotation processors}.
+     * This is the case of JAR files or directories containing a {@value #PROCESSOR_SERVICE} file.
+     * Directories are always checked, while JAR files are opened only if they are not in the index
+     * or have been modified.
+     *
+     * @param classpath the JAR files and directories of the class-path
+     * @param archives the JAR files opened in the session, used if the index needs to be updated
+     * @throws IOException if a JAR file cannot be opened
+     */
+    boolean hasProcessors(final Collection<Path> classpath, final JarArchives archives) throws IOException {
+        boolean found = false;
+        for (Path path : classpath) { // Do not stop at the first match, for indexing all JAR files.
+            if (Files.isDirectory(path)) {
+                found |= Files.isRegularFile(path.resolve(PROCESSOR_SERVICE));
+            } else if (Files.isRegularFile(path)) {
+                found |= element(path, archives).processors;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Saves the index if it has been modified, or if some JAR files of the previous compilation are
+     * no longer used. Only the JAR files used by the current compilation are saved.
+     *
+     * @throws IOException if an error occurred while writing the file
+     */
+    void write() throws IOException {
+        if (!modified && elements.size() == previous.size()) {
+            return;
+        }
+        final Path tmp = Files.createDirectories(file.getParent()).resolve(file.getFileName() + ".tmp");
+        try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeLong(MAGIC_NUMBER);
+            out.writeInt(elements.size());
+            for (Map.Entry<Path, Element> entry : elements.entrySet()) {
+                final Element element = entry.getValue();
+                out.writeUTF(paths.encode(entry.getKey()));
+                out.writeLong(element.size);
+                out.writeLong(element.lastModified);
+                out.writeBoolean(element.processors);
+                out.writeInt(element.packages.size());
+                for (String name : element.packages) {
+                    out.writeUTF(name);
+                }
+            }
+        }
+        try {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+        previous.clear();
+        previous.putAll(elements);
+        modified = false;
+    }
+}
@@ -0,0 +1,570 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugin.compiler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+import static org.apache.maven.plugin.compiler.SourceDirectory.CLASS_FILE_SUFFIX;
+
+/**
+ * Collects the declarations and references of a class file for incremental build purposes.
+ * The declarations visible to other classes are collected as text, then summarized by a fingerprint.
+ * Synthetic members are always ignored because they are compiler implementation details.
+ * Which other members are considered depends on the purpose of the scan:
+ *
+ * <ul>
+ *   <li>For the {@linkplain DependencyGraph dependency graph} between the classes of the project being compiled,
+ *       all non-private members are considered, because package-private members are visible to other classes of
+ *       the same package.</li>
+ *   <li>For the {@linkplain #fingerprint(Path) fingerprint of a JAR file}, only the public and protected
+ *       members of non-private classes are considered. This is the Application Binary Interface (ABI).
+ *       Package-private classes are included because their public members are inherited by public subclasses.</li>
+ *   <li>For the fingerprint of a directory, all non-private members are considered as for the dependency graph.
+ *       A directory is typically the output of the main code of the same module when compiling the tests,
+ *       and tests in the same package may access package-private members and inline package-private constants.
+ *       It may also be the output of another module of the same reactor, for which the same rule is used for
+ *       simplicity.</li>
+ * </ul>
+ *
+ * The values of annotations are part of the declarations, because they may be read by annotation processors.
+ *
+ * Using a separated class reduces the risk of loading the {@code org.objectweb.asm} classes when not needed.
+ */
+final class ClassScanner extends ClassVisitor {
+    /**
+     * Tag of constant pool entries for a class reference.
+     */
+    private static final int CONSTANT_CLASS = 7;
+
+    /**
+     * Tag of constant pool entries for a field or method name and type descriptor.
+     */
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+    /**
+     * Tag of constant pool entries for a method type descriptor.
+     */
+    private static final int CONSTANT_METHOD_TYPE = 16;
+
+    /**
+     * Whether to consider only the public and protected members.
+     * If {@code false}, all non-private members are considered.
+     */
+    private final boolean abi;
+
+    /**
+     * Name of the source file, or {@code null} if not specified in the class file.
+     */
+    String sourceName;
+
+    /**
+     * Binary name of the visited class.
+     */
+    private String className;
+
+    /**
+     * Whether the visited class is a nested class declared as private.
+     * The access flags of the class file do not tell whether a nested class is private,
+     * this information is provided by the {@code InnerClasses} attribute.
+     */
+    private boolean isPrivate;
+
+    /**
+     * Binary names of the parent class and of the implemented interfaces.
+     */
+    String[] supertypes;
+
+    /**
+     * Binary names of all classes referenced by the visited class, or {@code null} if not collected.
+     * References are not collected when computing the fingerprint of a dependency.
+     */
+    final Set<String> references;
+
+    /**
+     * Text representations of all API elements. Sorted for making the fingerprint
+     * independent of the order in which the members are declared.
+     */
+    private final Set<String> api = new TreeSet<>();
+
+    /**
+     * Text representation of all constant values of the API.
+     */
+    private final Set<String> constants = new TreeSet<>();
+
+    /**
+     * Creates a new scanner.
+     *
+     * @param abi whether to consider only the public and protected members
+     * @param collectReferences whether to collect the references to other classes
+     */
+    private ClassScanner(final boolean abi, final boolean collectReferences) {
+        super(Opcodes.ASM9);
+        this.abi = abi;
+        references = collectReferences ? new HashSet<>() : null;
+    }
+
+    /**
+     * Scans the given class for the purpose of building the dependency graph of the project.
+     * All references to other classes are collected, including the references from method bodies.
+     *
+     * @param reader the class to scan
+     * @return the result of the scan
+     */
+    static ClassScanner scan(final ClassReader reader) {
+        final var scanner = new ClassScanner(false, true);
+        reader.accept(scanner, ClassReader.SKIP_CODE | ClassReader.SKIP_FRAMES);
+        /*
+         * Declarations have been collected by the visitor, but references to other classes from the method
+         * bodies were skipped. Collect those references from the constant pool, which is much faster.
+         */
+        final var buffer = new char[reader.getMaxStringLength()];
+        for (int i = 1; i < reader.getItemCount(); i++) {
+            int offset = reader.getItem(i);
+            if (offset > 0) {
+                switch (reader.readByte(offset - 1)) {
+                    case CONSTANT_CLASS:
+                        String name = reader.readUTF8(offset, buffer);
+                        if (name.startsWith("[")) {
+                            scanner.addTypes(name);
+                        } else {
+                            scanner.references.add(name);
+                        }
+                        break;
+                    case CONSTANT_NAME_AND_TYPE:
+                        scanner.addTypes(reader.readUTF8(offset + 2, buffer));
+                        break;
+                    case CONSTANT_METHOD_TYPE:
+                        scanner.addTypes(reader.readUTF8(offset, buffer));
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+        return scanner;
+    }
+
+    /**
+     * Computes a fingerprint of the Application Binary Interface (ABI) of a dependency.
+     * The dependency can be a JAR file or a directory. For a JAR file, the fingerprint includes
+     * the public and protected declarations of all non-private classes, together with the constant
+     * values and the annotations. For a directory, the fingerprint includes also the package-private
+     * declarations. The fingerprint does not change when only the implementation (method bodies,
+     * private members) changed, in which case there is no need to recompile the classes that depend on it.
+     *
+     * <p>If the given file is neither a directory or a ZIP file,
+     * then the fingerprint is computed from the raw file content.</p>
+     *
+     * @param root the JAR file or directory for which to compute the fingerprint
+     * @return fingerprint of the ABI of all classes in the given JAR file or directory
+     * @throws IOException if an error occurred while reading a file
+     */
+    static long fingerprint(final Path root) throws IOException {
+        final var classes = new TreeMap<String, String>();
+        if (Files.isDirectory(root)) {
+            try (Stream<Path> files = Files.walk(root)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    if (file.getFileName().toString().endsWith(CLASS_FILE_SUFFIX) && Files.isRegularFile(file)) {
+                        addFingerprint(
+                                classes, root.relativize(file).toString(), Files.readAllBytes(file), false);
+                    }
+                }
+            }
+        } else {
+            try (ZipFile zip = new ZipFile(root.toFile())) {
+                Enumeration<? extends ZipEntry> entries = zip.entries();
+                while (entries.hasMoreElements()) {
+                    ZipEntry entry = entries.nextElement();
+                    if (!entry.isDirectory() && entry.getName().endsWith(CLASS_FILE_SUFFIX)) {
+                        try (InputStream in = zip.getInputStream(entry)) {
+                            addFingerprint(classes, entry.getName(), in.readAllBytes(), true);
+                        }
+                    }
+                }
+            } catch (ZipException e) {
+                return toLong(sha256().digest(Files.readAllBytes(root)));
+            }
+        }
+        return fingerprint(classes);
+    }
+
+    /**
+     * Computes a fingerprint of the <abbr>ABI</abbr> from the fingerprints of individual classes.
+     * This is the last step of {@link #fingerprint(Path)}, for callers which maintain the fingerprints
+     * of individual classes themselves.
+     *
+     * @param classes the values computed by {@link #classFingerprint(byte[], boolean)}, with file names as keys
+     * @return fingerprint of the ABI of all given classes
+     */
+    static long fingerprint(final Map<String, String> classes) {
+        final var elements = new ArrayList<String>(classes.size());
+        for (Map.Entry<String, String> entry : new TreeMap<>(classes).entrySet()) {
+            elements.add(entry.getKey() + ' ' + entry.getValue());
+        }
+        return digest(elements);
+    }
+
+    /**
+     * Adds the fingerprint of the given class in the given map, if the class is not private.
+     *
+     * @param classes the map where to add the fingerprint
+     * @param name name of the class file
+     * @param bytes content of the class file
+     * @param abi whether to consider only the public and protected members
+     */
+    private static void addFingerprint(
+            final Map<String, String> classes, final String name, final byte[] bytes, final boolean abi) {
+        final String value = classFingerprint(bytes, abi);
+        if (value != null) {
+            classes.put(name, value);
+        }
+    }
+
+    /**
+     * Computes the fingerprint of a single class, or returns {@code null} if the class is private.
+     * The {@code module-info} class is handled as a special case where the whole file is
+     * considered as part of the ABI.
+     *
+     * @param bytes content of the class file
+     * @param abi whether to consider only the public and protected members, as for JAR files
+     * @return text representation of the fingerprint, or {@code null} if the class is not part of the ABI
+     */
+    static String classFingerprint(final byte[] bytes, final boolean abi) {
+        final var reader = new ClassReader(bytes);
+        final int access = reader.getAccess();
+        if ((access & Opcodes.ACC_MODULE) != 0) {
+            return Long.toHexString(toLong(sha256().digest(bytes)));
+        } else if ((access & Opcodes.ACC_SYNTHETIC) == 0) {
+            final var scanner = new ClassScanner(abi, false);
+            reader.accept(scanner, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+            if (!scanner.isPrivate) {
+                return Long.toHexString(scanner.apiFingerprint()) + ' '
+                        + Long.toHexString(scanner.constantsFingerprint());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * {@return a fingerprint of the declarations which are visible to other classes}.
+     */
+    long apiFingerprint() {
+        return digest(api);
+    }
+
+    /**
+     * {@return a fingerprint of the values of constants, or 0 if the class has no constant}.
+     * Constant values need a special treatment because they are inlined by the compiler.
+     */
+    long constantsFingerprint() {
+        return constants.isEmpty() ? 0 : digest(constants);
+    }
+
+    /**
+     * Computes a fingerprint of the given elements.
+     *
+     * @param elements the elements for which to compute a fingerprint
+     * @return the first 64 bits of the SHA-256 digest of the given elements
+     */
+    static long digest(final Collection<String> elements) {
+        final MessageDigest md = sha256();
+        for (String element : elements) {
+            md.update(element.getBytes(StandardCharsets.UTF_8));
+            md.update((byte) '\n');
+        }
+        return toLong(md.digest());
+    }
+
+    /**
+     * {@return a new SHA-256 message digest}.
+     */
+    static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // Should never happen because SHA-256 is mandatory.
+        }
+    }
+
+    /**
+     * {@return the first 64 bits of the given digest}.
+     */
+    private static long toLong(final byte[] digest) {
+        long value = 0;
+        for (int i = 0; i < Long.BYTES; i++) {
+            value = (value << Byte.SIZE) | (digest[i] & 0xFF);
+        }
+        return value;
+    }
+
+    /**
+     * Adds all class names found in the given type descriptor or generic signature.
+     * This method is tolerant to false positives, because a reference to a class
+     * which is not in the project is ignored.
+     *
+     * @param descriptor the type descriptor or generic signature, or {@code null}
+     */
+    private void addTypes(final String descriptor) {
+        if (descriptor != null && references != null) {
+            final int length = descriptor.length();
+            for (int i = 0; i < length; i++) {
+                if (descriptor.charAt(i) == 'L') {
+                    int start = ++i;
+                    char c;
+                    while (i < length && (c = descriptor.charAt(i)) != ';' && c != '<') {
+                        i++;
+                    }
+                    references.add(descriptor.substring(start, i));
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the given API element, unless it is synthetic or not visible.
+     *
+     * @param access the access flags of the element
+     * @param element text representation of the element
+     * @return whether the element has been added
+     */
+    private boolean addAPI(final int access, final String... element) {
+        if ((access & Opcodes.ACC_SYNTHETIC) != 0) {
+            return false;
+        }
+        if (abi ? (access & (Opcodes.ACC_PUBLIC | Opcodes.ACC_PROTECTED)) == 0 : (access & Opcodes.ACC_PRIVATE) != 0) {
+            return false;
+        }
+        final var sb = new StringBuilder().append(access);
+        for (String e : element) {
+            sb.append(' ').append(e);
+        }
+        api.add(sb.toString());
+        return true;
+    }
+
+    @Override
+    public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+        className = name;
+        api.add("class " + (access & ~Opcodes.ACC_SUPER) + " " + name + " " + signature + " " + superName + " "
+                + String.join(",", interfaces));
+        supertypes = new String[interfaces.length + (superName != null ? 1 : 0)];
+        System.arraycopy(interfaces, 0, supertypes, 0, interfaces.length);
+        if (superName != null) {
+            supertypes[interfaces.length] = superName;
+        }
+        addTypes(signature);
+    }
+
+    @Override
+    public void visitSource(String source, String debug) {
+        sourceName = source;
+    }
+
+    @Override
+    public void visitInnerClass(String name, String outerName, String innerName, int access) {
+        if (name.equals(className) && (access & Opcodes.ACC_PRIVATE) != 0) {
+            isPrivate = true;
+        }
+    }
+
+    @Override
+    public void visitPermittedSubclass(String permittedSubclass) {
+        api.add("permits " + permittedSubclass);
+        if (references != null) {
+            references.add(permittedSubclass);
+        }
+    }
+
+    @Override
+    public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+        addTypes(descriptor);
+        return new AnnotationScanner("@" + descriptor, api::add);
+    }
+
+    @Override
+    public FieldVisitor visitField(int access, String name, String descriptor, String signature, Object value) {
+        addTypes(descriptor);
+        addTypes(signature);
+        if (!addAPI(access, "field", name, descriptor, signature)) {
+            return null;
+        }
+        if (value != null) {
+            constants.add(name + '=' + value);
+        }
+        return new FieldVisitor(Opcodes.ASM9) {
+            @Override
+            public AnnotationVisitor visitAnnotation(String annotation, boolean visible) {
+                addTypes(annotation);
+                return new AnnotationScanner("@" + annotation, (text) -> addAPI(access, "field", name, text));
+            }
+        };
+    }
+
+    @Override
+    public MethodVisitor visitMethod(
+            int access, String name, String descriptor, String signature, String[] exceptions) {
+        addTypes(descriptor);
+        addTypes(signature);
+        String throwsClause = null;
+        if (exceptions != null) {
+            throwsClause = String.join(",", exceptions);
+            if (references != null) {
+                references.addAll(Arrays.asList(exceptions));
+            }
+        }
+        if (!addAPI(access, "method", name, descriptor, signature, throwsClause)) {
+            return null;
+        }
+        return new MethodVisitor(Opcodes.ASM9) {
+            @Override
+            public AnnotationVisitor visitAnnotation(String annotation, boolean visible) {
+                addTypes(annotation);
+                return new AnnotationScanner(
+                        "@" + annotation, (text) -> addAPI(access, "method", name, descriptor, text));
+            }
+        };
+    }
+
+    /**
+     * Collects the text representation of an annotation with its values.
+     * Nested annotations and arrays are written in the same buffer as the enclosing annotation.
+     */
+    private final class AnnotationScanner extends AnnotationVisitor {
+        /**
+         * Where to write the annotation and its values.
+         */
+        private final StringBuilder buffer;
+
+        /**
+         * The character to append after the last value.
+         */
+        private final char close;
+
+        /**
+         * Where to send the text when the annotation has been fully visited,
+         * or {@code null} if this scanner is for a nested annotation or array.
+         */
+        private final Consumer<String> target;
+
+        /**
+         * Creates a scanner for an annotation declared on a class or member.
+         *
+         * @param descriptor text representation of the annotation type
+         * @param target where to send the text when the annotation has been fully visited
+         */
+        AnnotationScanner(final String descriptor, final Consumer<String> target) {
+            this(new StringBuilder(descriptor), '(', ')', target);
+        }
+
+        /**
+         * Creates a scanner for an annotation or array nested in another annotation.
+         *
+         * @param buffer where to write the annotation and its values
+         * @param open the character to append before the first value
+         * @param close the character to append after the last value
+         * @param target where to send the text, or {@code null} if nested
+         */
+        private AnnotationScanner(StringBuilder buffer, char open, char close, Consumer<String> target) {
+            super(Opcodes.ASM9);
+            this.buffer = buffer.append(open);
+            this.close = close;
+            this.target = target;
+        }
+
+        /**
+         * Appends the separator and the name of the next value.
+         *
+         * @param name the value name, or {@code null} for array elements
+         */
+        private void next(final String name) {
+            final char last = buffer.charAt(buffer.length() - 1);
+            if (last != '(' && last != '{') {
+                buffer.append(',');
+            }
+            if (name != null) {
+                buffer.append(name).append('=');
+            }
+        }
+
+        @Override
+        public void visit(String name, Object value) {
+            next(name);
+            if (value instanceof Type) {
+                addTypes(((Type) value).getDescriptor());
+            }
+            buffer.append(value.getClass().isArray() ? Arrays.deepToString(new Object[] {value}) : value);
+        }
+
+        @Override
+        public void visitEnum(String name, String descriptor, String value) {
+            next(name);
+            addTypes(descriptor);
+            buffer.append(descriptor).append('.').append(value);
+        }
+
+        @Override
+        public AnnotationVisitor visitAnnotation(String name, String descriptor) {
+            next(name);
+            addTypes(descriptor);
+            return new AnnotationScanner(buffer.append('@').append(descriptor), '(', ')', null);
+        }
+
+        @Override
+        public AnnotationVisitor visitArray(String name) {
+            next(name);
+            return new AnnotationScanner(buffer, '{', '}', null);
+        }
+
+        @Override
+        public void visitEnd() {
+            buffer.append(close);
+            if (target != null) {
+                target.accept(buffer.toString());
+            }
+        }
+    }
+}
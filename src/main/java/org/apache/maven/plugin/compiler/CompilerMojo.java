@@ -249,6 +249,15 @@ public class CompilerMojo extends AbstractCompilerMojo {
         return outputDirectory;
     }
 
+    /**
+     * {@return the root directory of the main classes, for which to write a build stamp}.
+     * Other modules of the reactor may depend on this directory.
+     */
+    @Override
+    Path getBuildStampDirectory() {
+        return outputDirectory;
+    }
+
     /**
      * {@return the file where to dump the command-line when debug is activated or when the compilation failed}.
      */
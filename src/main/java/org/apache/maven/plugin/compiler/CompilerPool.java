@@ -0,0 +1,576 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugin.compiler;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticListener;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.ServiceLoader;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.maven.api.Event;
+import org.apache.maven.api.EventType;
+import org.apache.maven.api.Listener;
+import org.apache.maven.api.Session;
+import org.apache.maven.api.SessionData;
+
+/**
+ * Compilers and file managers shared by all executions of the plugin in a Maven session.
+ * The standard file manager keeps the archives that it opened (the JDK image and the JAR files)
+ * together with their indexes. Reusing a file manager for the next module of a reactor avoids
+ * reopening and reindexing the same files for each module. The file managers are flushed and
+ * their locations are reset when they are returned to the pool.
+ *
+ * <p>A file manager is reused only with the same compiler, encoding and options, because some options
+ * (for example {@code --release}) change how the file manager reads the multi-release JAR files.
+ * The compilations must also set the same kinds of dependency paths (class-path, processor path, etc.),
+ * because some of them cannot be reset.
+ * A file manager is not reused if a JAR file that it may have opened has been modified in the meantime,
+ * for example by another module of the reactor.</p>
+ *
+ * <p>This class is thread-safe. File managers are not thread-safe, so a file manager is used by only one
+ * compilation at a time. The file managers are closed when the session ends.</p>
+ */
+final class CompilerPool {
+    /**
+     * The strategies for reusing the file managers.
+     * The names are the values of the {@code compilerReuseStrategy} plugin parameter.
+     */
+    enum Strategy {
+        /**
+         * Reuse a file manager previously created and currently idle, or create a new one.
+         * In a multi-threaded build, concurrent compilations use different file managers.
+         */
+        REUSE_CREATED("reuseCreated"),
+
+        /**
+         * Reuse the same file manager for all compilations with the same configuration.
+         * In a multi-threaded build, the compilations sharing the file manager are executed one after the other.
+         */
+        REUSE_SAME("reuseSame"),
+
+        /**
+         * Create a new file manager for each compilation and close it after the compilation.
+         */
+        ALWAYS_NEW("alwaysNew");
+
+        /**
+         * The value of the plugin parameter for this strategy.
+         */
+        private final String value;
+
+        /**
+         * Creates a new enumeration value.
+         */
+        Strategy(final String value) {
+            this.value = value;
+        }
+
+        /**
+         * {@return the value of the plugin parameter for this strategy}.
+         */
+        @Override
+        public String toString() {
+            return value;
+        }
+
+        /**
+         * Parses the value of the {@code compilerReuseStrategy} plugin parameter.
+         *
+         * @param value the plugin parameter to parse, or {@code null} for the default value
+         * @return the strategy
+         * @throws CompilationFailureException if the value is not recognized
+         */
+        static Strategy parse(String value) {
+            if (value == null || (value = value.trim()).isEmpty()) {
+                return REUSE_CREATED;
+            }
+            for (Strategy strategy : values()) {
+                if (strategy.value.equalsIgnoreCase(value)) {
+                    return strategy;
+                }
+            }
+            var sb = new StringBuilder(256)
+                    .append("Illegal compiler reuse strategy: \"")
+                    .append(value);
+            String s = "\". Valid values are ";
+            for (Strategy strategy : values()) {
+                sb.append(s).append(strategy);
+                s = ", ";
+            }
+            throw new CompilationFailureException(sb.append('.').toString());
+        }
+    }
+
+    /**
+     * The locations which are reset to their default value when a file manager is returned to the pool.
+     */
+    private static final Set<StandardLocation> RESET_LOCATIONS =
+            EnumSet.of(StandardLocation.CLASS_OUTPUT, StandardLocation.SOURCE_OUTPUT, StandardLocation.CLASS_PATH);
+
+    /**
+     * The locations of dependencies that a compilation can set on a reusable file manager.
+     * Except for the class-path, javac provides no way to restore those locations in their initial
+     * unset state. Therefore, a file manager is reused only by compilations setting the same locations.
+     */
+    private static final Set<StandardLocation> REUSABLE_LOCATIONS = EnumSet.of(
+            StandardLocation.CLASS_PATH,
+            StandardLocation.MODULE_PATH,
+            StandardLocation.UPGRADE_MODULE_PATH,
+            StandardLocation.ANNOTATION_PROCESSOR_PATH,
+            StandardLocation.ANNOTATION_PROCESSOR_MODULE_PATH);
+
+    /**
+     * The key of the pool in the session data.
+     */
+    private static final SessionData.Key<CompilerPool> KEY = SessionData.key(CompilerPool.class);
+
+    /**
+     * The compilers found for each {@code compilerId}, or an empty value if none.
+     */
+    private final Map<String, Optional<JavaCompiler>> compilers;
+
+    /**
+     * The file managers of the pool.
+     */
+    private final FileManagers fileManagers;
+
+    /**
+     * Creates an empty pool.
+     *
+     * @param session the session where to register the listener which closes the file managers
+     */
+    private CompilerPool(final Session session) {
+        compilers = new ConcurrentHashMap<>();
+        fileManagers = new FileManagers(2 * Math.max(1, session.getDegreeOfConcurrency()));
+        session.registerListener(fileManagers);
+    }
+
+    /**
+     * {@return the pool for the given session}.
+     * The pool is created when first needed. The maximal number of idle file managers
+     * is twice the number of threads of the build, for allowing the main and test
+     * compilations to keep their file managers.
+     *
+     * @param session the current Maven session
+     */
+    static CompilerPool forSession(final Session session) {
+        return session.getData().computeIfAbsent(KEY, () -> new CompilerPool(session));
+    }
+
+    /**
+     * {@return the compiler of the given identifier, or an empty value if none}.
+     * A {@code null} identifier designates the {@linkplain ToolProvider#getSystemJavaCompiler()
+     * system Java compiler}. Other identifiers designate a compiler registered as a service.
+     *
+     * @param compilerId name of the compiler to search, or {@code null} for the system compiler
+     */
+    Optional<JavaCompiler> compiler(final String compilerId) {
+        return compilers.computeIfAbsent(compilerId != null ? compilerId : "", (id) -> {
+            if (compilerId == null) {
+                return Optional.ofNullable(ToolProvider.getSystemJavaCompiler());
+            }
+            for (JavaCompiler t : ServiceLoader.load(JavaCompiler.class)) {
+                if (id.equals(t.name())) {
+                    return Optional.of(t);
+                }
+            }
+            return Optional.empty();
+        });
+    }
+
+    /**
+     * {@return whether the given location of dependencies can be set on a file manager which will be reused}.
+     * The source path and the output locations can always be set.
+     *
+     * @param location the location to test
+     */
+    static boolean isReusable(final JavaFileManager.Location location) {
+        return REUSABLE_LOCATIONS.contains(location);
+    }
+
+    /**
+     * Gets a file manager from the pool, or creates a new one.
+     * The caller shall close the lease after the compilation for returning the file manager to the pool.
+     * If {@code reusable} is {@code false}, then a new file manager is created and closed with the lease.
+     * This is the case when the compilation needs to set locations that are not
+     * {@linkplain #isReusable(JavaFileManager.Location) reusable}, such as module-oriented locations.
+     *
+     * @param strategy how to reuse the file managers
+     * @param compiler the compiler for which to get a file manager
+     * @param listener where to report the diagnostics of the file manager
+     * @param locale the locale of the diagnostics, or {@code null} for the default
+     * @param charset the encoding of source files, or {@code null} for the platform default
+     * @param options the compiler options, which must be the same for reusing a file manager
+     * @param locations the locations of dependencies that the compilation will set
+     * @param archives the JAR files that the compilation will use
+     * @param reusable whether the file manager can be reused after the compilation
+     * @return the file manager, to be closed after the compilation
+     * @throws IOException if an error occurred while checking the JAR files
+     */
+    Lease acquire(
+            final Strategy strategy,
+            final JavaCompiler compiler,
+            final DiagnosticListener<? super JavaFileObject> listener,
+            final Locale locale,
+            final Charset charset,
+            final List<String> options,
+            final Set<? extends JavaFileManager.Location> locations,
+            final Collection<Path> archives,
+            final boolean reusable)
+            throws IOException {
+        if (!reusable || strategy == Strategy.ALWAYS_NEW) {
+            return new Lease(compiler.getStandardFileManager(listener, locale, charset));
+        }
+        final var key = new Key(compiler, locale, charset, List.copyOf(options), Set.copyOf(locations));
+        final Entry entry = fileManagers.take(strategy, key);
+        final boolean warm;
+        try {
+            if (entry.fileManager != null && entry.isStale(archives)) {
+                entry.fileManager.close();
+                entry.fileManager = null;
+            }
+            warm = entry.fileManager != null;
+            if (!warm) {
+                entry.archives.clear();
+                entry.isStale(archives);
+                entry.fileManager = compiler.getStandardFileManager(entry.listener, locale, charset);
+            }
+        } catch (IOException | RuntimeException | Error e) {
+            fileManagers.release(strategy, key, entry, false);
+            throw e;
+        }
+        entry.listener.target = listener;
+        return new Lease(fileManagers, strategy, key, entry, warm);
+    }
+
+    /**
+     * A file manager borrowed from the pool for the duration of a compilation.
+     */
+    static final class Lease implements AutoCloseable {
+        /**
+         * The pool where to return the file manager, or {@code null} if the file manager shall be closed.
+         */
+        private final FileManagers pool;
+
+        /**
+         * The strategy used for acquiring the file manager, or {@code null} if none.
+         */
+        private final Strategy strategy;
+
+        /**
+         * The configuration of the file manager, or {@code null} if none.
+         */
+        private final Key key;
+
+        /**
+         * The file manager to return to the pool, or {@code null} if none.
+         */
+        private final Entry entry;
+
+        /**
+         * The file manager to use for the compilation.
+         */
+        final StandardJavaFileManager fileManager;
+
+        /**
+         * Whether the file manager has been used by a previous compilation.
+         */
+        final boolean warm;
+
+        /**
+         * Creates a new lease for a file manager which will be closed after the compilation.
+         */
+        private Lease(final StandardJavaFileManager fileManager) {
+            this(null, null, null, null, fileManager, false);
+        }
+
+        /**
+         * Creates a new lease for a file manager which will be returned to the pool after the compilation.
+         */
+        private Lease(FileManagers pool, Strategy strategy, Key key, Entry entry, boolean warm) {
+            this(pool, strategy, key, entry, entry.fileManager, warm);
+        }
+
+        /**
+         * Creates a new lease.
+         */
+        private Lease(
+                FileManagers pool,
+                Strategy strategy,
+                Key key,
+                Entry entry,
+                StandardJavaFileManager fileManager,
+                boolean warm) {
+            this.pool = pool;
+            this.strategy = strategy;
+            this.key = key;
+            this.entry = entry;
+            this.fileManager = fileManager;
+            this.warm = warm;
+        }
+
+        /**
+         * Returns the file manager to the pool, or closes it if it cannot be reused.
+         *
+         * @throws IOException if an error occurred while closing the file manager
+         */
+        @Override
+        public void close() throws IOException {
+            if (pool != null) {
+                pool.release(strategy, key, entry, true);
+            } else {
+                fileManager.close();
+            }
+        }
+    }
+
+    /**
+     * The configuration which must be identical for reusing a file manager.
+     *
+     * @param compiler the compiler which created the file manager
+     * @param locale the locale of the diagnostics
+     * @param charset the encoding of source files
+     * @param options the compiler options
+     * @param locations the locations of dependencies set by the compilations
+     */
+    private record Key(
+            JavaCompiler compiler,
+            Locale locale,
+            Charset charset,
+            List<String> options,
+            Set<? extends JavaFileManager.Location> locations) {}
+
+    /**
+     * A file manager of the pool, together with the information needed for reusing it.
+     */
+    private static final class Entry {
+        /**
+         * The file manager, or {@code null} if not yet created or closed because stale.
+         */
+        StandardJavaFileManager fileManager;
+
+        /**
+         * The listener given to the file manager at creation time.
+         * Its target is changed for each compilation.
+         */
+        final ForwardingListener listener = new ForwardingListener();
+
+        /**
+         * Last modification time of the JAR files used by the compilations with this file manager.
+         */
+        final Map<Path, FileTime> archives = new HashMap<>();
+
+        /**
+         * Lock held during the compilations when the file manager is shared by all threads.
+         */
+        final ReentrantLock lock = new ReentrantLock();
+
+        /**
+         * Records the modification times of the given JAR files and checks whether a file changed since
+         * a previous compilation. A changed file may have been opened and cached by the file manager.
+         *
+         * @param files the JAR files that the compilation will use
+         * @return whether a JAR file changed since the previous compilations with this file manager
+         * @throws IOException if an error occurred while reading the modification times
+         */
+        boolean isStale(final Collection<Path> files) throws IOException {
+            boolean stale = false;
+            for (Path file : files) {
+                if (Files.isRegularFile(file)) {
+                    FileTime time = Files.getLastModifiedTime(file);
+                    FileTime previous = archives.put(file, time);
+                    stale |= (previous != null && !previous.equals(time));
+                }
+            }
+            return stale;
+        }
+    }
+
+    /**
+     * A diagnostic listener which forwards the diagnostics to the listener of the current compilation.
+     * Needed because the listener is given to the file manager at creation time.
+     */
+    private static final class ForwardingListener implements DiagnosticListener<JavaFileObject> {
+        /**
+         * The listener of the current compilation, or {@code null} if none.
+         */
+        volatile DiagnosticListener<? super JavaFileObject> target;
+
+        @Override
+        public void report(final Diagnostic<? extends JavaFileObject> diagnostic) {
+            DiagnosticListener<? super JavaFileObject> t = target;
+            if (t != null) {
+                t.report(diagnostic);
+            }
+        }
+    }
+
+    /**
+     * The file managers of the pool, idle or in use. This is also the listener
+     * which closes the file managers when the session ends.
+     */
+    private static final class FileManagers implements Listener {
+        /**
+         * Maximal number of idle file managers.
+         */
+        private final int maxIdle;
+
+        /**
+         * The idle file managers, with the most recently used first.
+         */
+        private final Deque<Map.Entry<Key, Entry>> idle;
+
+        /**
+         * The file managers shared by all threads with the {@link Strategy#REUSE_SAME} strategy.
+         */
+        private final Map<Key, Entry> shared;
+
+        /**
+         * Creates an empty set of file managers.
+         */
+        FileManagers(final int maxIdle) {
+            this.maxIdle = maxIdle;
+            idle = new ArrayDeque<>();
+            shared = new HashMap<>();
+        }
+
+        /**
+         * Takes an idle file manager for the given configuration, or creates an entry without file manager.
+         * With the {@link Strategy#REUSE_SAME} strategy, this method blocks until the shared file manager
+         * is no longer used by another thread.
+         */
+        Entry take(final Strategy strategy, final Key key) {
+            final Entry entry;
+            synchronized (this) {
+                if (strategy == Strategy.REUSE_SAME) {
+                    entry = shared.computeIfAbsent(key, (k) -> new Entry());
+                } else {
+                    var it = idle.iterator();
+                    while (it.hasNext()) {
+                        Map.Entry<Key, Entry> candidate = it.next();
+                        if (candidate.getKey().equals(key)) {
+                            it.remove();
+                            return candidate.getValue();
+                        }
+                    }
+                    return new Entry();
+                }
+            }
+            entry.lock.lock();
+            return entry;
+        }
+
+        /**
+         * Returns a file manager to the pool after a compilation. If {@code reusable} is {@code false},
+         * or if the file manager cannot be reset, then the file manager is closed and discarded.
+         */
+        void release(final Strategy strategy, final Key key, final Entry entry, boolean reusable)
+                throws IOException {
+            final StandardJavaFileManager fileManager = entry.fileManager;
+            entry.listener.target = null;
+            try {
+                if (reusable && fileManager != null) {
+                    try {
+                        fileManager.flush();
+                        for (StandardLocation location : RESET_LOCATIONS) {
+                            // Not `setLocationFromPaths(…)` because javac rejects null paths in that method.
+                            fileManager.setLocation(location, null);
+                        }
+                    } catch (IOException | RuntimeException e) {
+                        reusable = false;
+                    }
+                }
+                if (!reusable) {
+                    entry.fileManager = null;
+                    if (fileManager != null) {
+                        fileManager.close();
+                    }
+                }
+            } finally {
+                if (strategy == Strategy.REUSE_SAME) {
+                    entry.lock.unlock();
+                } else if (reusable) {
+                    Map.Entry<Key, Entry> evicted = null;
+                    synchronized (this) {
+                        idle.addFirst(Map.entry(key, entry));
+                        if (idle.size() > maxIdle) {
+                            evicted = idle.removeLast();
+                        }
+                    }
+                    if (evicted != null) {
+                        evicted.getValue().fileManager.close();
+                    }
+                }
+            }
+        }
+
+        /**
+         * Closes all file managers when the session ends. No compilation is running at that time.
+         *
+         * @param event the event notified by Maven
+         */
+        @Override
+        public void onEvent(final Event event) {
+            if (event.getType() != EventType.SESSION_ENDED) {
+                return;
+            }
+            event.getSession().unregisterListener(this);
+            final var all = new ArrayList<Entry>();
+            synchronized (this) {
+                idle.forEach((e) -> all.add(e.getValue()));
+                all.addAll(shared.values());
+                idle.clear();
+                shared.clear();
+            }
+            for (Entry entry : all) {
+                if (entry.fileManager != null) {
+                    try {
+                        entry.fileManager.close();
+                    } catch (IOException e) {
+                        // Ignore since the session is finished.
+                    }
+                }
+            }
+        }
+    }
+}
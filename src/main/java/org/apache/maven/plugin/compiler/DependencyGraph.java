@@ -0,0 +1,525 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugin.compiler;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.maven.api.plugin.Log;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Opcodes;
+
+import static org.apache.maven.plugin.compiler.SourceDirectory.CLASS_FILE_SUFFIX;
+
+/**
+ * Dependencies between the classes of a project, used for deciding which source files to recompile.
+ * The graph is built by scanning the {@code *.class} files produced by the compiler, using the ASM
+ * library. Scanning the output files rather than listening to the compiler allows the same code to
+ * work with in-process and forked compilers. For each class, this graph records:
+ *
+ * <ul>
+ *   <li>the source file from which the class has been compiled, or which caused its generation,</li>
+ *   <li>the other classes of the project referenced by that class,</li>
+ *   <li>a fingerprint of the API visible to other classes (non-private members),</li>
+ *   <li>a fingerprint of the values of compile-time constants.</li>
+ * </ul>
+ *
+ * After the compilation of the modified source files, the classes compiled from those files are compared with
+ * the classes of the previous build. If the API of a class changed, then the source files of the classes that
+ * depend on it are recompiled in a new round. Propagation stops when no API change is detected. If the value
+ * of a constant changed, then all source files are recompiled because constants are inlined by the compiler,
+ * in which case the dependencies cannot be found in the class files.
+ *
+ * <p>Classes generated by annotation processors are attributed to the source file which caused their generation,
+ * as recorded by {@link OutputFileRecorder}. They are removed from the graph when that source file is recompiled
+ * or deleted, like the classes compiled from that source file. Classes for which the source file is unknown,
+ * for example when the compiler is executed in a separated process, are not retained in the graph.</p>
+ *
+ * <p>This class is not thread-safe.</p>
+ */
+final class DependencyGraph {
+    /**
+     * Magic number, followed by a version number, for identifying the file format.
+     */
+    private static final long MAGIC_NUMBER = -4630221327373813337L;
+
+    /**
+     * Maximal number of compilation rounds after the first one before to give up and recompile everything.
+     * This is a safety against long propagation chains, which are more costly than a full build.
+     */
+    private static final int MAX_ROUNDS = 8;
+
+    /**
+     * Information about a single class.
+     */
+    private static final class Node {
+        /**
+         * Binary name of the class in internal form, for example {@code "java/lang/Object"}.
+         */
+        final String name;
+
+        /**
+         * The source file from which the class has been compiled, or which caused the generation of the class.
+         * May be {@code null} only for a class which has just been scanned and which will not be retained.
+         */
+        final Path source;
+
+        /**
+         * Fingerprint of the class API, i.e. the declarations which are visible to other classes.
+         */
+        final long api;
+
+        /**
+         * Fingerprint of the values of the compile-time constants, or 0 if the class has no such constant.
+         */
+        final long constants;
+
+        /**
+         * Binary names of the parent class and of the implemented interfaces.
+         */
+        final String[] supertypes;
+
+        /**
+         * Binary names of all classes referenced by this class. May include classes that are not
+         * part of the project. The latter are discarded when the graph is saved.
+         */
+        final Set<String> references;
+
+        /**
+         * Creates a new node with the given information.
+         */
+        Node(String name, Path source, long api, long constants, String[] supertypes, Set<String> references) {
+            this.name = name;
+            this.source = source;
+            this.api = api;
+            this.constants = constants;
+            this.supertypes = supertypes;
+            this.references = references;
+        }
+    }
+
+    /**
+     * The file where the graph is saved between two builds.
+     */
+    private final Path graphFile;
+
+    /**
+     * All source files, including the ones that are not compiled in the current round.
+     * Keys are the paths to the source files.
+     */
+    private final Map<Path, SourceFile> sourceFiles;
+
+    /**
+     * The source files indexed by the path of the source file name resolved against the output directory.
+     * Used for finding the source file from a class file, given the {@code SourceFile} class attribute.
+     */
+    private final Map<Path, SourceFile> sourcesByOutput;
+
+    /**
+     * All classes of the project, indexed by their binary names in internal form.
+     */
+    private final Map<String, Node> nodes;
+
+    /**
+     * Converter of the paths to source files to and from their string representation in the graph file.
+     */
+    private final RelocatablePaths paths;
+
+    /**
+     * Where to report which source files are recompiled because of dependencies.
+     */
+    private final Log logger;
+
+    /**
+     * Number of compilation rounds after the first one.
+     */
+    private int round;
+
+    /**
+     * The output directory of the classes, or {@code null} if the compiler writes directly in that directory.
+     *
+     * @see #setStagingDirectory(Path, Path)
+     */
+    private Path outputDirectory;
+
+    /**
+     * The directory where the compiler writes the class files before they are moved to the output directory,
+     * or {@code null} if none.
+     *
+     * @see #setStagingDirectory(Path, Path)
+     */
+    private Path stagingDirectory;
+
+    /**
+     * Creates an initially empty dependency graph.
+     *
+     * @param graphFile the file where the graph is saved between two builds
+     * @param sourceFiles all source files of the project, including the ones that are not modified
+     * @param paths converter of the paths to source files to and from their string representation
+     * @param logger where to report which source files are recompiled because of dependencies
+     */
+    DependencyGraph(Path graphFile, Collection<SourceFile> sourceFiles, RelocatablePaths paths, Log logger) {
+        this.graphFile = graphFile;
+        this.paths = paths;
+        this.logger = logger;
+        this.sourceFiles = new HashMap<>(sourceFiles.size() + sourceFiles.size() / 3);
+        this.sourcesByOutput = new HashMap<>(sourceFiles.size() + sourceFiles.size() / 3);
+        for (SourceFile source : sourceFiles) {
+            this.sourceFiles.put(source.file, source);
+            sourcesByOutput.put(outputSibling(source), source);
+        }
+        nodes = new HashMap<>();
+    }
+
+    /**
+     * {@return the given source file name resolved against the directory of the output file}.
+     * This is the key used for finding the source file associated to a class file.
+     */
+    private static Path outputSibling(SourceFile source) {
+        return source.getOutputFile().resolveSibling(source.file.getFileName());
+    }
+
+    /**
+     * Declares that the compiler writes the class files in a staging directory instead of the output directory.
+     * The {@link #update(Collection)} method will read the new class files from the staging directory.
+     *
+     * @param outputDirectory the output directory of the classes
+     * @param stagingDirectory the directory where the compiler writes the class files
+     */
+    void setStagingDirectory(Path outputDirectory, Path stagingDirectory) {
+        this.outputDirectory = outputDirectory;
+        this.stagingDirectory = stagingDirectory;
+    }
+
+    /**
+     * Loads the graph saved by the previous build.
+     *
+     * @return whether the graph has been loaded, or {@code false} if the file does not exist
+     * @throws IOException if an error occurred while reading the file
+     */
+    boolean load() throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(graphFile, StandardOpenOption.READ)))) {
+            if (in.readLong() != MAGIC_NUMBER) {
+                throw new IOException("Invalid dependency graph file.");
+            }
+            final int count = in.readInt();
+            final var names = new String[count];
+            final var loaded = new ArrayList<Node>(count);
+            for (int i = 0; i < count; i++) {
+                names[i] = in.readUTF();
+            }
+            for (int i = 0; i < count; i++) {
+                String source = in.readUTF();
+                long api = in.readLong();
+                long constants = in.readLong();
+                var supertypes = new String[in.readUnsignedByte()];
+                for (int j = 0; j < supertypes.length; j++) {
+                    supertypes[j] = names[in.readInt()];
+                }
+                int n = in.readInt();
+                var references = new HashSet<String>(n + n / 3);
+                while (--n >= 0) {
+                    references.add(names[in.readInt()]);
+                }
+                if (!source.isEmpty()) { // Classes of unknown origin were written by older versions.
+                    loaded.add(new Node(names[i], paths.decode(source), api, constants, supertypes, references));
+                }
+            }
+            for (Node node : loaded) {
+                nodes.put(node.name, node);
+            }
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Deletes the file of the previous build. This method should be invoked before compilation,
+     * so that a failed compilation causes a full rebuild the next time that the project is built.
+     *
+     * @throws IOException if an error occurred while deleting the file
+     */
+    void invalidate() throws IOException {
+        Files.deleteIfExists(graphFile);
+    }
+
+    /**
+     * Saves this graph for use by the next build. References to classes outside the project are omitted.
+     * The file format is:
+     *
+     * <ul>
+     *   <li>Magic number (<var>long</var>).</li>
+     *   <li>Number of classes (<var>int</var>).</li>
+     *   <li>Binary name of all classes (UTF-8 strings).</li>
+     *   <li>For each class, in the same order as the names:<ul>
+     *     <li>Path to the source file as encoded by {@link RelocatablePaths}.</li>
+     *     <li>API fingerprint (<var>long</var>).</li>
+     *     <li>Constant values fingerprint (<var>long</var>).</li>
+     *     <li>Number of supertypes (<var>unsigned byte</var>) followed by their indexes (<var>int</var>).</li>
+     *     <li>Number of references (<var>int</var>) followed by their indexes (<var>int</var>).</li>
+     *   </ul></li>
+     * </ul>
+     *
+     * @throws IOException if an error occurred while writing the file
+     */
+    void save() throws IOException {
+        final var indexes = new HashMap<String, Integer>(nodes.size() + nodes.size() / 3);
+        for (String name : nodes.keySet()) {
+            indexes.put(name, indexes.size());
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(
+                graphFile,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING)))) {
+            out.writeLong(MAGIC_NUMBER);
+            out.writeInt(nodes.size());
+            for (String name : nodes.keySet()) {
+                out.writeUTF(name);
+            }
+            final var buffer = new ArrayList<Integer>();
+            for (Node node : nodes.values()) {
+                out.writeUTF(paths.encode(node.source));
+                out.writeLong(node.api);
+                out.writeLong(node.constants);
+                for (String name : node.supertypes) {
+                    Integer index = indexes.get(name);
+                    if (index != null) {
+                        buffer.add(index);
+                    }
+                }
+                out.writeByte(buffer.size());
+                for (int index : buffer) {
+                    out.writeInt(index);
+                }
+                buffer.clear();
+                for (String name : node.references) {
+                    Integer index = indexes.get(name);
+                    if (index != null && !name.equals(node.name)) {
+                        buffer.add(index);
+                    }
+                }
+                out.writeInt(buffer.size());
+                for (int index : buffer) {
+                    out.writeInt(index);
+                }
+                buffer.clear();
+            }
+        }
+    }
+
+    /**
+     * Updates this graph with the classes compiled from the given source files,
+     * then returns the source files which need to be recompiled in a new round.
+     * A source file needs to be recompiled if it depends on a class which has been compiled
+     * in the last round and for which a change of API has been detected. If the value of a
+     * constant has changed, then all source files are returned.
+     *
+     * <p>The classes of source files which no longer exist are removed from the graph and handled
+     * as removed classes. If the {@linkplain SourceFile#getOutputFiles() output files} of the compiled
+     * source files are known, then the classes generated by annotation processors are attributed to
+     * the source file which caused their generation.</p>
+     *
+     * @param compiled the source files compiled in the last round
+     * @return the source files to compile in the next round, or an empty list if none
+     * @throws IOException if an error occurred while reading a class file
+     */
+    List<SourceFile> update(final Collection<SourceFile> compiled) throws IOException {
+        /*
+         * Remove the classes compiled in the last round and the classes of deleted source files from the graph,
+         * but keep them in a separated map for comparison purposes. Then scan the output directories for the
+         * new class files, including the directories of the classes generated by annotation processors.
+         */
+        final var compiledFiles = new HashSet<Path>(compiled.size() + compiled.size() / 3);
+        final var directories = new LinkedHashSet<Path>();
+        final var origins = new HashMap<Path, SourceFile>();
+        for (SourceFile source : compiled) {
+            compiledFiles.add(source.file);
+            directories.add(source.getOutputFile().getParent());
+            final List<Path> outputs = source.getOutputFiles();
+            if (outputs != null) {
+                for (Path output : outputs) {
+                    if (output.getFileName().toString().endsWith(CLASS_FILE_SUFFIX)) {
+                        origins.put(output, source);
+                        Path directory = output.getParent();
+                        if (stagingDirectory != null && directory.startsWith(stagingDirectory)) {
+                            directory = outputDirectory.resolve(stagingDirectory.relativize(directory));
+                        }
+                        directories.add(directory);
+                    }
+                }
+            }
+        }
+        final var previous = new HashMap<String, Node>();
+        nodes.values().removeIf((node) -> {
+            if (compiledFiles.contains(node.source) || !sourceFiles.containsKey(node.source)) {
+                previous.put(node.name, node);
+                return true;
+            }
+            return false;
+        });
+        for (Path directory : directories) {
+            Path listed = directory;
+            if (stagingDirectory != null && directory.startsWith(outputDirectory)) {
+                listed = stagingDirectory.resolve(outputDirectory.relativize(directory));
+            }
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(listed, "*" + CLASS_FILE_SUFFIX)) {
+                for (Path file : stream) {
+                    Node node = scan(file, directory, origins);
+                    if (node != null && compiledFiles.contains(node.source)) {
+                        nodes.put(node.name, node);
+                    }
+                }
+            } catch (NoSuchFileException e) {
+                // Nothing was compiled in that directory.
+            }
+        }
+        if (compiledFiles.size() >= sourceFiles.size()) {
+            return List.of(); // All files have been compiled, there is nothing more to do.
+        }
+        /*
+         * Compare the new classes with the classes of the previous build.
+         * Classes which have been removed are considered as API changes.
+         */
+        final var changed = new HashSet<String>();
+        for (Node old : previous.values()) {
+            Node node = nodes.get(old.name);
+            if (old.constants != (node != null ? node.constants : 0)) {
+                logger.info("Recompiling all files because the value of a constant changed in " + old.source);
+                return List.copyOf(sourceFiles.values());
+            }
+            if (node == null || node.api != old.api) {
+                changed.add(old.name);
+            }
+        }
+        if (changed.isEmpty()) {
+            return List.of();
+        }
+        /*
+         * A change in a class may change the members inherited by all subclasses.
+         * Therefore, subclasses are considered as changed too.
+         */
+        final var subtypes = new HashMap<String, List<String>>();
+        for (Node node : nodes.values()) {
+            for (String parent : node.supertypes) {
+                subtypes.computeIfAbsent(parent, (k) -> new ArrayList<>()).add(node.name);
+            }
+        }
+        final var stack = new ArrayList<>(changed);
+        while (!stack.isEmpty()) {
+            List<String> children = subtypes.get(stack.remove(stack.size() - 1));
+            if (children != null) {
+                for (String child : children) {
+                    if (changed.add(child)) {
+                        stack.add(child);
+                    }
+                }
+            }
+        }
+        /*
+         * Collect the source files of all classes that depend on a changed class,
+         * omitting the source files that have just been compiled.
+         */
+        final var dependents = new LinkedHashSet<SourceFile>();
+        for (Node node : nodes.values()) {
+            if (node.source != null && !compiledFiles.contains(node.source)) {
+                for (String reference : node.references) {
+                    if (changed.contains(reference)) {
+                        SourceFile source = sourceFiles.get(node.source);
+                        if (source != null) {
+                            dependents.add(source);
+                        }
+                        break;
+                    }
+                }
+            }
+        }
+        if (dependents.isEmpty()) {
+            return List.of();
+        }
+        if (++round > MAX_ROUNDS) {
+            logger.info("Recompiling all files because of too many changes in the API of compiled classes.");
+            return List.copyOf(sourceFiles.values());
+        }
+        logger.info("Recompiling " + dependents.size() + " source files depending on classes with a modified API.");
+        return List.copyOf(dependents);
+    }
+
+    /**
+     * Reads the given class file and creates the node describing that class.
+     *
+     * @param file the class file to read
+     * @param directory the directory of the class file after the compilation is completed
+     * @param origins the source files which caused the writing of class files, as recorded by the compiler
+     * @return the node for the given class, or {@code null} if the file is not a class (e.g. {@code module-info})
+     * @throws IOException if an error occurred while reading the file
+     */
+    private Node scan(final Path file, final Path directory, final Map<Path, SourceFile> origins)
+            throws IOException {
+        final var reader = new ClassReader(Files.readAllBytes(file));
+        if ((reader.getAccess() & Opcodes.ACC_MODULE) != 0) {
+            return null;
+        }
+        final var scanner = ClassScanner.scan(reader);
+        /*
+         * Find the source file. If the class file does not have the `SourceFile` attribute
+         * (e.g. compiled with `-g:none`), assume that the source file has the name of the
+         * outer-most class.
+         */
+        String sourceName = scanner.sourceName;
+        if (sourceName == null) {
+            String name = reader.getClassName();
+            name = name.substring(name.lastIndexOf('/') + 1);
+            int s = name.indexOf('$');
+            if (s > 0) {
+                name = name.substring(0, s);
+            }
+            sourceName = name + SourceDirectory.JAVA_FILE_SUFFIX;
+        }
+        SourceFile source = sourcesByOutput.get(directory.resolve(sourceName));
+        if (source == null) {
+            source = origins.get(file); // Class generated by an annotation processor.
+        }
+        return new Node(
+                reader.getClassName(),
+                (source != null) ? source.file : null,
+                scanner.apiFingerprint(),
+                scanner.constantsFingerprint(),
+                scanner.supertypes,
+                scanner.references);
+    }
+}
@@ -32,15 +32,20 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.UncheckedIOException;
 import java.io.Writer;
+import java.net.URISyntaxException;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.security.CodeSource;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
 import java.util.Objects;
 import java.util.Set;
 
+import org.apache.maven.api.plugin.Log;
+
 /**
  * Base class of tool executed by invoking a command-line tool.
  *
@@ -62,6 +67,27 @@ class ForkedTool implements Tool, OptionChecker {
      */
     private final Path debugFilePath;
 
+    /**
+     * The long-lived compiler processes of the session, or {@code null} for launching a new process
+     * for each compilation.
+     */
+    private final ForkedWorkers workers;
+
+    /**
+     * Maximal number of long-lived compiler processes for the executable.
+     */
+    private final int maxWorkers;
+
+    /**
+     * Number of compilations after which a long-lived compiler process is replaced by a new one.
+     */
+    private final int maxCompilations;
+
+    /**
+     * Where to report the long-lived compiler processes which cannot be used.
+     */
+    private final Log logger;
+
     /**
      * Creates a new forked compiler.
      *
@@ -71,6 +97,10 @@ class ForkedTool implements Tool, OptionChecker {
         basedir = mojo.basedir;
         executable = Objects.requireNonNull(mojo.executable);
         debugFilePath = mojo.getDebugFilePath();
+        maxWorkers = mojo.forkWorkers;
+        maxCompilations = Math.max(1, mojo.forkWorkerCompilations);
+        workers = (maxWorkers > 0) ? ForkedWorkers.forSession(mojo.session) : null;
+        logger = mojo.logger;
     }
 
     /**
@@ -146,6 +176,12 @@ class ForkedTool implements Tool, OptionChecker {
             command.add(option);
         }
         fileManager.addAllLocations(command);
+        if (workers != null) {
+            final Boolean success = runInWorker(out, command, fileManager, compilationUnits);
+            if (success != null) {
+                return success;
+            }
+        }
         for (JavaFileObject source : compilationUnits) {
             Path path = fileManager.asPath(source);
             if (basedir != null) {
@@ -169,6 +205,92 @@ class ForkedTool implements Tool, OptionChecker {
         }
     }
 
+    /**
+     * Executes the command in a long-lived compiler process and waits for its completion.
+     * The {@code -J} options are given to the <abbr>JVM</abbr> of the compiler process,
+     * and the source files are specified by absolute paths because the process is shared
+     * by projects having different base directories. Other relative paths are resolved
+     * against the base directory by the worker, as if the process was started in that directory.
+     *
+     * @param out where to send additional compiler output
+     * @param command the executable followed by the options and locations
+     * @param fileManager the dependencies (JAR files)
+     * @param compilationUnits the source files to process
+     * @return whether the operation succeeded, or {@code null} if a new process shall be launched instead
+     * @throws IOException if an error occurred while writing the debug file
+     */
+    private Boolean runInWorker(
+            Writer out,
+            List<String> command,
+            ForkedToolSources fileManager,
+            Iterable<? extends JavaFileObject> compilationUnits)
+            throws IOException {
+        final var jvmOptions = new ArrayList<String>();
+        final var arguments = new ArrayList<String>(command.size());
+        for (String argument : command.subList(1, command.size())) {
+            if (argument.startsWith("-J")) {
+                jvmOptions.add(argument.substring(2));
+            } else {
+                arguments.add(argument);
+            }
+        }
+        final List<String> launcher = workerCommand(jvmOptions);
+        if (launcher == null) {
+            return null;
+        }
+        final var debugCommand = new ArrayList<String>(command);
+        for (JavaFileObject source : compilationUnits) {
+            final String path = fileManager.asPath(source).toAbsolutePath().toString();
+            arguments.add(path);
+            debugCommand.add(path);
+        }
+        writeDebugFile(debugCommand);
+        final ForkedWorkers.Result result;
+        try {
+            result = workers.compile(launcher, maxWorkers, maxCompilations, basedir, arguments, logger);
+        } catch (InterruptedException e) {
+            out.append("Compilation has been interrupted by " + e).append(System.lineSeparator());
+            return Boolean.FALSE;
+        }
+        if (result == null) {
+            return null;
+        }
+        out.append(result.output());
+        return result.status() == 0;
+    }
+
+    /**
+     * {@return the command which starts a long-lived compiler process, or null if not supported}.
+     * The process is executed by the {@code java} launcher located in the same directory as the
+     * {@code javac} executable. Other executables are not supported.
+     *
+     * @param jvmOptions the options to give to the <abbr>JVM</abbr>
+     */
+    private List<String> workerCommand(final List<String> jvmOptions) {
+        final Path path = Path.of(executable);
+        final String name = path.getFileName().toString();
+        if (!name.equals("javac") && !name.equals("javac.exe")) {
+            return null;
+        }
+        final CodeSource source = ForkedWorker.class.getProtectionDomain().getCodeSource();
+        if (source == null) {
+            return null;
+        }
+        final Path classpath;
+        try {
+            classpath = Path.of(source.getLocation().toURI());
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            return null;
+        }
+        final var command = new ArrayList<String>(jvmOptions.size() + 4);
+        command.add(path.resolveSibling(name.replace("javac", "java")).toString());
+        command.addAll(jvmOptions);
+        command.add("-cp");
+        command.add(classpath.toString());
+        command.add(ForkedWorker.class.getName());
+        return command;
+    }
+
     /**
      * Runs the tool with the given arguments.
      * This method is implemented as a matter of principle but should not be invoked.
@@ -192,6 +314,23 @@ class ForkedTool implements Tool, OptionChecker {
      * @param out where to send additional compiler output
      */
     private int start(ProcessBuilder builder, Appendable out) throws IOException {
+        writeDebugFile(builder.command());
+        Process process = builder.start();
+        try {
+            return process.waitFor();
+        } catch (InterruptedException e) {
+            out.append("Compilation has been interrupted by " + e).append(System.lineSeparator());
+            process.destroy();
+            return 1;
+        }
+    }
+
+    /**
+     * If a debug file has been specified, writes in that file the command which is about to be executed.
+     *
+     * @param command the executable followed by its arguments
+     */
+    private void writeDebugFile(List<String> command) throws IOException {
         if (debugFilePath != null) {
             // Use the path separator as a way to identify the operating system.
             final boolean windows = File.separatorChar == '\\';
@@ -205,7 +344,7 @@ class ForkedTool implements Tool, OptionChecker {
                     debugFile.write(basedir.toString());
                     debugFile.newLine();
                 }
-                for (String cmd : builder.command()) {
+                for (String cmd : command) {
                     if (more) {
                         debugFile.append(' ');
                     }
@@ -215,13 +354,5 @@ class ForkedTool implements Tool, OptionChecker {
                 debugFile.newLine();
             }
         }
-        Process process = builder.start();
-        try {
-            return process.waitFor();
-        } catch (InterruptedException e) {
-            out.append("Compilation has been interrupted by " + e).append(System.lineSeparator());
-            process.destroy();
-            return 1;
-        }
     }
 }
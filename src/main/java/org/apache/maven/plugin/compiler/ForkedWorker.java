@@ -0,0 +1,290 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugin.compiler;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.spi.ToolProvider;
+
+/**
+ * Main class of a long-lived <abbr>JVM</abbr> executing compilations on behalf of the plugin.
+ * This class is executed in a separate process by {@link ForkedWorkers}, with the {@code java}
+ * launcher of the same <abbr>JDK</abbr> as the {@code javac} executable. It shall not depend
+ * on any class other than the classes of the Java platform.
+ *
+ * <h2>Protocol</h2>
+ * The worker writes {@link #HANDSHAKE} on its standard output when it is ready.
+ * Then, it reads requests from its standard input until the end of stream.
+ * A request is the base directory of the project (an empty string if none), then the number of command-line
+ * arguments followed by the arguments. Because the working directory of the worker cannot be changed,
+ * the relative paths given to the options expecting files or directories are resolved against the base
+ * directory by the worker. The content of argument files is not examined.
+ * The response is the exit code of javac, the heap memory retained after the last garbage collection,
+ * the maximal heap memory, and the compiler output (including the output of annotation processors).
+ * Strings are written as the number of bytes followed by the bytes in UTF-8 encoding.
+ */
+public final class ForkedWorker {
+    /**
+     * Number written by the worker when it is ready to receive requests.
+     */
+    static final int HANDSHAKE = 0x4D435746;
+
+    /**
+     * Exit code of javac for an abnormal termination.
+     */
+    private static final int ABNORMAL = 4;
+
+    /**
+     * The javac options having a file, a directory or a list of them as value.
+     */
+    private static final Set<String> PATH_OPTIONS = Set.of(
+            "-d",
+            "-s",
+            "-h",
+            "-cp",
+            "-classpath",
+            "--class-path",
+            "-sourcepath",
+            "--source-path",
+            "-p",
+            "--module-path",
+            "--module-source-path",
+            "--upgrade-module-path",
+            "-processorpath",
+            "--processor-path",
+            "--processor-module-path",
+            "--patch-module",
+            "--system",
+            "-bootclasspath",
+            "--boot-class-path",
+            "-extdirs",
+            "--extension-directories",
+            "-endorseddirs",
+            "--endorsed-directories");
+
+    /**
+     * Do not allow instantiation of this class.
+     */
+    private ForkedWorker() {}
+
+    /**
+     * Executes the compilations requested on the standard input until the end of stream.
+     *
+     * @param args ignored
+     * @throws IOException if an error occurred while reading a request or writing a response
+     */
+    public static void main(final String[] args) throws IOException {
+        final var in = new DataInputStream(new BufferedInputStream(new FileInputStream(FileDescriptor.in)));
+        final var out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out)));
+        final ToolProvider javac = ToolProvider.findFirst("javac").orElse(null);
+        if (javac == null) {
+            return; // The plugin will launch the `javac` executable instead.
+        }
+        /*
+         * The standard output is reserved to the protocol. Anything written by annotation processors
+         * on the standard output or error streams is collected and sent with the compiler output.
+         */
+        final var console = new ByteArrayOutputStream();
+        final var stream = new PrintStream(console, true);
+        System.setOut(stream);
+        System.setErr(stream);
+        out.writeInt(HANDSHAKE);
+        out.flush();
+        final long maxHeap = Runtime.getRuntime().maxMemory();
+        String[] arguments;
+        while ((arguments = readRequest(in)) != null) {
+            final var output = new StringWriter();
+            long retained;
+            int status;
+            try (PrintWriter writer = new PrintWriter(output)) {
+                status = javac.run(writer, writer, arguments);
+                retained = retainedHeap();
+            } catch (RuntimeException | Error e) {
+                e.printStackTrace(stream);
+                status = ABNORMAL;
+                retained = maxHeap; // Request a new worker.
+            }
+            stream.flush();
+            final String text = console.toString() + output;
+            console.reset();
+            out.writeInt(status);
+            out.writeLong(retained);
+            out.writeLong(maxHeap);
+            writeString(out, text);
+            out.flush();
+        }
+    }
+
+    /**
+     * {@return the heap memory in use after the most recent garbage collection, or 0 if unknown}.
+     * This is the memory retained by the compiler and the annotation processors between compilations.
+     */
+    private static long retainedHeap() {
+        long used = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                final MemoryUsage usage = pool.getCollectionUsage();
+                if (usage != null) {
+                    used += usage.getUsed();
+                }
+            }
+        }
+        return used;
+    }
+
+    /**
+     * Reads the command-line arguments of the next compilation.
+     *
+     * @param in the stream from which to read the request
+     * @return the command-line arguments, or {@code null} if the end of stream has been reached
+     * @throws IOException if an error occurred while reading the request
+     */
+    private static String[] readRequest(final DataInputStream in) throws IOException {
+        final String directory;
+        try {
+            directory = readString(in);
+        } catch (EOFException e) {
+            return null;
+        }
+        final var arguments = new String[in.readInt()];
+        for (int i = 0; i < arguments.length; i++) {
+            arguments[i] = readString(in);
+        }
+        if (!directory.isEmpty()) {
+            resolve(Path.of(directory), arguments);
+        }
+        return arguments;
+    }
+
+    /**
+     * Resolves the relative paths given to the options expecting files or directories against the given
+     * directory, and the relative paths to argument files. This is done in place. Other arguments are unchanged.
+     *
+     * @param basedir the base directory of the project
+     * @param arguments the javac command-line arguments
+     */
+    static void resolve(final Path basedir, final String[] arguments) {
+        for (int i = 0; i < arguments.length; i++) {
+            final String argument = arguments[i];
+            if (argument.startsWith("@")) {
+                arguments[i] = '@' + resolve(basedir, argument.substring(1));
+            } else if (PATH_OPTIONS.contains(argument)) {
+                if (++i < arguments.length) {
+                    arguments[i] = resolve(basedir, argument, arguments[i]);
+                }
+            } else {
+                final int s = argument.indexOf('=');
+                if (s > 0 && argument.startsWith("--") && PATH_OPTIONS.contains(argument.substring(0, s))) {
+                    final String option = argument.substring(0, s);
+                    arguments[i] = option + '=' + resolve(basedir, option, argument.substring(s + 1));
+                }
+            }
+        }
+    }
+
+    /**
+     * Resolves the relative paths in the value of the given option.
+     * The value may be a list of paths, optionally prefixed by a module name and an {@code '='} sign.
+     */
+    private static String resolve(final Path basedir, final String option, String value) {
+        if (option.equals("--system") && value.equals("none")) {
+            return value;
+        }
+        final var buffer = new StringBuilder(value.length() + 64);
+        if (option.equals("--patch-module") || option.equals("--module-source-path")) {
+            final int s = value.indexOf('=');
+            if (s >= 0) {
+                buffer.append(value, 0, s + 1);
+                value = value.substring(s + 1);
+            }
+        }
+        String separator = "";
+        for (String element : value.split(File.pathSeparator, -1)) {
+            buffer.append(separator).append(resolve(basedir, element));
+            separator = File.pathSeparator;
+        }
+        return buffer.toString();
+    }
+
+    /**
+     * Resolves the given path against the base directory if the path is relative.
+     * The path is returned unchanged if empty, absolute or not a valid path.
+     */
+    private static String resolve(final Path basedir, final String path) {
+        if (!path.isEmpty()) {
+            try {
+                final Path file = Path.of(path);
+                if (!file.isAbsolute()) {
+                    return basedir.resolve(file).toString();
+                }
+            } catch (InvalidPathException e) {
+                // Maybe a pattern of `--module-source-path`. Let javac handle it.
+            }
+        }
+        return path;
+    }
+
+    /**
+     * Reads a string written by {@link #writeString(DataOutputStream, String)}.
+     * Contrarily to {@link DataInputStream#readUTF()}, this method has no limit on the string length,
+     * which is necessary for long class-paths.
+     *
+     * @param in the stream from which to read the string
+     * @return the string
+     * @throws IOException if an error occurred while reading the string
+     */
+    static String readString(final DataInputStream in) throws IOException {
+        final var bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes the given string as the number of bytes followed by the bytes in UTF-8 encoding.
+     *
+     * @param out the stream where to write the string
+     * @param text the string to write
+     * @throws IOException if an error occurred while writing the string
+     */
+    static void writeString(final DataOutputStream out, final String text) throws IOException {
+        final byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+}
@@ -0,0 +1,332 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugin.compiler;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.api.Event;
+import org.apache.maven.api.EventType;
+import org.apache.maven.api.Listener;
+import org.apache.maven.api.Session;
+import org.apache.maven.api.SessionData;
+import org.apache.maven.api.plugin.Log;
+
+/**
+ * The long-lived compiler processes started during a Maven session.
+ * Launching a new {@code javac} process for each compilation costs the <abbr>JVM</abbr> startup
+ * and the warm-up of the compiler code in each module of a multi-module project. With this pool,
+ * the compilations are executed by {@link ForkedWorker} processes which stay alive for the next
+ * compilations with the same executable and <abbr>JVM</abbr> options.
+ *
+ * <p>A worker is replaced by a new process after a maximal number of compilations, or when the heap
+ * memory retained after garbage collection exceeds {@value #MAX_HEAP_PERCENT}% of the maximal heap size.
+ * This is a protection against the memory leaks of some annotation processors.
+ * If a worker cannot be started, for example because the <abbr>JDK</abbr> is older than the one required
+ * by this plugin, then the compilations with the same executable are no longer dispatched to workers.</p>
+ *
+ * <p>This class is thread-safe. A worker executes only one compilation at a time.
+ * The workers are stopped when the session ends.</p>
+ */
+final class ForkedWorkers implements Listener {
+    /**
+     * The key of the pool in the session data.
+     */
+    private static final SessionData.Key<ForkedWorkers> KEY = SessionData.key(ForkedWorkers.class);
+
+    /**
+     * Percentage of the maximal heap size above which a worker is replaced by a new process.
+     */
+    private static final int MAX_HEAP_PERCENT = 75;
+
+    /**
+     * Time to wait for a worker to terminate after its input stream has been closed.
+     */
+    private static final long STOP_TIMEOUT = 5;
+
+    /**
+     * The workers for each command which starts them.
+     */
+    private final Map<List<String>, Group> groups;
+
+    /**
+     * The result of a compilation executed by a worker.
+     *
+     * @param status the exit code of javac
+     * @param output the compiler output, including the output of annotation processors
+     */
+    record Result(int status, String output) {}
+
+    /**
+     * Creates an initially empty pool.
+     */
+    private ForkedWorkers() {
+        groups = new HashMap<>();
+    }
+
+    /**
+     * {@return the pool for the given session}.
+     * The pool is created when first needed.
+     *
+     * @param session the current Maven session
+     */
+    static ForkedWorkers forSession(final Session session) {
+        return session.getData().computeIfAbsent(KEY, () -> {
+            var pool = new ForkedWorkers();
+            session.registerListener(pool);
+            return pool;
+        });
+    }
+
+    /**
+     * Executes a compilation in an idle worker, or in a new worker if none is idle.
+     * If the maximal number of workers is reached, waits for a worker to become idle.
+     * If this method returns {@code null}, then the caller should launch a {@code javac}
+     * process for this compilation.
+     *
+     * @param command the command which starts a worker
+     * @param maxWorkers maximal number of workers for the given command
+     * @param maxCompilations number of compilations after which a worker is replaced
+     * @param basedir the directory against which to resolve relative paths, or {@code null} if none
+     * @param arguments the javac command-line arguments
+     * @param logger where to report the workers which cannot be started
+     * @return the result of the compilation, or {@code null} if it cannot be executed by a worker
+     * @throws InterruptedException if the thread has been interrupted while waiting for a worker
+     */
+    Result compile(
+            final List<String> command,
+            final int maxWorkers,
+            final int maxCompilations,
+            final Path basedir,
+            final List<String> arguments,
+            final Log logger)
+            throws InterruptedException {
+        final Group group;
+        Worker worker;
+        synchronized (this) {
+            group = groups.computeIfAbsent(List.copyOf(command), (key) -> new Group());
+            while ((worker = group.idle.pollFirst()) == null) {
+                if (group.disabled) {
+                    return null;
+                }
+                if (group.count < maxWorkers) {
+                    group.count++;
+                    break;
+                }
+                wait();
+            }
+        }
+        if (worker == null) {
+            try {
+                worker = new Worker(command);
+            } catch (IOException e) {
+                synchronized (this) {
+                    group.count--;
+                    group.disabled = true;
+                    notifyAll();
+                }
+                logger.warn("Cannot start a compiler worker with \"" + command.get(0)
+                        + "\". A new process will be launched for each compilation. Cause: " + e);
+                return null;
+            }
+            if (logger.isDebugEnabled()) {
+                logger.debug("Started a compiler worker with \"" + command.get(0) + "\".");
+            }
+        }
+        Result result = null;
+        boolean reusable = false;
+        try {
+            result = worker.compile(basedir, arguments);
+            reusable = worker.compilations < maxCompilations
+                    && worker.retainedHeap <= worker.maxHeap / 100 * MAX_HEAP_PERCENT;
+        } catch (IOException e) {
+            logger.warn("The compiler worker terminated unexpectedly. "
+                    + "The compilation will be executed in a new process. Cause: " + e);
+        } finally {
+            synchronized (this) {
+                if (reusable) {
+                    group.idle.addFirst(worker);
+                } else {
+                    group.count--;
+                }
+                notifyAll();
+            }
+            if (!reusable) {
+                worker.stop();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Stops all workers when the session ends. No compilation is running at that time.
+     *
+     * @param event the event notified by Maven
+     */
+    @Override
+    public void onEvent(final Event event) {
+        if (event.getType() != EventType.SESSION_ENDED) {
+            return;
+        }
+        event.getSession().unregisterListener(this);
+        final var all = new ArrayList<Worker>();
+        synchronized (this) {
+            for (Group group : groups.values()) {
+                all.addAll(group.idle);
+                group.idle.clear();
+                group.disabled = true;
+            }
+            notifyAll();
+        }
+        for (Worker worker : all) {
+            worker.stop();
+        }
+    }
+
+    /**
+     * The workers started with the same command.
+     * All fields are accessed in a block synchronized on the enclosing {@code ForkedWorkers} instance.
+     */
+    private static final class Group {
+        /**
+         * The idle workers, with the most recently used first.
+         */
+        final Deque<Worker> idle = new ArrayDeque<>();
+
+        /**
+         * Number of workers, idle or in use.
+         */
+        int count;
+
+        /**
+         * Whether the workers cannot be started or the session has ended.
+         */
+        boolean disabled;
+    }
+
+    /**
+     * A compiler process together with the streams for sending requests and receiving responses.
+     */
+    private static final class Worker {
+        /**
+         * The compiler process.
+         */
+        private final Process process;
+
+        /**
+         * The stream where to send the requests.
+         */
+        private final DataOutputStream out;
+
+        /**
+         * The stream from which to read the responses.
+         */
+        private final DataInputStream in;
+
+        /**
+         * Number of compilations executed by this worker.
+         */
+        int compilations;
+
+        /**
+         * Heap memory retained after the last garbage collection, as reported after the last compilation.
+         */
+        long retainedHeap;
+
+        /**
+         * Maximal heap size of the worker, as reported after the last compilation.
+         */
+        long maxHeap;
+
+        /**
+         * Starts a worker and waits until it is ready to receive requests.
+         *
+         * @param command the command which starts the worker
+         * @throws IOException if the process cannot be started or did not answer the handshake
+         */
+        Worker(final List<String> command) throws IOException {
+            process = new ProcessBuilder(command)
+                    .redirectError(ProcessBuilder.Redirect.DISCARD)
+                    .start();
+            out = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+            in = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+            try {
+                if (in.readInt() != ForkedWorker.HANDSHAKE) {
+                    throw new IOException("Unexpected answer from the compiler worker.");
+                }
+            } catch (IOException e) {
+                stop();
+                throw e;
+            }
+        }
+
+        /**
+         * Executes a compilation in this worker.
+         *
+         * @param basedir the directory against which to resolve relative paths, or {@code null} if none
+         * @param arguments the javac command-line arguments
+         * @return the result of the compilation
+         * @throws IOException if the worker terminated before to send the response
+         */
+        Result compile(final Path basedir, final List<String> arguments) throws IOException {
+            ForkedWorker.writeString(out, (basedir != null) ? basedir.toAbsolutePath().toString() : "");
+            out.writeInt(arguments.size());
+            for (String argument : arguments) {
+                ForkedWorker.writeString(out, argument);
+            }
+            out.flush();
+            final int status = in.readInt();
+            retainedHeap = in.readLong();
+            maxHeap = in.readLong();
+            final String output = ForkedWorker.readString(in);
+            compilations++;
+            return new Result(status, output);
+        }
+
+        /**
+         * Stops this worker by closing its input stream, or destroys the process if it does not stop.
+         */
+        void stop() {
+            try {
+                out.close();
+            } catch (IOException e) {
+                // Ignore since the process will be destroyed if needed.
+            }
+            try {
+                if (!process.waitFor(STOP_TIMEOUT, TimeUnit.SECONDS)) {
+                    process.destroyForcibly();
+                }
+            } catch (InterruptedException e) {
+                process.destroyForcibly();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
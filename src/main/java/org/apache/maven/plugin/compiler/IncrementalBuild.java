@@ -18,29 +18,39 @@
  */
 package org.apache.maven.plugin.compiler;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
-import java.nio.file.LinkOption;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.FileTime;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.Objects;
 import java.util.Set;
+import java.util.function.Predicate;
 import java.util.stream.Stream;
+import java.util.zip.CRC32C;
 
+import org.apache.maven.api.plugin.Log;
 import org.apache.maven.api.plugin.MojoException;
 
 /**
@@ -55,13 +65,20 @@ final class IncrementalBuild {
     enum Aspect {
         /**
          * Recompile all source files if the compiler options changed.
-         * Changes are detected on a <i>best-effort</i> basis only.
+         * Changes in options which affect only the diagnostics (e.g. {@code -Xlint}, {@code -verbose},
+         * {@code -nowarn}, {@code -deprecation}, memory settings) are ignored.
          */
         OPTIONS(Set.of()),
 
         /**
-         * Recompile all source files if at least one dependency (JAR file) changed since the last build.
-         * This check is based on the last modification times of JAR files.
+         * Recompile all source files if at least one dependency (JAR file) changed since the last build,
+         * or if a dependency has been added or removed.
+         * This check is based on the sizes and last modification times of JAR files. If a JAR file or directory
+         * has been modified, then a fingerprint of its public and protected API is compared with the
+         * fingerprint of the previous build, in order to ignore changes in implementation details.
+         * If no source file changed and the inputs of the dependency resolution (dependencies declared
+         * in the project model, compiler options) are the same as in the previous build, then the
+         * dependency resolution is skipped.
          *
          * <h4>Implementation note</h4>
          * The checks use information about the previous build saved in {@code target/…/*.cache} files.
@@ -74,6 +91,10 @@ final class IncrementalBuild {
          * In addition, if a source file has been deleted, then all source files are recompiled.
          * This check is based on the last modification times of source files,
          * not on the existence or modification times of the {@code *.class} files.
+         * If the last modification time changed, the content checksum is compared
+         * in order to ignore files that have been touched but not modified.
+         * The source files that depend on a class whose API changed are also recompiled,
+         * using a graph of dependencies between classes saved by the previous build.
          *
          * <p>It is usually not needed to specify both {@code SOURCES} and {@link #CLASSES}.
          * But doing so it not forbidden.</p>
@@ -191,50 +212,57 @@ final class IncrementalBuild {
     }
 
     /**
-     * The options for following links. An empty array means that links will be followed.
+     * Name of the file where to store the list of source files and the list of files created by the compiler.
+     * This is a binary format used for detecting changes. The file is stored in the {@code target} directory.
+     * If the file is absent of corrupted, it will be ignored and recreated.
+     *
+     * @see AbstractCompilerMojo#mojoStatusPath
      */
-    private static final LinkOption[] LINK_OPTIONS = new LinkOption[0];
+    private final Path cacheFile;
 
     /**
-     * Magic number, generated randomly, to store in the header of the binary file.
-     * This number shall be changed every times that the binary file format is modified.
-     * The file format is described in {@link #writeCache()}.
-     *
-     * @see #writeCache()
+     * Converter of paths to and from their string representation in the cache file and the dependency graph.
+     * Paths are stored relative to well-known directories, so that the build directory can be relocated.
      */
-    private static final long MAGIC_NUMBER = -8163803035240576921L;
+    private final RelocatablePaths paths;
 
     /**
-     * Flags in the binary output file telling whether the source and/or target directory changed.
-     * Those flags are stored as a byte before each entry. They can be combined as bit mask.
-     * Those flags are for compressing the binary file, not for detecting if something changed
-     * since the last build.
+     * Whether the cache file has been loaded.
      */
-    private static final byte NEW_SOURCE_DIRECTORY = 1, NEW_TARGET_DIRECTORY = 2;
+    private boolean cacheLoaded;
 
     /**
-     * Flag in the binary output file telling that the output file of a source is different
-     * than the one inferred by heuristic rules. For performance reason, we store the output
-     * files explicitly only when it cannot be inferred.
-     *
-     * @see SourceInfo#toOutputFile(Path, Path, Path)
-     * @see javax.tools.JavaFileManager#getFileForOutput
+     * The source files of the previous build, or {@code null} if the cache has not been loaded.
+     * This table is initialized by {@link #loadCache()} and is not modified after that point,
+     * as it may be used by more than one check of the incremental build.
      */
-    private static final byte EXPLICIT_OUTPUT_FILE = 4;
+    private IncrementalBuildCache previousBuild;
 
     /**
-     * Name of the file where to store the list of source files and the list of files created by the compiler.
-     * This is a binary format used for detecting changes. The file is stored in the {@code target} directory.
-     * If the file is absent of corrupted, it will be ignored and recreated.
+     * Information about the dependencies during the previous build, including <abbr>ABI</abbr> fingerprints.
+     * Keys are JAR files or directories. This map is initialized by {@link #loadCache()}.
      *
-     * @see AbstractCompilerMojo#mojoStatusPath
+     * @see ClassScanner#fingerprint(Path)
      */
-    private final Path cacheFile;
+    private Map<Path, DependencyInfo> previousDependencies = Map.of();
 
     /**
-     * Whether the cache file has been loaded.
+     * Information about the dependencies for the current build, including <abbr>ABI</abbr> fingerprints.
+     * This map is filled by {@link #dependencyChanges(Iterable, Collection)} with the values of the previous
+     * build for the dependencies that did not change, and with new values for the dependencies that changed.
+     * It is saved by {@link #writeCache(boolean)}.
      */
-    private boolean cacheLoaded;
+    private final Map<Path, DependencyInfo> dependencies = new LinkedHashMap<>();
+
+    /**
+     * Modification times of the files in the output directories, loaded when first needed.
+     * Keys are directories and values are the modification times of the files in that directory,
+     * indexed by file names. Each directory is listed only once for answering all queries about
+     * the existence and the modification times of output files.
+     *
+     * @see #lastModified(Path)
+     */
+    private final Map<Path, Map<String, FileTime>> outputSnapshots = new HashMap<>();
 
     /**
      * All source files together with their last modification time.
@@ -258,10 +286,53 @@ final class IncrementalBuild {
     private long previousBuildTime;
 
     /**
-     * Hash code value of the compiler options during the previous build.
+     * Digest of the compiler options which may affect the output during the previous build.
      * This value is initialized by {@link #loadCache()}.
      */
-    private int previousOptionsHash;
+    private long previousOptionsDigest;
+
+    /**
+     * Digest of the compiler options of this build which may affect the output, or 0 if the options
+     * are not checked. This is the value compared with the previous build.
+     * This value is initialized by {@link #optionChanges(Options)}.
+     */
+    private long optionsDigest;
+
+    /**
+     * Digest of the compiler options of this build which affect only the diagnostics, or 0 if the options
+     * are not checked. This value is saved for information purposes but does not cause recompilation.
+     * This value is initialized by {@link #optionChanges(Options)}.
+     */
+    private long diagnosticsDigest;
+
+    /**
+     * Digest of the inputs of the dependency resolution during the previous build, or 0 if unknown.
+     * This value is initialized by {@link #loadCache()}.
+     */
+    private long previousResolutionDigest;
+
+    /**
+     * Digest of the inputs of the dependency resolution of this build, or 0 if unknown.
+     * This value is initialized by {@link #setResolutionDigest(long)}.
+     */
+    private long resolutionDigest;
+
+    /**
+     * The directory where the compiler writes the class files before they are moved to the output directory,
+     * or {@code null} if the compiler writes directly in the output directory.
+     *
+     * @see #createStagingDirectory()
+     */
+    private Path stagingDirectory;
+
+    /**
+     * The output files of the previous build which have been moved out of the output directory because
+     * their source files are recompiled. Keys are the original locations and values are the temporary ones.
+     * Empty if no file has been hidden.
+     *
+     * @see #hidePreviousOutputs(Path, Collection)
+     */
+    private final Map<Path, Path> hiddenOutputs = new LinkedHashMap<>();
 
     /**
      * Whether to provide more details about why a module is rebuilt.
@@ -279,120 +350,292 @@ final class IncrementalBuild {
         this.sourceFiles = sourceFiles;
         Path file = mojo.mojoStatusPath;
         cacheFile = Files.createDirectories(file.getParent()).resolve(file.getFileName());
+        paths = new RelocatablePaths(mojo.relocatableDirectories());
         showCompilationChanges = mojo.showCompilationChanges;
         buildTime = System.currentTimeMillis();
         previousBuildTime = buildTime;
     }
 
+    /**
+     * Creates an initially empty graph of dependencies between the classes of the project.
+     * The graph is saved in a file next to the cache file, with the {@code ".deps"} extension.
+     *
+     * @param logger where to report which source files are recompiled because of dependencies
+     * @return a new dependency graph for the source files of this build
+     *
+     * @see #dependencyGraphChanges(DependencyGraph)
+     */
+    DependencyGraph dependencyGraph(Log logger) {
+        return new DependencyGraph(siblingFile(".deps"), sourceFiles, paths, logger);
+    }
+
+    /**
+     * {@return a file in the same directory as the cache file, with the same name but a different extension}.
+     *
+     * @param extension the extension of the file, including the leading dot
+     */
+    private Path siblingFile(String extension) {
+        String filename = cacheFile.getFileName().toString();
+        int s = filename.lastIndexOf('.');
+        if (s > 0) {
+            filename = filename.substring(0, s);
+        }
+        return cacheFile.resolveSibling(filename + extension);
+    }
+
+    /**
+     * Returns the fingerprint of the <abbr>ABI</abbr> of the given dependency (JAR file or directory).
+     * The fingerprint computed by {@link #dependencyChanges(Iterable, Collection)} is reused if available.
+     * Otherwise, the fingerprint is computed and remembered for the next build if the dependency is tracked.
+     *
+     * @param root the JAR file or directory of the dependency
+     * @return fingerprint of the <abbr>ABI</abbr> of the dependency
+     * @throws IOException if an error occurred while reading the dependency
+     */
+    long fingerprint(final Path root) throws IOException {
+        final DependencyInfo info = dependencies.get(root);
+        if (info != null && info.hasFingerprint()) {
+            return info.fingerprint();
+        }
+        final long fingerprint = ClassScanner.fingerprint(root);
+        if (info != null) {
+            dependencies.put(
+                    root, new DependencyInfo(info.size(), info.lastModified(), info.checksum(), fingerprint, true));
+        }
+        return fingerprint;
+    }
+
+    /**
+     * Creates an empty directory where the compiler will write the class files of an incremental build.
+     * The files are moved to the output directory by {@link #promoteStagedFiles(Path)} only if the compilation
+     * succeeded. Therefore, a failed compilation leaves the output directory in the state of the previous build,
+     * which is consistent with the cache file and the dependency graph of that build.
+     * Files left by an interrupted build are deleted.
+     *
+     * @return the directory where the compiler shall write the class files
+     * @throws IOException if an error occurred while deleting or creating the directory
+     */
+    Path createStagingDirectory() throws IOException {
+        stagingDirectory = siblingFile(".staging");
+        deleteTree(stagingDirectory);
+        return Files.createDirectories(stagingDirectory);
+    }
+
+    /**
+     * Deletes the staging directory and all its content after a failed compilation.
+     * This method does nothing if there is no staging directory.
+     *
+     * @throws IOException if an error occurred while deleting the files
+     */
+    void discardStagedFiles() throws IOException {
+        if (stagingDirectory != null) {
+            deleteTree(stagingDirectory);
+        }
+        for (Map.Entry<Path, Path> entry : hiddenOutputs.entrySet()) {
+            move(entry.getValue(), entry.getKey());
+        }
+        hiddenOutputs.clear();
+    }
+
+    /**
+     * Moves the output files of the previous build of the given sources out of the output directory.
+     * This is done before a subset of the sources is recompiled, because the output directory is on the
+     * class-path during that compilation. Without this method, a class which is no longer declared by
+     * a recompiled source (for example a secondary top-level class which has been removed) would still
+     * be visible to the compiler, and would stay in the output directory after the build.
+     *
+     * <p>The files are moved in a directory which is a sibling of the staging directory.
+     * They are moved back by {@link #discardStagedFiles()} if the compilation failed,
+     * or deleted by {@link #promoteStagedFiles(Path)} if the compilation succeeded.
+     * Files which are not in the output directory or which do not exist are ignored.</p>
+     *
+     * @param outputDirectory the output directory of the classes
+     * @param sources the source files which will be recompiled
+     * @throws IOException if an error occurred while moving a file
+     */
+    void hidePreviousOutputs(final Path outputDirectory, final Collection<SourceFile> sources) throws IOException {
+        final Path hidden = siblingFile(".hidden");
+        if (hiddenOutputs.isEmpty()) {
+            deleteTree(hidden); // Files left by an interrupted build.
+        }
+        for (SourceFile source : sources) {
+            final SourceInfo previous = (previousBuild != null) ? previousBuild.get(source.file) : null;
+            final List<Path> outputs = (previous != null) ? previous.outputFiles() : null;
+            if (outputs == null) {
+                continue; // The primary output file will be overwritten anyway.
+            }
+            for (Path file : outputs) {
+                if (file.startsWith(outputDirectory) && !hiddenOutputs.containsKey(file)) {
+                    final Path target = hidden.resolve(outputDirectory.relativize(file));
+                    Files.createDirectories(target.getParent());
+                    try {
+                        move(file, target);
+                    } catch (NoSuchFileException e) {
+                        continue;
+                    }
+                    hiddenOutputs.put(file, target);
+                }
+            }
+        }
+        outputSnapshots.clear();
+    }
+
+    /**
+     * Moves the given file, replacing the target if it exists.
+     * The move is atomic if supported by the file system.
+     */
+    private static void move(final Path file, final Path target) throws IOException {
+        try {
+            Files.move(file, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(file, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Deletes the given directory and all its content, if it exists.
+     */
+    static void deleteTree(final Path directory) throws IOException {
+        if (Files.isDirectory(directory)) {
+            Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+                    Files.delete(file);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(Path dir, IOException error) throws IOException {
+                    if (error != null) {
+                        throw error;
+                    }
+                    Files.delete(dir);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        }
+    }
+
+    /**
+     * Moves the files written by the compiler in the staging directory to the given output directory.
+     * Each file is moved with an atomic operation if supported, replacing the file of the previous build.
+     * The staging directory is deleted after all files have been moved. The output files of the previous
+     * build which have been {@linkplain #hidePreviousOutputs hidden} are deleted, so the outputs of the
+     * recompiled sources which have not been written again do not remain in the output directory.
+     * This method does nothing if there is no staging directory.
+     *
+     * @param outputDirectory the output directory of the classes
+     * @throws IOException if an error occurred while moving the files
+     */
+    void promoteStagedFiles(final Path outputDirectory) throws IOException {
+        if (!hiddenOutputs.isEmpty()) {
+            hiddenOutputs.clear();
+            deleteTree(siblingFile(".hidden"));
+        }
+        final Path staging = stagingDirectory;
+        if (staging == null || !Files.isDirectory(staging)) {
+            return;
+        }
+        Files.walkFileTree(staging, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) throws IOException {
+                Files.createDirectories(outputDirectory.resolve(staging.relativize(dir)));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+                move(file, outputDirectory.resolve(staging.relativize(file)));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException error) throws IOException {
+                if (error != null) {
+                    throw error;
+                }
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        outputSnapshots.clear();
+    }
+
+    /**
+     * Loads the graph of dependencies between the classes of the previous build. This graph is needed for
+     * recompiling the classes which depend on a modified source file. If the graph cannot be loaded, then
+     * this method conservatively requests a full build.
+     *
+     * @param graph the graph where to load the dependencies of the previous build
+     * @return {@code null} if the graph has been loaded, otherwise a message saying why to rebuild
+     *
+     * @see Aspect#SOURCES
+     */
+    String dependencyGraphChanges(DependencyGraph graph) {
+        try {
+            if (graph.load()) {
+                return null;
+            }
+        } catch (IOException e) {
+            return causeOfRebuild("the class dependencies of the previous build cannot be read", true)
+                    .append(System.lineSeparator())
+                    .append(e)
+                    .toString();
+        }
+        return causeOfRebuild("the class dependencies of the previous build are unknown", false)
+                .toString();
+    }
+
     /**
      * Saves the list of source files in the cache file. The cache is a binary file
-     * and its format may change in any future version. The current format is as below:
-     *
-     * <ul>
-     *   <li>The magic number (while change when the format changes).</li>
-     *   <li>The build time in milliseconds since January 1st, 1970.</li>
-     *   <li>Hash code value of the {@link Options#options} list.</li>
-     *   <li>Number of source files, or 0 if {@code sources} is {@code false}.</li>
-     *   <li>If {@code sources} is {@code true}, then for each source file:<ul>
-     *     <li>A bit mask of {@link #NEW_SOURCE_DIRECTORY}, {@link #NEW_TARGET_DIRECTORY} and {@link #EXPLICIT_OUTPUT_FILE}.</li>
-     *     <li>If {@link #NEW_SOURCE_DIRECTORY} is set, the new root directory of source files.</li>
-     *     <li>If {@link #NEW_TARGET_DIRECTORY} is set, the new root directory of output files.</li>
-     *     <li>If {@link #EXPLICIT_OUTPUT_FILE} is set, the output file.</li>
-     *     <li>The file path relative to the parent of the previous file.</li>
-     *     <li>Last modification time of the source file, in milliseconds since January 1st.</li>
-     *   </ul></li>
-     * </ul>
-     *
-     * The "is sibling" Boolean is for avoiding to repeat the parent directory. If that flag is {@code true},
-     * then only the filename is stored and the parent is the same as the previous file.
-     *
-     * @param optionsHash hash code value of the {@link Options#options} list
+     * and its format may change in any future version. The current format is
+     * described in {@link IncrementalBuildCache}.
+     *
      * @param sources whether to save also the list of source files
      * @throws IOException if an error occurred while writing the cache file
      */
-    @SuppressWarnings({"checkstyle:InnerAssignment", "checkstyle:NeedBraces"})
-    public void writeCache(final int optionsHash, final boolean sources) throws IOException {
-        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(
+    public void writeCache(final boolean sources) throws IOException {
+        IncrementalBuildCache.write(
                 cacheFile,
-                StandardOpenOption.WRITE,
-                StandardOpenOption.CREATE,
-                StandardOpenOption.TRUNCATE_EXISTING)))) {
-            out.writeLong(MAGIC_NUMBER);
-            out.writeLong(buildTime);
-            out.writeInt(optionsHash);
-            out.writeInt(sources ? sourceFiles.size() : 0);
-            if (sources) {
-                Path srcDir = null;
-                Path tgtDir = null;
-                Path previousParent = null;
-                for (SourceFile source : sourceFiles) {
-                    final Path sourceFile = source.file;
-                    final Path outputFile = source.getOutputFile(false);
-                    boolean sameSrcDir = Objects.equals(srcDir, srcDir = source.directory.root);
-                    boolean sameTgtDir = Objects.equals(tgtDir, tgtDir = source.directory.outputDirectory);
-                    boolean sameOutput = (outputFile == null)
-                            || outputFile.equals(SourceInfo.toOutputFile(srcDir, tgtDir, sourceFile));
-
-                    out.writeByte((sameSrcDir ? 0 : NEW_SOURCE_DIRECTORY)
-                            | (sameTgtDir ? 0 : NEW_TARGET_DIRECTORY)
-                            | (sameOutput ? 0 : EXPLICIT_OUTPUT_FILE));
-
-                    if (!sameSrcDir) out.writeUTF((previousParent = srcDir).toString());
-                    if (!sameTgtDir) out.writeUTF(tgtDir.toString());
-                    if (!sameOutput) out.writeUTF(outputFile.toString());
-                    out.writeUTF(previousParent.relativize(sourceFile).toString());
-                    out.writeLong(source.lastModified);
-                    previousParent = sourceFile.getParent();
-                }
-            }
+                paths,
+                buildTime,
+                optionsDigest,
+                diagnosticsDigest,
+                resolutionDigest,
+                dependencies,
+                sources ? sourceFiles : List.of());
+    }
+
+    /**
+     * Saves the cache after a successful compilation, completed with the output files of each source.
+     * The output files are those recorded by the given file manager during the compilation.
+     * This method shall be invoked only after the staged files have been moved to the output directory,
+     * because the cache declares the sources as compiled.
+     *
+     * @param sources whether to save also the list of source files
+     * @param recorder the file manager which recorded the output files written by the compiler, or {@code null}
+     * @throws IOException if an error occurred while writing the cache file
+     */
+    void writeCache(final boolean sources, final OutputFileRecorder recorder) throws IOException {
+        if (sources && recorder != null) {
+            recorder.assignTo(sourceFiles);
         }
+        writeCache(sources);
     }
 
     /**
      * Loads the list of source files and their modification times from the previous build.
-     * The binary file format reads by this method is described in {@link #writeCache()}.
-     * The keys are the source files. The returned map is modifiable.
+     * The result is stored in the {@link #previousBuild} table.
      *
-     * @return the source files of previous build
      * @throws IOException if an error occurred while reading the cache file
      */
-    @SuppressWarnings("checkstyle:NeedBraces")
-    private Map<Path, SourceInfo> loadCache() throws IOException {
-        final Map<Path, SourceInfo> previousBuild;
-        try (DataInputStream in = new DataInputStream(
-                new BufferedInputStream(Files.newInputStream(cacheFile, StandardOpenOption.READ)))) {
-            if (in.readLong() != MAGIC_NUMBER) {
-                throw new IOException("Invalid cache file.");
-            }
-            previousBuildTime = in.readLong();
-            previousOptionsHash = in.readInt();
-            int remaining = in.readInt();
-            previousBuild = new HashMap<>(remaining + remaining / 3);
-            Path srcDir = null;
-            Path tgtDir = null;
-            Path srcFile = null;
-            while (--remaining >= 0) {
-                final byte flags = in.readByte();
-                if ((flags & ~(NEW_SOURCE_DIRECTORY | NEW_TARGET_DIRECTORY | EXPLICIT_OUTPUT_FILE)) != 0) {
-                    throw new IOException("Invalid cache file.");
-                }
-                boolean newSrcDir = (flags & NEW_SOURCE_DIRECTORY) != 0;
-                boolean newTgtDir = (flags & NEW_TARGET_DIRECTORY) != 0;
-                boolean newOutput = (flags & EXPLICIT_OUTPUT_FILE) != 0;
-                Path output = null;
-                if (newSrcDir) srcDir = Path.of(in.readUTF());
-                if (newTgtDir) tgtDir = Path.of(in.readUTF());
-                if (newOutput) output = Path.of(in.readUTF());
-                String path = in.readUTF();
-                srcFile = newSrcDir ? srcDir.resolve(path) : srcFile.resolveSibling(path);
-                srcFile = srcFile.normalize();
-                if (previousBuild.put(srcFile, new SourceInfo(srcDir, tgtDir, output, in.readLong())) != null) {
-                    throw new IOException("Duplicated source file declared in the cache: " + srcFile);
-                }
-            }
-        }
+    private void loadCache() throws IOException {
+        previousBuild = IncrementalBuildCache.read(cacheFile, paths);
+        previousBuildTime = previousBuild.buildTime;
+        previousOptionsDigest = previousBuild.optionsDigest;
+        previousResolutionDigest = previousBuild.resolutionDigest;
+        previousDependencies = previousBuild.dependencies;
         cacheLoaded = true;
-        return previousBuild;
     }
 
     /**
@@ -400,10 +643,12 @@ final class IncrementalBuild {
      *
      * @param sourceDirectory root directory of the source file
      * @param outputDirectory output directory of the compiled file
-     * @param outputFile the output file if it was explicitly specified, or {@code null} if it can be inferred
+     * @param outputFiles all files written by the compiler for the source file, or {@code null} if unknown
      * @param lastModified last modification times of the source file during the previous build
+     * @param checksum CRC32C checksum of the source file content during the previous build
      */
-    private static record SourceInfo(Path sourceDirectory, Path outputDirectory, Path outputFile, long lastModified) {
+    static record SourceInfo(
+            Path sourceDirectory, Path outputDirectory, List<Path> outputFiles, long lastModified, long checksum) {
         /**
          * The default output extension used in heuristic rules. It is okay if the actual output file does not use
          * this extension, because the heuristic rules should be applied only when we have detected that they apply.
@@ -411,9 +656,8 @@ final class IncrementalBuild {
         private static final String OUTPUT_EXTENSION = SourceDirectory.CLASS_FILE_SUFFIX;
 
         /**
-         * Infers the path to the output file using heuristic rules. This method is used for saving space in the
-         * common space where the heuristic rules work. If the heuristic rules do not work, the full output path
-         * will be stored in the {@link #cacheFile}.
+         * Infers the path to the output file using heuristic rules.
+         * This method is used only when the output files are unknown.
          *
          * @param sourceDirectory root directory of the source file
          * @param outputDirectory output directory of the compiled file
@@ -426,36 +670,113 @@ final class IncrementalBuild {
         }
 
         /**
-         * Delete all output files associated to the given source file. If the output file is a {@code .class} file,
-         * then this method deletes also the output files for all inner classes (e.g. {@code "Foo$0.class"}).
+         * Returns whether the given source file has the same content as during the previous build.
+         * The last modification time is checked first. The checksum is compared only if the time
+         * changed, in which case the file needs to be read. If the file is unchanged, then this
+         * method sets the source checksum to the previous value for avoiding to compute it again.
+         *
+         * @param source the source file to compare with the previous build
+         * @param staleMillis the granularity in milliseconds to use for comparing modification times
+         * @return whether the given file has the same content as during the previous build
+         * @throws IOException if an error occurred while reading the source file
+         */
+        boolean isUnchanged(SourceFile source, long staleMillis) throws IOException {
+            if (source.lastModified - lastModified <= staleMillis) {
+                source.assumeChecksum(checksum);
+                return true;
+            }
+            return source.checksum() == checksum;
+        }
+
+        /**
+         * Deletes all output files associated to the given removed source files. If the output files of a source
+         * are known, then this method deletes exactly those files. Otherwise, the output file is inferred by
+         * heuristic rules and, if it is a {@code .class} file, this method deletes also the output files for
+         * all inner classes (e.g. {@code "Foo$0.class"}).
+         *
+         * <p>The inferred files are grouped by output directory, and each directory is listed only once
+         * regardless the number of removed source files. Then, all files are deleted in parallel.</p>
          *
-         * @param sourceFile the source file for which to delete output files
-         * @throws IOException if an error occurred while scanning the output directory or deleting a file
+         * @param removed the removed source files together with information from the previous build
+         * @throws IOException if an error occurred while scanning an output directory or deleting a file
          */
-        void deleteClassFiles(final Path sourceFile) throws IOException {
-            Path output = outputFile;
-            if (output == null) {
-                output = toOutputFile(sourceDirectory, outputDirectory, sourceFile);
-            }
-            String filename = output.getFileName().toString();
-            if (filename.endsWith(OUTPUT_EXTENSION)) {
-                String prefix = filename.substring(0, filename.length() - OUTPUT_EXTENSION.length());
-                List<Path> outputs;
-                try (Stream<Path> files = Files.walk(output.getParent(), 1)) {
-                    outputs = files.filter((f) -> {
-                                String name = f.getFileName().toString();
-                                return name.startsWith(prefix)
-                                        && name.endsWith(OUTPUT_EXTENSION)
-                                        && (name.equals(filename) || name.charAt(prefix.length()) == '$');
-                            })
-                            .toList();
+        static void deleteClassFiles(final Map<Path, SourceInfo> removed) throws IOException {
+            final var toDelete = new ArrayList<Path>();
+            final var prefixes = new HashMap<Path, Set<String>>();
+            for (Map.Entry<Path, SourceInfo> entry : removed.entrySet()) {
+                final SourceInfo info = entry.getValue();
+                if (info.outputFiles != null) {
+                    toDelete.addAll(info.outputFiles);
+                    continue;
                 }
-                for (Path p : outputs) {
-                    Files.delete(p);
+                final Path output = toOutputFile(info.sourceDirectory, info.outputDirectory, entry.getKey());
+                final String filename = output.getFileName().toString();
+                if (filename.endsWith(OUTPUT_EXTENSION)) {
+                    prefixes.computeIfAbsent(output.getParent(), (key) -> new HashSet<>())
+                            .add(filename.substring(0, filename.length() - OUTPUT_EXTENSION.length()));
+                } else {
+                    toDelete.add(output);
                 }
-            } else {
-                Files.deleteIfExists(output);
             }
+            /*
+             * List each directory once. A file matches if its name without extension is one of the prefixes,
+             * or if the part before any '$' character is one of the prefixes (inner classes).
+             */
+            for (Map.Entry<Path, Set<String>> entry : prefixes.entrySet()) {
+                final Set<String> names = entry.getValue();
+                try (DirectoryStream<Path> files = Files.newDirectoryStream(entry.getKey())) {
+                    for (Path file : files) {
+                        final String name = file.getFileName().toString();
+                        if (name.endsWith(OUTPUT_EXTENSION)) {
+                            final String base = name.substring(0, name.length() - OUTPUT_EXTENSION.length());
+                            int s = base.length();
+                            do {
+                                if (names.contains(base.substring(0, s))) {
+                                    toDelete.add(file);
+                                    break;
+                                }
+                                s = base.lastIndexOf('$', s - 1);
+                            } while (s > 0);
+                        }
+                    }
+                } catch (NoSuchFileException e) {
+                    // Output directory already deleted, nothing to do.
+                }
+            }
+            try {
+                toDelete.parallelStream().forEach((file) -> {
+                    try {
+                        Files.deleteIfExists(file);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    /**
+     * Information about a dependency (JAR file or directory) from a previous build.
+     *
+     * @param size size of the JAR file in bytes, or -1 for a directory
+     * @param lastModified last modification time of the JAR file, or generation of the {@link BuildStamp}
+     *        for a directory, or 0 if the directory has no build stamp
+     * @param checksum CRC32C checksum of the central directory of the JAR file, or 0 for a directory
+     * @param fingerprint fingerprint of the <abbr>ABI</abbr>, meaningful only if {@code hasFingerprint} is true
+     * @param hasFingerprint whether the fingerprint of the <abbr>ABI</abbr> has been computed
+     */
+    static record DependencyInfo(long size, long lastModified, int checksum, long fingerprint, boolean hasFingerprint) {
+        /**
+         * Returns whether this dependency has the same <abbr>ABI</abbr> than the given dependency.
+         * If the fingerprint of any dependency is unknown, conservatively returns {@code false}.
+         *
+         * @param other the dependency of the previous build
+         * @return whether the two dependencies are known to have the same <abbr>ABI</abbr>
+         */
+        boolean hasSameAPI(DependencyInfo other) {
+            return hasFingerprint && other.hasFingerprint && fingerprint == other.fingerprint;
         }
     }
 
@@ -478,12 +799,12 @@ final class IncrementalBuild {
      * @see Aspect#SOURCES
      */
     String inputFileTreeChanges(final long staleMillis, final boolean rebuildOnAdd) throws IOException {
-        final Map<Path, SourceInfo> previousBuild;
         try {
-            previousBuild = loadCache();
+            loadCache();
         } catch (NoSuchFileException e) {
             return "Compiling all files.";
         } catch (IOException e) {
+            previousBuild = null;
             return causeOfRebuild("information about the previous build cannot be read", true)
                     .append(System.lineSeparator())
                     .append(e)
@@ -491,20 +812,22 @@ final class IncrementalBuild {
         }
         boolean rebuild = false;
         boolean allChanged = true;
+        int remaining = previousBuild.size();
         List<Path> added = new ArrayList<>();
         for (SourceFile source : sourceFiles) {
-            SourceInfo previous = previousBuild.remove(source.file);
+            SourceInfo previous = previousBuild.get(source.file);
             if (previous != null) {
-                if (source.lastModified - previous.lastModified <= staleMillis) {
+                remaining--;
+                if (previous.isUnchanged(source, staleMillis)) {
                     /*
-                     * Source file has not been modified. But we still need to check if the output file exists.
+                     * Source file has not been modified. But we still need to check if the output files exist.
                      * It may be, for example, because the compilation failed during the previous build because
                      * of another class.
                      */
                     allChanged = false;
-                    Path output = source.getOutputFile(true);
-                    if (Files.exists(output, LINK_OPTIONS)) {
-                        continue; // Source file has not been modified and output file exists.
+                    source.setOutputFiles(previous.outputFiles());
+                    if (oldestOutput(source) != null) {
+                        continue; // Source file has not been modified and output files exist.
                     }
                 }
             } else if (!source.ignoreModification) {
@@ -516,11 +839,11 @@ final class IncrementalBuild {
             source.isNewOrModified = true;
         }
         /*
-         * The files remaining in `previousBuild` are files that have been removed since the last build.
-         * If no file has been removed, then there is no need to rebuild the whole project (added files
-         * do not require a full build).
+         * The files of `previousBuild` that have not been found are files that have been removed since the
+         * last build. If no file has been removed, then there is no need to rebuild the whole project (added
+         * files do not require a full build).
          */
-        if (previousBuild.isEmpty()) {
+        if (remaining == 0) {
             if (allChanged) {
                 return causeOfRebuild("all source files changed", false).toString();
             }
@@ -533,9 +856,12 @@ final class IncrementalBuild {
          * If the output file extension is ".class", then many files may be deleted because
          * the output file may be accompanied by inner classes (e.g. {@code "Foo$0.class"}).
          */
-        for (Map.Entry<Path, SourceInfo> removed : previousBuild.entrySet()) {
-            removed.getValue().deleteClassFiles(removed.getKey());
+        final var removed = previousBuild.toMap();
+        for (SourceFile source : sourceFiles) {
+            removed.remove(source.file);
         }
+        SourceInfo.deleteClassFiles(removed);
+        outputSnapshots.clear();
         /*
          * At this point, it has been decided that all source files will be recompiled.
          * Format a message saying why.
@@ -545,7 +871,7 @@ final class IncrementalBuild {
             for (Path fileAdded : added) {
                 causeOfRebuild.append(System.lineSeparator()).append("  + ").append(fileAdded);
             }
-            for (Path fileRemoved : previousBuild.keySet()) {
+            for (Path fileRemoved : removed.keySet()) {
                 causeOfRebuild.append(System.lineSeparator()).append("  - ").append(fileRemoved);
             }
         }
@@ -553,47 +879,228 @@ final class IncrementalBuild {
     }
 
     /**
-     * Returns whether at least one dependency file is more recent than the given build start time.
-     * This method should be invoked only after {@link #inputFileTreeChanges} returned {@code null}.
-     * Each given root can be either a regular file (typically a JAR file) or a directory.
-     * Directories are scanned recursively.
+     * Sets the digest of the inputs of the dependency resolution for this build.
+     * This value will be saved by the next call to {@link #writeCache(boolean)}.
+     *
+     * @param digest digest of the inputs of the dependency resolution, or 0 if unknown
+     *
+     * @see #isResolutionUnchanged(Collection)
+     */
+    void setResolutionDigest(final long digest) {
+        resolutionDigest = digest;
+    }
+
+    /**
+     * Returns whether the dependency resolution would produce the same result as in the previous build,
+     * and none of the dependency files changed. This method is invoked before dependency resolution,
+     * for skipping the resolution when there is no source file to compile. The inputs of the dependency
+     * resolution must have the same digest as in the previous build, and all dependencies recorded by the
+     * previous build must have the same size and modification time (JAR files) or the same build stamp
+     * (reactor output directories), or no file modified since the previous build (other directories).
+     *
+     * <p>This method does not compute any checksum or fingerprint. If some dependencies may have changed,
+     * then this method conservatively returns {@code false} and {@link #dependencyChanges dependencyChanges(…)}
+     * will perform the full check after the dependency resolution.</p>
      *
-     * @param directories files or directories to scan
      * @param fileExtensions extensions of the file to check (usually "jar" and "class")
-     * @param changeTime the time at which a file is considered as changed
+     * @return whether the dependency resolution can be skipped
+     * @throws IOException if an error occurred while scanning the directories
+     */
+    boolean isResolutionUnchanged(Collection<String> fileExtensions) throws IOException {
+        if (!cacheLoaded) {
+            try {
+                loadCache();
+            } catch (IOException e) {
+                return false; // Will be reported by `dependencyChanges(…)`.
+            }
+        }
+        if (resolutionDigest == 0 || resolutionDigest != previousResolutionDigest) {
+            return false;
+        }
+        final FileTime changeTime = FileTime.fromMillis(previousBuildTime);
+        final Predicate<Path> hasExtension = hasExtension(fileExtensions);
+        final List<Path> updatedInRoot = new ArrayList<>();
+        for (Map.Entry<Path, DependencyInfo> entry : previousDependencies.entrySet()) {
+            final Path root = entry.getKey();
+            final DependencyInfo previous = entry.getValue();
+            final BasicFileAttributes attributes;
+            try {
+                attributes = Files.readAttributes(root, BasicFileAttributes.class);
+            } catch (NoSuchFileException e) {
+                return false;
+            }
+            if (attributes.isDirectory()) {
+                final BuildStamp stamp = BuildStamp.read(root);
+                if (stamp != null) {
+                    if (previous.lastModified() != stamp.generation) {
+                        return false;
+                    }
+                } else {
+                    addNewerFiles(root, hasExtension, changeTime, updatedInRoot);
+                    if (!updatedInRoot.isEmpty()) {
+                        return false;
+                    }
+                }
+            } else if (previous.size() != attributes.size()
+                    || previous.lastModified() != attributes.lastModifiedTime().toMillis()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns whether at least one dependency has been added, removed, or modified with a different
+     * <abbr>ABI</abbr> than during the previous build. This method can be invoked even if a rebuild
+     * has already been decided by another check, in which case the information about the dependencies
+     * is updated for the next build but the returned value should be ignored.
+     *
+     * <p>The dependencies are compared with the list of the previous build, which allows to detect additions
+     * and removals regardless the modification times. For JAR files, the size and the modification time are
+     * compared first, which requires only one file system access per dependency. If they differ, a checksum
+     * of the central directory of the ZIP file is compared, which detects JAR files copied without change.
+     * Directories which are the output of another module of the same reactor have a {@link BuildStamp},
+     * in which case the stamp is read instead of the class files. Other directories are scanned recursively
+     * for files more recent than the previous build.</p>
+     *
+     * <p>When a dependency changed, the fingerprint of the API of its root (the JAR file or the directory)
+     * is computed and compared with the fingerprint of the previous build. For JAR files, the API is made of
+     * the public and protected declarations. For directories, which may be the main classes of the module when
+     * compiling the tests, the package-private declarations are also included. If the fingerprints
+     * are equal, then only implementation details changed and there is no need to recompile. If the fingerprint
+     * of the previous build is unknown, a rebuild is requested. The fingerprints are computed only for the
+     * dependencies that changed, for avoiding to read all dependencies.</p>
+     *
+     * @param dependencies files or directories to check, grouped by path type
+     * @param fileExtensions extensions of the file to check (usually "jar" and "class")
      * @return {@code null} if the project does not need to be rebuilt, otherwise a message saying why to rebuild
      * @throws IOException if an error occurred while scanning the directories
      *
      * @see Aspect#DEPENDENCIES
      */
     String dependencyChanges(Iterable<List<Path>> dependencies, Collection<String> fileExtensions) throws IOException {
+        String cause = null;
         if (!cacheLoaded) {
-            loadCache();
+            try {
+                loadCache();
+            } catch (NoSuchFileException e) {
+                cause = "Compiling all files.";
+            } catch (IOException e) {
+                cause = causeOfRebuild("information about the previous build cannot be read", true)
+                        .append(System.lineSeparator())
+                        .append(e)
+                        .toString();
+            }
         }
+        /*
+         * The format of the previous releases did not record the dependencies. In that case, the dependencies
+         * missing from the previous build are not considered as added, but are checked by modification time.
+         */
+        final boolean migrated = previousBuild != null && previousBuild.migrated;
         final FileTime changeTime = FileTime.fromMillis(previousBuildTime);
-        List<Path> updated = new ArrayList<>();
+        final Predicate<Path> hasExtension = hasExtension(fileExtensions);
+        final var removed = new HashMap<>(previousDependencies);
+        final List<Path> added = new ArrayList<>();
+        final List<Path> updated = new ArrayList<>();
+        final List<Path> updatedInRoot = new ArrayList<>();
         for (List<Path> roots : dependencies) {
             for (Path root : roots) {
-                try (Stream<Path> files = Files.walk(root)) {
-                    files.filter((f) -> {
-                                String name = f.getFileName().toString();
-                                int s = name.lastIndexOf('.');
-                                if (s < 0 || !fileExtensions.contains(name.substring(s + 1))) {
-                                    return false;
-                                }
-                                try {
-                                    return Files.isRegularFile(f)
-                                            && Files.getLastModifiedTime(f).compareTo(changeTime) >= 0;
-                                } catch (IOException e) {
-                                    throw new UncheckedIOException(e);
-                                }
-                            })
-                            .forEach(updated::add);
-                } catch (UncheckedIOException e) {
-                    throw e.getCause();
+                if (this.dependencies.containsKey(root)) {
+                    continue; // Same dependency declared in more than one kind of path.
+                }
+                final BasicFileAttributes attributes;
+                try {
+                    attributes = Files.readAttributes(root, BasicFileAttributes.class);
+                } catch (NoSuchFileException e) {
+                    continue; // Will be reported as removed if the dependency existed in the previous build.
                 }
+                final DependencyInfo previous = removed.remove(root);
+                DependencyInfo info;
+                if (attributes.isDirectory()) {
+                    final BuildStamp stamp = BuildStamp.read(root);
+                    if (stamp != null) {
+                        /*
+                         * Output directory of another module of the same reactor. The stamp tells us whether
+                         * the classes were recompiled since the previous build, without parsing the class files.
+                         */
+                        if (previous != null && previous.lastModified() == stamp.generation) {
+                            info = previous;
+                        } else {
+                            info = new DependencyInfo(-1, stamp.generation, 0, stamp.fingerprint, true);
+                            if (migrated && previous == null) {
+                                addNewerFiles(root, hasExtension, changeTime, updated);
+                            } else if (previous == null) {
+                                added.add(root);
+                            } else if (!info.hasSameAPI(previous)) {
+                                updated.add(root);
+                            }
+                        }
+                    } else if (previous == null) {
+                        if (migrated) {
+                            addNewerFiles(root, hasExtension, changeTime, updated);
+                        } else {
+                            added.add(root);
+                        }
+                        info = new DependencyInfo(-1, 0, 0, 0, false);
+                    } else {
+                        addNewerFiles(root, hasExtension, changeTime, updatedInRoot);
+                        if (updatedInRoot.isEmpty()) {
+                            info = previous;
+                        } else {
+                            info = new DependencyInfo(-1, 0, 0, ClassScanner.fingerprint(root), true);
+                            if (!info.hasSameAPI(previous)) {
+                                updated.addAll(updatedInRoot);
+                            }
+                            updatedInRoot.clear();
+                        }
+                    }
+                } else {
+                    if (!hasExtension.test(root)) {
+                        continue;
+                    }
+                    final long size = attributes.size();
+                    final long lastModified = attributes.lastModifiedTime().toMillis();
+                    if (previous != null && previous.size() == size && previous.lastModified() == lastModified) {
+                        info = previous;
+                    } else {
+                        final int checksum = centralDirectoryChecksum(root);
+                        if (previous == null) {
+                            if (!migrated) {
+                                added.add(root);
+                            } else if (attributes.lastModifiedTime().compareTo(changeTime) >= 0) {
+                                updated.add(root);
+                            }
+                            info = new DependencyInfo(size, lastModified, checksum, 0, false);
+                        } else if (previous.size() == size && previous.checksum() == checksum) {
+                            info = new DependencyInfo(
+                                    size, lastModified, checksum, previous.fingerprint(), previous.hasFingerprint());
+                        } else {
+                            info = new DependencyInfo(
+                                    size, lastModified, checksum, ClassScanner.fingerprint(root), true);
+                            if (!info.hasSameAPI(previous)) {
+                                updated.add(root);
+                            }
+                        }
+                    }
+                }
+                this.dependencies.put(root, info);
             }
         }
+        if (cause != null) {
+            return cause;
+        }
+        if (!(added.isEmpty() && removed.isEmpty())) {
+            StringBuilder causeOfRebuild = causeOfRebuild("of added or removed dependencies", showCompilationChanges);
+            if (showCompilationChanges) {
+                for (Path file : added) {
+                    causeOfRebuild.append(System.lineSeparator()).append("  + ").append(file);
+                }
+                for (Path file : removed.keySet()) {
+                    causeOfRebuild.append(System.lineSeparator()).append("  - ").append(file);
+                }
+            }
+            return causeOfRebuild.toString();
+        }
         if (updated.isEmpty()) {
             return null;
         }
@@ -607,20 +1114,141 @@ final class IncrementalBuild {
     }
 
     /**
-     * Returns whether the compilar options have changed.
-     * This method should be invoked only after {@link #inputFileTreeChanges} returned {@code null}.
+     * {@return a filter accepting the files having one of the given extensions}.
+     *
+     * @param fileExtensions the extensions without leading dot (e.g. "jar" or "class")
+     */
+    private static Predicate<Path> hasExtension(final Collection<String> fileExtensions) {
+        return (f) -> {
+            String name = f.getFileName().toString();
+            int s = name.lastIndexOf('.');
+            return s >= 0 && fileExtensions.contains(name.substring(s + 1));
+        };
+    }
+
+    /**
+     * Adds to the given list all files in the given directory which have been modified at or after the given time.
+     *
+     * @param root the directory to scan recursively
+     * @param filter the filter of files to check
+     * @param changeTime the time from which to consider a file as modified
+     * @param addTo where to add the modified files
+     * @throws IOException if an error occurred while scanning the directory
+     */
+    private static void addNewerFiles(Path root, Predicate<Path> filter, FileTime changeTime, List<Path> addTo)
+            throws IOException {
+        try (Stream<Path> files = Files.walk(root)) {
+            files.filter((f) -> {
+                        if (!filter.test(f)) {
+                            return false;
+                        }
+                        try {
+                            return Files.isRegularFile(f) && Files.getLastModifiedTime(f).compareTo(changeTime) >= 0;
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    })
+                    .forEach(addTo::add);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Computes a checksum of the central directory of the given ZIP file. The central directory contains
+     * the names, sizes and CRC of all entries, so this checksum changes if the content of any entry changed.
+     * This is much faster than reading the whole file. If the given file is not a ZIP file, or is a ZIP64
+     * file, then this method fallbacks on a checksum of the whole file.
+     *
+     * @param file the JAR file for which to compute a checksum
+     * @return CRC32C checksum of the central directory of the given ZIP file
+     * @throws IOException if an error occurred while reading the file
+     */
+    @SuppressWarnings("checkstyle:MagicNumber")
+    private static int centralDirectoryChecksum(final Path file) throws IOException {
+        final var crc = new CRC32C();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            final int headerSize = 22; // Size of the "end of central directory" record without comment.
+            final int tailLength = (int) Math.min(size, 0xFFFF + headerSize);
+            final ByteBuffer tail = ByteBuffer.allocate(tailLength).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, tail, size - tailLength);
+            for (int i = tailLength - headerSize; i >= 0; i--) {
+                if (tail.getInt(i) == 0x06054b50) { // "End of central directory" signature.
+                    final long length = Integer.toUnsignedLong(tail.getInt(i + 12));
+                    final long offset = Integer.toUnsignedLong(tail.getInt(i + 16));
+                    if (length != 0xFFFFFFFFL && offset != 0xFFFFFFFFL && offset + length <= size) {
+                        final ByteBuffer directory = ByteBuffer.allocate((int) length);
+                        readFully(channel, directory, offset);
+                        crc.update(directory);
+                        return (int) crc.getValue();
+                    }
+                    break;
+                }
+            }
+            final ByteBuffer buffer = ByteBuffer.allocate(8192);
+            long position = 0;
+            int n;
+            while ((n = channel.read(buffer, position)) >= 0) {
+                position += n;
+                buffer.flip();
+                crc.update(buffer);
+                buffer.clear();
+            }
+        }
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Reads bytes from the given channel until the given buffer is full, then flips the buffer.
      *
-     * @param optionsHash hash code value of the {@link Options#options} list
+     * @param channel the channel from which to read bytes
+     * @param buffer the buffer to fill
+     * @param position position of the first byte to read in the channel
+     * @throws IOException if an error occurred while reading, or if the end of file has been reached
+     */
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Unexpected end of file.");
+            }
+        }
+        buffer.flip();
+    }
+
+    /**
+     * Returns whether the compiler options have changed.
+     * This method can be invoked even if a rebuild has already been decided,
+     * in which case it only records the digests of the options for the next build.
+     * Only the options which may affect the compiler output are compared. Changes in options which affect
+     * only the diagnostics, such as {@code -Xlint} or {@code -verbose}, do not cause a recompilation.
+     * The digests of the given options are saved by the next call to {@link #writeCache(boolean)}.
+     * If the previous build was recorded by a previous release of this plugin, the hash code
+     * of the options list is compared instead, as that release did.
+     *
+     * @param options the compiler options of this build
      * @return {@code null} if the project does not need to be rebuilt, otherwise a message saying why to rebuild
-     * @throws IOException if an error occurred while loading the cache file
      *
      * @see Aspect#OPTIONS
      */
-    String optionChanges(int optionsHash) throws IOException {
+    String optionChanges(final Options options) {
+        optionsDigest = options.outputDigest();
+        diagnosticsDigest = options.diagnosticsDigest();
         if (!cacheLoaded) {
-            loadCache();
+            try {
+                loadCache();
+            } catch (NoSuchFileException e) {
+                return "Compiling all files.";
+            } catch (IOException e) {
+                return causeOfRebuild("information about the previous build cannot be read", true)
+                        .append(System.lineSeparator())
+                        .append(e)
+                        .toString();
+            }
         }
-        if (optionsHash == previousOptionsHash) {
+        if (previousBuild != null && previousBuild.migrated
+                ? options.options.hashCode() == previousOptionsDigest
+                : optionsDigest == previousOptionsDigest) {
             return null;
         }
         return causeOfRebuild("of changes in compiler options", false).toString();
@@ -641,10 +1269,74 @@ final class IncrementalBuild {
                 .append(colon ? ':' : '.');
     }
 
+    /**
+     * Returns the modification time of the oldest output file of the given source, or {@code null} if an output
+     * file does not exist. If the output files are unknown, they are inferred by heuristic rules. If the source
+     * file is known to produce no output (e.g. {@code package-info.java}), the maximal time is returned.
+     *
+     * @param source the source file for which to get the modification time of the output files
+     * @return modification time of the oldest output file, or {@code null} if an output file is missing
+     * @throws IOException if an error occurred while reading the time stamp of an output file
+     */
+    private FileTime oldestOutput(final SourceFile source) throws IOException {
+        List<Path> outputs = source.getOutputFiles();
+        if (outputs == null) {
+            outputs = List.of(source.getOutputFile());
+        }
+        FileTime oldest = FileTime.fromMillis(Long.MAX_VALUE);
+        for (Path output : outputs) {
+            final FileTime t = lastModified(output);
+            if (t == null) {
+                return null;
+            }
+            if (t.compareTo(oldest) < 0) {
+                oldest = t;
+            }
+        }
+        return oldest;
+    }
+
+    /**
+     * Returns the modification time of the given output file, or {@code null} if the file does not exist.
+     * This method lists the parent directory when first needed, then answers from that snapshot.
+     * Links are followed.
+     *
+     * @param file the output file for which to get the modification time
+     * @return modification time of the given file, or {@code null} if the file does not exist
+     * @throws IOException if an error occurred while listing the parent directory
+     */
+    private FileTime lastModified(final Path file) throws IOException {
+        final Path directory = file.getParent();
+        Map<String, FileTime> snapshot = outputSnapshots.get(directory);
+        if (snapshot == null) {
+            final var times = new HashMap<String, FileTime>();
+            try {
+                Files.walkFileTree(directory, EnumSet.of(FileVisitOption.FOLLOW_LINKS), 1, new SimpleFileVisitor<>() {
+                    @Override
+                    public FileVisitResult visitFile(Path entry, BasicFileAttributes attributes) {
+                        if (attributes.isRegularFile()) {
+                            times.put(entry.getFileName().toString(), attributes.lastModifiedTime());
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            } catch (NoSuchFileException e) {
+                // The directory does not exist, so no output file exists.
+            }
+            snapshot = times;
+            outputSnapshots.put(directory, snapshot);
+        }
+        return snapshot.get(file.getFileName().toString());
+    }
+
     /**
      * Compares the modification time of all source files with the modification time of output files.
      * The files identified as in need to be recompiled have their {@link SourceFile#isNewOrModified}
-     * flag set to {@code true}. This method does not use the cache file.
+     * flag set to {@code true}. This method does not use the cache file, except for comparing checksums
+     * if the cache has already been loaded by {@link #inputFileTreeChanges(long, boolean)}. In the latter
+     * case, the output files recorded by the previous build are checked instead of the files inferred by
+     * heuristic rules, and a source file which is more recent than its output files but which has the same
+     * content as during the previous build is not considered as modified.
      *
      * @param staleMillis the granularity in milliseconds to use for comparing modification times
      * @param rebuildOnAdd whether to recompile all source files if a file addition is detected
@@ -657,12 +1349,21 @@ final class IncrementalBuild {
         for (SourceFile source : sourceFiles) {
             if (!source.isNewOrModified) {
                 // Check even if `source.ignoreModification` is true.
-                Path output = source.getOutputFile(true);
-                if (Files.exists(output, LINK_OPTIONS)) {
-                    FileTime t = Files.getLastModifiedTime(output, LINK_OPTIONS);
+                SourceInfo previous = null;
+                if (previousBuild != null) {
+                    previous = previousBuild.get(source.file);
+                    if (previous != null && source.getOutputFiles() == null) {
+                        source.setOutputFiles(previous.outputFiles());
+                    }
+                }
+                FileTime t = oldestOutput(source);
+                if (t != null) {
                     if (source.lastModified - t.toMillis() <= staleMillis) {
                         continue;
                     }
+                    if (previous != null && previous.isUnchanged(source, staleMillis)) {
+                        continue;
+                    }
                 } else if (rebuildOnAdd) {
                     StringBuilder causeOfRebuild = causeOfRebuild("of added source files", showCompilationChanges);
                     if (showCompilationChanges) {
@@ -0,0 +1,693 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugin.compiler;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import org.apache.maven.plugin.compiler.IncrementalBuild.DependencyInfo;
+import org.apache.maven.plugin.compiler.IncrementalBuild.SourceInfo;
+
+/**
+ * Information about the previous build, stored in a binary file.
+ * The file contains the list of source files with their last modification times and checksums,
+ * information about the dependencies and a hash code of the compiler options.
+ * The file format is designed for making a build without changes as cheap as possible:
+ * the file is memory-mapped and the source files are looked up by binary search,
+ * without deserializing all entries.
+ *
+ * <h2>File format</h2>
+ * The format may change in any future version. The current format is as below.
+ * All integers are in big-endian byte order.
+ *
+ * <ul>
+ *   <li>The magic number (which change when the format changes), as a <var>long</var>.</li>
+ *   <li>The build time in milliseconds since January 1st, 1970, as a <var>long</var>.</li>
+ *   <li>Digest of the compiler options which may affect the output, as a <var>long</var>.</li>
+ *   <li>Digest of the compiler options which affect only the diagnostics, as a <var>long</var>.</li>
+ *   <li>Digest of the inputs of the dependency resolution, or 0 if unknown, as a <var>long</var>.</li>
+ *   <li>The string table:<ul>
+ *     <li>Number <var>n</var> of strings, as an <var>int</var>.</li>
+ *     <li><var>n</var>+1 offsets in the UTF-8 bytes, as <var>int</var>. String <var>i</var> is
+ *         between offsets <var>i</var> inclusive and <var>i</var>+1 exclusive.</li>
+ *     <li>The UTF-8 bytes of all strings.</li>
+ *   </ul></li>
+ *   <li>Number of dependencies, as an <var>int</var>.</li>
+ *   <li>For each dependency, a record of {@value #DEPENDENCY_SIZE} bytes containing:<ul>
+ *     <li>Index of the path to the JAR file or directory in the string table (<var>int</var>).</li>
+ *     <li>Size of the JAR file in bytes, or -1 for a directory (<var>long</var>).</li>
+ *     <li>Last modification time of the JAR file, or 0 for a directory (<var>long</var>).</li>
+ *     <li>CRC32C checksum of the central directory of the JAR file, or 0 for a directory (<var>int</var>).</li>
+ *     <li>Fingerprint of the <abbr>ABI</abbr> (<var>long</var>).</li>
+ *     <li>1 if the fingerprint of the <abbr>ABI</abbr> is known, or 0 otherwise (<var>int</var>).</li>
+ *   </ul></li>
+ *   <li>The table of output files:<ul>
+ *     <li>Number <var>m</var> of lists of output files, as an <var>int</var>.</li>
+ *     <li><var>m</var>+1 offsets in the array of output files, as <var>int</var>. List <var>i</var> is
+ *         between offsets <var>i</var> inclusive and <var>i</var>+1 exclusive.</li>
+ *     <li>The indexes of the paths to the output files in the string table, as <var>int</var>.</li>
+ *   </ul></li>
+ *   <li>Number of source files, as an <var>int</var>.</li>
+ *   <li>For each source file, a record of {@value #RECORD_SIZE} bytes sorted by directory, then by file name.
+ *       The order is the lexicographic order of the UTF-8 bytes. Each record contains:<ul>
+ *     <li>Index of the parent directory in the string table (<var>int</var>).</li>
+ *     <li>Index of the file name in the string table (<var>int</var>).</li>
+ *     <li>Index of the root directory of source files in the string table (<var>int</var>).</li>
+ *     <li>Index of the root directory of output files in the string table (<var>int</var>).</li>
+ *     <li>Index of the list of output files in the table of output files, or {@value #INFERRED} if the output
+ *         files are unknown and should be inferred by {@linkplain SourceInfo#toOutputFile heuristic rules}
+ *         (<var>int</var>).</li>
+ *     <li>Last modification time of the source file, in milliseconds since January 1st, 1970 (<var>long</var>).</li>
+ *     <li>CRC32C checksum of the source file content (<var>int</var>).</li>
+ *   </ul></li>
+ * </ul>
+ *
+ * Directory and file names are stored separately in the string table for sharing the directories
+ * between many files. It reduces the file size and the number of bytes to compare during lookups.
+ * Paths are stored relative to well-known directories such as the project base directory,
+ * as described in {@link RelocatablePaths}.
+ *
+ * <h2>Migration</h2>
+ * Files in the format written by the previous releases of this plugin are still readable.
+ * They are converted to the current format in memory when read. That format contains only the source files
+ * with their modification times and a hash code of the compiler options, without checksums or dependencies.
+ * See {@link #migrated} for how the missing information is handled. Files in any other format are rejected,
+ * which causes a full rebuild.
+ */
+final class IncrementalBuildCache {
+    /**
+     * Magic number, generated randomly, to store in the header of the binary file.
+     * This number shall be changed every times that the binary file format is modified.
+     */
+    private static final long MAGIC_NUMBER = 1083887125409774845L;
+
+    /**
+     * Magic number of the format written by the previous releases of this plugin.
+     * Files in that format are converted when read.
+     */
+    private static final long RELEASED_MAGIC_NUMBER = -8163803035240576921L;
+
+    /**
+     * Flags in the released format telling whether the source and/or target directory changed.
+     */
+    private static final byte NEW_SOURCE_DIRECTORY = 1, NEW_TARGET_DIRECTORY = 2;
+
+    /**
+     * Flag in the released format telling that the output file of a source is different
+     * than the one inferred by heuristic rules.
+     */
+    private static final byte EXPLICIT_OUTPUT_FILE = 4;
+
+    /**
+     * Number of bytes in the record of a source file.
+     */
+    private static final int RECORD_SIZE = 5 * Integer.BYTES + Long.BYTES + Integer.BYTES;
+
+    /**
+     * Number of bytes in the record of a dependency.
+     */
+    private static final int DEPENDENCY_SIZE = 3 * Integer.BYTES + 3 * Long.BYTES;
+
+    /**
+     * Value of the output files index meaning that the output files are unknown and should be inferred.
+     */
+    private static final int INFERRED = -1;
+
+    /**
+     * The build time in milliseconds since January 1st, 1970.
+     */
+    final long buildTime;
+
+    /**
+     * Digest of the compiler options which may affect the output.
+     * If this cache has been {@linkplain #migrated}, this is the hash code of the {@link Options#options} list.
+     *
+     * @see Options#outputDigest()
+     */
+    final long optionsDigest;
+
+    /**
+     * Digest of the compiler options which affect only the diagnostics.
+     *
+     * @see Options#diagnosticsDigest()
+     */
+    final long diagnosticsDigest;
+
+    /**
+     * Digest of the inputs of the dependency resolution, or 0 if unknown.
+     */
+    final long resolutionDigest;
+
+    /**
+     * Information about the dependencies, including <abbr>ABI</abbr> fingerprints.
+     * Keys are JAR files or directories.
+     */
+    final Map<Path, DependencyInfo> dependencies;
+
+    /**
+     * Whether this cache has been converted from the format written by the previous releases of this plugin.
+     * In such case, the {@linkplain #optionsDigest options digest} is a hash code computed in a different way,
+     * the checksums of source files are {@linkplain SourceFile#UNKNOWN_CHECKSUM unknown} and the dependencies
+     * are not recorded. The latter need to be checked by their modification times, as the previous releases did.
+     */
+    final boolean migrated;
+
+    /**
+     * The content of the file. Usually a memory-mapped buffer.
+     */
+    private final ByteBuffer buffer;
+
+    /**
+     * Number of strings in the string table.
+     */
+    private final int stringCount;
+
+    /**
+     * Position in the buffer of the offsets of the strings in the string table.
+     */
+    private final int stringOffsets;
+
+    /**
+     * Position in the buffer of the UTF-8 bytes of the strings in the string table.
+     */
+    private final int stringBytes;
+
+    /**
+     * Number of lists in the table of output files.
+     */
+    private final int outputCount;
+
+    /**
+     * Position in the buffer of the offsets of the lists in the table of output files.
+     */
+    private final int outputOffsets;
+
+    /**
+     * Position in the buffer of the string indexes of the output files.
+     */
+    private final int outputIndexes;
+
+    /**
+     * Number of source file records.
+     */
+    private final int recordCount;
+
+    /**
+     * Position in the buffer of the first source file record.
+     */
+    private final int records;
+
+    /**
+     * Converter of paths from their string representation, which may be relative to well-known directories.
+     */
+    private final RelocatablePaths paths;
+
+    /**
+     * Root directories already converted to {@link Path} objects, indexed by string index.
+     * Used for sharing the same instances between all files having the same root.
+     */
+    private final Map<Integer, Path> roots;
+
+    /**
+     * Parses the header of the given buffer.
+     *
+     * @param buffer the file content, with the position after the magic number
+     * @param paths converter of paths from their string representation
+     * @param migrated whether the content has been converted from the format of the previous releases
+     * @throws IOException if the content is invalid
+     */
+    private IncrementalBuildCache(final ByteBuffer buffer, final RelocatablePaths paths, final boolean migrated)
+            throws IOException {
+        this.buffer = buffer;
+        this.paths = paths;
+        this.migrated = migrated;
+        try {
+            buildTime = buffer.getLong();
+            optionsDigest = buffer.getLong();
+            diagnosticsDigest = buffer.getLong();
+            resolutionDigest = buffer.getLong();
+            stringCount = buffer.getInt();
+            stringOffsets = buffer.position();
+            stringBytes = stringOffsets + (stringCount + 1) * Integer.BYTES;
+            buffer.position(stringBytes + buffer.getInt(stringBytes - Integer.BYTES));
+            int count = buffer.getInt();
+            dependencies = new HashMap<>(count + count / 3);
+            while (--count >= 0) {
+                Path path = paths.decode(string(buffer.getInt()));
+                dependencies.put(
+                        path,
+                        new DependencyInfo(
+                                buffer.getLong(),
+                                buffer.getLong(),
+                                buffer.getInt(),
+                                buffer.getLong(),
+                                buffer.getInt() != 0));
+            }
+            outputCount = buffer.getInt();
+            outputOffsets = buffer.position();
+            outputIndexes = outputOffsets + (outputCount + 1) * Integer.BYTES;
+            buffer.position(outputIndexes + buffer.getInt(outputIndexes - Integer.BYTES) * Integer.BYTES);
+            recordCount = buffer.getInt();
+            records = buffer.position();
+            if (records + recordCount * (long) RECORD_SIZE != buffer.limit()) {
+                throw new IOException("Invalid cache file.");
+            }
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new IOException("Invalid cache file.", e);
+        }
+        roots = new HashMap<>();
+    }
+
+    /**
+     * Reads the cache file. The file is memory-mapped, except on Windows where a memory-mapped
+     * file could not be replaced by {@link #write write(…)} before the buffer is garbage-collected.
+     * Files in the format of the previous releases are converted in memory.
+     *
+     * @param file the file to read
+     * @param paths converter of paths from their string representation
+     * @return information about the previous build
+     * @throws IOException if the file cannot be read or is invalid
+     */
+    static IncrementalBuildCache read(final Path file, final RelocatablePaths paths) throws IOException {
+        final ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Invalid cache file.");
+            }
+            if (File.separatorChar == '\\') {
+                buffer = ByteBuffer.allocate((int) size);
+                while (buffer.hasRemaining() && channel.read(buffer) >= 0) {}
+                buffer.flip();
+            } else {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+        }
+        if (buffer.remaining() < Long.BYTES) {
+            throw new IOException("Invalid cache file.");
+        }
+        final long magic = buffer.getLong();
+        if (magic == MAGIC_NUMBER) {
+            return new IncrementalBuildCache(buffer, paths, false);
+        }
+        if (magic == RELEASED_MAGIC_NUMBER) {
+            return migrate(buffer, paths);
+        }
+        throw new IOException("Invalid cache file.");
+    }
+
+    /**
+     * Saves information about the current build in the given file. The file is written in a temporary
+     * file first, then moved atomically to the destination. This is needed because the previous file may
+     * still be memory-mapped.
+     *
+     * @param file the file to write
+     * @param paths converter of paths to their string representation
+     * @param buildTime the build time in milliseconds since January 1st, 1970
+     * @param optionsDigest digest of the compiler options which may affect the output
+     * @param diagnosticsDigest digest of the compiler options which affect only the diagnostics
+     * @param resolutionDigest digest of the inputs of the dependency resolution, or 0 if unknown
+     * @param dependencies information about the dependencies, including <abbr>ABI</abbr> fingerprints
+     * @param sources the source files to save, or an empty collection if none
+     * @throws IOException if an error occurred while writing the file
+     */
+    static void write(
+            final Path file,
+            final RelocatablePaths paths,
+            final long buildTime,
+            final long optionsDigest,
+            final long diagnosticsDigest,
+            final long resolutionDigest,
+            final Map<Path, DependencyInfo> dependencies,
+            final Collection<SourceFile> sources)
+            throws IOException {
+        final var entries = new LinkedHashMap<Path, SourceInfo>(sources.size() + sources.size() / 3);
+        for (SourceFile source : sources) {
+            final Path srcDir = source.directory.root;
+            final Path tgtDir = source.directory.outputDirectory;
+            final List<Path> outputs = source.getOutputFiles();
+            entries.put(source.file, new SourceInfo(srcDir, tgtDir, outputs, source.lastModified, source.checksum()));
+        }
+        final Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(
+                tmp, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING))) {
+            write(out, paths, buildTime, optionsDigest, diagnosticsDigest, resolutionDigest, dependencies, entries);
+        }
+        try {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Writes the given entries in the format described in the class Javadoc.
+     *
+     * @param target where to write
+     * @param paths converter of paths to their string representation
+     * @param buildTime the build time in milliseconds since January 1st, 1970
+     * @param optionsDigest digest of the compiler options which may affect the output
+     * @param diagnosticsDigest digest of the compiler options which affect only the diagnostics
+     * @param resolutionDigest digest of the inputs of the dependency resolution, or 0 if unknown
+     * @param dependencies information about the dependencies, including <abbr>ABI</abbr> fingerprints
+     * @param sources information about the source files, with the path to the source files as keys
+     * @throws IOException if an error occurred while writing the file
+     */
+    private static void write(
+            final OutputStream target,
+            final RelocatablePaths paths,
+            final long buildTime,
+            final long optionsDigest,
+            final long diagnosticsDigest,
+            final long resolutionDigest,
+            final Map<Path, DependencyInfo> dependencies,
+            final Map<Path, SourceInfo> sources)
+            throws IOException {
+        /*
+         * Build the string table. Each record is represented by an array of string indexes
+         * in the same order as in the file, then the records are sorted by directory and name.
+         */
+        final var strings = new ArrayList<byte[]>();
+        final var indexes = new HashMap<String, Integer>();
+        final var sorted = new int[sources.size()][];
+        final var outputs = new ArrayList<int[]>();
+        int n = 0;
+        for (Map.Entry<Path, SourceInfo> entry : sources.entrySet()) {
+            final Path file = entry.getKey();
+            final SourceInfo info = entry.getValue();
+            final List<Path> outputFiles = info.outputFiles();
+            int outputList = INFERRED;
+            if (outputFiles != null) {
+                final var list = new int[outputFiles.size()];
+                for (int i = 0; i < list.length; i++) {
+                    list[i] = intern(strings, indexes, paths.encode(outputFiles.get(i)));
+                }
+                outputList = outputs.size();
+                outputs.add(list);
+            }
+            sorted[n++] = new int[] {
+                intern(strings, indexes, paths.encode(file.getParent())),
+                intern(strings, indexes, file.getFileName().toString()),
+                intern(strings, indexes, paths.encode(info.sourceDirectory())),
+                intern(strings, indexes, paths.encode(info.outputDirectory())),
+                outputList,
+                n - 1
+            };
+        }
+        final var dependencyPaths = new int[dependencies.size()];
+        n = 0;
+        for (Path dependency : dependencies.keySet()) {
+            dependencyPaths[n++] = intern(strings, indexes, paths.encode(dependency));
+        }
+        Arrays.sort(sorted, (r1, r2) -> {
+            int c = Arrays.compareUnsigned(strings.get(r1[0]), strings.get(r2[0]));
+            return (c != 0) ? c : Arrays.compareUnsigned(strings.get(r1[1]), strings.get(r2[1]));
+        });
+        /*
+         * Write the file.
+         */
+        final SourceInfo[] infos = sources.values().toArray(SourceInfo[]::new);
+        final var out = new DataOutputStream(target);
+        out.writeLong(MAGIC_NUMBER);
+        out.writeLong(buildTime);
+        out.writeLong(optionsDigest);
+        out.writeLong(diagnosticsDigest);
+        out.writeLong(resolutionDigest);
+        out.writeInt(strings.size());
+        int offset = 0;
+        out.writeInt(offset);
+        for (byte[] bytes : strings) {
+            out.writeInt(offset += bytes.length);
+        }
+        for (byte[] bytes : strings) {
+            out.write(bytes);
+        }
+        out.writeInt(dependencyPaths.length);
+        n = 0;
+        for (DependencyInfo info : dependencies.values()) {
+            out.writeInt(dependencyPaths[n++]);
+            out.writeLong(info.size());
+            out.writeLong(info.lastModified());
+            out.writeInt(info.checksum());
+            out.writeLong(info.fingerprint());
+            out.writeInt(info.hasFingerprint() ? 1 : 0);
+        }
+        out.writeInt(outputs.size());
+        offset = 0;
+        out.writeInt(offset);
+        for (int[] list : outputs) {
+            out.writeInt(offset += list.length);
+        }
+        for (int[] list : outputs) {
+            for (int index : list) {
+                out.writeInt(index);
+            }
+        }
+        out.writeInt(sorted.length);
+        for (int[] record : sorted) {
+            final SourceInfo info = infos[record[5]];
+            for (int i = 0; i < 5; i++) {
+                out.writeInt(record[i]);
+            }
+            out.writeLong(info.lastModified());
+            out.writeInt((int) info.checksum());
+        }
+        out.flush();
+    }
+
+    /**
+     * Returns the index of the given string in the string table, adding the string if needed.
+     */
+    private static int intern(final List<byte[]> strings, final Map<String, Integer> indexes, final String value) {
+        return indexes.computeIfAbsent(value, (s) -> {
+            strings.add(s.getBytes(StandardCharsets.UTF_8));
+            return strings.size() - 1;
+        });
+    }
+
+    /**
+     * Reads a file in the format of the previous releases and converts it to the current format.
+     * That format was, after the magic number: the build time, the hash code of the compiler options
+     * as an <var>int</var>, the number of source files, then for each source file a bit mask of flags,
+     * the new source directory, target directory and output file if the corresponding flags are set,
+     * the path relative to the parent of the previous file and the last modification time.
+     * All paths are absolute and written by {@link DataOutputStream#writeUTF(String)}.
+     *
+     * @param buffer the file content, with the position after the magic number
+     * @param paths converter of paths to and from their string representation
+     * @return information about the previous build
+     * @throws IOException if the content is invalid
+     */
+    @SuppressWarnings("checkstyle:NeedBraces")
+    private static IncrementalBuildCache migrate(final ByteBuffer buffer, final RelocatablePaths paths)
+            throws IOException {
+        final byte[] content = new byte[buffer.remaining()];
+        buffer.get(content);
+        final long buildTime;
+        final int optionsHash;
+        final var sources = new LinkedHashMap<Path, SourceInfo>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new ByteArrayInputStream(content)))) {
+            buildTime = in.readLong();
+            optionsHash = in.readInt();
+            int remaining = in.readInt();
+            Path srcDir = null;
+            Path tgtDir = null;
+            Path srcFile = null;
+            while (--remaining >= 0) {
+                final byte flags = in.readByte();
+                if ((flags & ~(NEW_SOURCE_DIRECTORY | NEW_TARGET_DIRECTORY | EXPLICIT_OUTPUT_FILE)) != 0) {
+                    throw new IOException("Invalid cache file.");
+                }
+                boolean newSrcDir = (flags & NEW_SOURCE_DIRECTORY) != 0;
+                boolean newTgtDir = (flags & NEW_TARGET_DIRECTORY) != 0;
+                boolean newOutput = (flags & EXPLICIT_OUTPUT_FILE) != 0;
+                Path output = null;
+                if (newSrcDir) srcDir = Path.of(in.readUTF());
+                if (newTgtDir) tgtDir = Path.of(in.readUTF());
+                if (newOutput) output = Path.of(in.readUTF());
+                if (srcDir == null || tgtDir == null || (srcFile == null && !newSrcDir)) {
+                    throw new IOException("Invalid cache file.");
+                }
+                String path = in.readUTF();
+                srcFile = newSrcDir ? srcDir.resolve(path) : srcFile.resolveSibling(path);
+                srcFile = srcFile.normalize();
+                List<Path> outputs = (output != null) ? List.of(output) : null;
+                var info = new SourceInfo(srcDir, tgtDir, outputs, in.readLong(), 0);
+                if (sources.put(srcFile, info) != null) {
+                    throw new IOException("Duplicated source file declared in the cache: " + srcFile);
+                }
+            }
+            if (in.read() >= 0) {
+                throw new IOException("Invalid cache file.");
+            }
+        } catch (InvalidPathException e) {
+            throw new IOException("Invalid cache file.", e);
+        }
+        final var out = new ByteArrayOutputStream(content.length);
+        write(out, paths, buildTime, optionsHash, 0, 0, Map.of(), sources);
+        final ByteBuffer converted = ByteBuffer.wrap(out.toByteArray());
+        converted.position(Long.BYTES);
+        return new IncrementalBuildCache(converted, paths, true);
+    }
+
+    /**
+     * {@return the string at the given index in the string table}.
+     */
+    private String string(final int index) {
+        Objects.checkIndex(index, stringCount);
+        final int start = buffer.getInt(stringOffsets + index * Integer.BYTES);
+        final int end = buffer.getInt(stringOffsets + (index + 1) * Integer.BYTES);
+        final var bytes = new byte[end - start];
+        buffer.get(stringBytes + start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Compares the string at the given index in the string table with the given UTF-8 bytes.
+     * The comparison is done directly on the buffer, without creating a {@link String}.
+     */
+    private int compare(final int index, final byte[] key) {
+        final int start = stringBytes + buffer.getInt(stringOffsets + index * Integer.BYTES);
+        final int end = stringBytes + buffer.getInt(stringOffsets + (index + 1) * Integer.BYTES);
+        final int length = Math.min(end - start, key.length);
+        for (int i = 0; i < length; i++) {
+            int c = Byte.compareUnsigned(buffer.get(start + i), key[i]);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return Integer.compare(end - start, key.length);
+    }
+
+    /**
+     * Returns the root directory at the given index in the string table.
+     */
+    private Path root(final int index) {
+        return roots.computeIfAbsent(index, (i) -> paths.decode(string(i)));
+    }
+
+    /**
+     * Returns the information stored in the record at the given position.
+     */
+    private SourceInfo info(final int position) {
+        final int output = buffer.getInt(position + 4 * Integer.BYTES);
+        List<Path> outputFiles = null;
+        if (output != INFERRED) {
+            Objects.checkIndex(output, outputCount);
+            final int start = buffer.getInt(outputOffsets + output * Integer.BYTES);
+            final int end = buffer.getInt(outputOffsets + (output + 1) * Integer.BYTES);
+            final var files = new Path[end - start];
+            for (int i = 0; i < files.length; i++) {
+                files[i] = paths.decode(string(buffer.getInt(outputIndexes + (start + i) * Integer.BYTES)));
+            }
+            outputFiles = List.of(files);
+        }
+        return new SourceInfo(
+                root(buffer.getInt(position + 2 * Integer.BYTES)),
+                root(buffer.getInt(position + 3 * Integer.BYTES)),
+                outputFiles,
+                buffer.getLong(position + 5 * Integer.BYTES),
+                migrated
+                        ? SourceFile.UNKNOWN_CHECKSUM
+                        : Integer.toUnsignedLong(buffer.getInt(position + 5 * Integer.BYTES + Long.BYTES)));
+    }
+
+    /**
+     * {@return the number of source files in the previous build}.
+     */
+    int size() {
+        return recordCount;
+    }
+
+    /**
+     * Returns information about the given source file during the previous build.
+     * This method performs a binary search in the records.
+     *
+     * @param file the source file to look up
+     * @return information about the source file, or {@code null} if the file was not in the previous build
+     */
+    SourceInfo get(final Path file) {
+        final Path parent = file.getParent();
+        if (parent == null || recordCount == 0) {
+            return null;
+        }
+        final byte[] directory = paths.encode(parent).getBytes(StandardCharsets.UTF_8);
+        final byte[] filename = file.getFileName().toString().getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = recordCount - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            final int position = records + mid * RECORD_SIZE;
+            int c = compare(buffer.getInt(position), directory);
+            if (c == 0) {
+                c = compare(buffer.getInt(position + Integer.BYTES), filename);
+            }
+            if (c < 0) {
+                low = mid + 1;
+            } else if (c > 0) {
+                high = mid - 1;
+            } else {
+                return info(position);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns all source files of the previous build. This method deserializes all records,
+     * so it should be invoked only when needed (e.g., for finding the files that were removed).
+     *
+     * @return information about all source files, with the path to the source files as keys
+     */
+    Map<Path, SourceInfo> toMap() {
+        final var map = new HashMap<Path, SourceInfo>(recordCount + recordCount / 3);
+        final var directories = new HashMap<Integer, Path>();
+        for (int i = 0; i < recordCount; i++) {
+            final int position = records + i * RECORD_SIZE;
+            Path directory = directories.computeIfAbsent(buffer.getInt(position), (d) -> paths.decode(string(d)));
+            map.put(directory.resolve(string(buffer.getInt(position + Integer.BYTES))), info(position));
+        }
+        return map;
+    }
+}
@@ -0,0 +1,450 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugin.compiler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.maven.api.Event;
+import org.apache.maven.api.EventType;
+import org.apache.maven.api.Listener;
+import org.apache.maven.api.Session;
+import org.apache.maven.api.SessionData;
+
+/**
+ * The JAR files of dependencies opened during a Maven session, together with the index of their entries.
+ * The same JAR files are typically on the class-path of many modules, and on both the main and test
+ * class-paths. Opening a JAR file reads its central directory, which is done only once per session
+ * with this cache. The index allows to list the content of a package without scanning all entries.
+ *
+ * <p>This class is thread-safe. Archives are loaded under a lock selected from a fixed set of locks
+ * according to the hash code of the path, so that threads loading different JAR files rarely wait for
+ * each other. A loaded archive is replaced if the JAR file has been modified since it has been opened.
+ * The users of an archive hold a lease on it, which is counted. A replaced archive is closed when its
+ * last lease is released. All other archives are closed when the session ends.</p>
+ */
+final class JarArchives implements Listener {
+    /**
+     * The key of the cache in the session data.
+     */
+    private static final SessionData.Key<JarArchives> KEY = SessionData.key(JarArchives.class);
+
+    /**
+     * Number of locks for loading the archives. Must be a power of 2.
+     */
+    private static final int STRIPES = 64;
+
+    /**
+     * Prefix of the entries of multi-release JAR files which are specific to a Java release.
+     */
+    private static final String VERSIONS = "META-INF/versions/";
+
+    /**
+     * The archives opened in this session, indexed by the paths of the JAR files.
+     */
+    private final Map<Path, Archive> archives;
+
+    /**
+     * The locks to hold while loading an archive. The lock is selected from the hash code of the path.
+     */
+    private final ReentrantLock[] locks;
+
+    /**
+     * The archives which have been replaced because the JAR file has been modified, but which are still
+     * leased by a compilation. They are removed from this set and closed when their last lease is released.
+     */
+    private final Set<Archive> replaced;
+
+    /**
+     * The threads loading the archives in background, or {@code null} if the session ended.
+     */
+    private ExecutorService prefetcher;
+
+    /**
+     * Creates an empty cache.
+     *
+     * @param threads maximal number of background threads for loading the archives
+     */
+    private JarArchives(final int threads) {
+        archives = new ConcurrentHashMap<>();
+        locks = new ReentrantLock[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        replaced = new HashSet<>();
+        final var count = new AtomicInteger();
+        prefetcher = Executors.newFixedThreadPool(threads, (task) -> {
+            var thread = new Thread(task, "compiler-jar-prefetch-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * {@return the cache for the given session}.
+     * The cache is created when first needed.
+     *
+     * @param session the current Maven session
+     */
+    static JarArchives forSession(final Session session) {
+        return session.getData().computeIfAbsent(KEY, () -> {
+            var cache = new JarArchives(Math.min(4, Runtime.getRuntime().availableProcessors()));
+            session.registerListener(cache);
+            return cache;
+        });
+    }
+
+    /**
+     * Starts loading the given JAR files in background threads.
+     * This method returns immediately. Errors are ignored, as they will be reported
+     * when the compiler will use the JAR file. Files which are not JAR files are ignored.
+     *
+     * @param files the JAR files that a compilation will need
+     */
+    void prefetch(final Collection<Path> files) {
+        for (Path file : files) {
+            if (!archives.containsKey(file) && Files.isRegularFile(file)) {
+                try {
+                    synchronized (this) {
+                        if (prefetcher == null) {
+                            return;
+                        }
+                        prefetcher.execute(() -> {
+                            try {
+                                load(file);
+                            } catch (IOException e) {
+                                // Ignore, the error will be reported by the compiler.
+                            }
+                        });
+                    }
+                } catch (RejectedExecutionException e) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * {@return the archive for the given JAR file, with a lease on it}.
+     * If the archive is being loaded by another thread, waits for that thread to finish.
+     * The archive stays open at least until the lease is {@linkplain #release released},
+     * even if the JAR file is modified in the meantime.
+     *
+     * @param file path to the JAR file
+     * @throws IOException if the file cannot be read as a ZIP file
+     */
+    Archive acquire(final Path file) throws IOException {
+        while (true) {
+            final Archive archive = load(file);
+            synchronized (archive) {
+                if (!archive.replaced) {
+                    archive.leases++;
+                    return archive;
+                }
+            }
+            // The archive has been replaced by another thread before we got the lease. Try again.
+        }
+    }
+
+    /**
+     * Releases a lease obtained by {@link #acquire(Path)}.
+     * If the archive has been replaced and this was the last lease, the archive is closed.
+     *
+     * @param archive the archive to release
+     */
+    void release(final Archive archive) {
+        synchronized (archive) {
+            if (--archive.leases != 0 || !archive.replaced) {
+                return;
+            }
+        }
+        synchronized (replaced) {
+            replaced.remove(archive);
+        }
+        archive.close();
+    }
+
+    /**
+     * {@return the archive for the given JAR file, loading or reloading it if needed}.
+     * If the archive is being loaded by another thread, waits for that thread to finish.
+     *
+     * @param file path to the JAR file
+     * @throws IOException if the file cannot be read as a ZIP file
+     */
+    private Archive load(final Path file) throws IOException {
+        Archive archive = archives.get(file);
+        if (archive != null && archive.isCurrent()) {
+            return archive;
+        }
+        final ReentrantLock lock = locks[file.hashCode() & (STRIPES - 1)];
+        lock.lock();
+        try {
+            archive = archives.get(file);
+            if (archive == null || !archive.isCurrent()) {
+                Archive previous = archive;
+                archive = new Archive(file);
+                archives.put(file, archive);
+                if (previous != null) {
+                    retire(previous);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        return archive;
+    }
+
+    /**
+     * Marks the given archive as replaced, and closes it if no compilation holds a lease on it.
+     * Otherwise, the archive will be closed when its last lease is released.
+     *
+     * @param archive the archive which has been replaced by a more recent one
+     */
+    private void retire(final Archive archive) {
+        synchronized (archive) {
+            archive.replaced = true;
+            if (archive.leases != 0) {
+                synchronized (replaced) {
+                    replaced.add(archive);
+                }
+                return;
+            }
+        }
+        archive.close();
+    }
+
+    /**
+     * Closes all archives when the session ends.
+     *
+     * @param event the event notified by Maven
+     */
+    @Override
+    public void onEvent(final Event event) {
+        if (event.getType() != EventType.SESSION_ENDED) {
+            return;
+        }
+        event.getSession().unregisterListener(this);
+        synchronized (this) {
+            if (prefetcher != null) {
+                prefetcher.shutdownNow();
+                prefetcher = null;
+            }
+        }
+        final var all = new ArrayList<Archive>(archives.values());
+        archives.clear();
+        synchronized (replaced) {
+            all.addAll(replaced);
+            replaced.clear();
+        }
+        for (Archive archive : all) {
+            archive.close();
+        }
+    }
+
+    /**
+     * An entry of a JAR file in the index of an archive.
+     *
+     * @param name the simple name of the file, without the package directories
+     * @param version the Java release of a multi-release JAR entry, or 0 for the base entries
+     * @param entry the entry in the ZIP file
+     */
+    record Entry(String name, int version, ZipEntry entry) {}
+
+    /**
+     * An opened JAR file together with the index of its entries by package.
+     */
+    static final class Archive {
+        /**
+         * Path to the JAR file.
+         */
+        final Path file;
+
+        /**
+         * The opened JAR file. Can be read concurrently by many threads.
+         */
+        final ZipFile zip;
+
+        /**
+         * Whether the manifest declares a multi-release JAR file.
+         */
+        final boolean multiRelease;
+
+        /**
+         * The entries of the JAR file indexed by package directory, with {@code '/'} separators.
+         * The entries at the root of the JAR file are associated to the empty string.
+         */
+        private final Map<String, List<Entry>> packages;
+
+        /**
+         * Size of the file when it has been opened.
+         */
+        private final long size;
+
+        /**
+         * Modification time of the file when it has been opened, in milliseconds.
+         */
+        private final long lastModified;
+
+        /**
+         * Number of leases held on this archive. Guarded by the monitor of this archive.
+         */
+        private int leases;
+
+        /**
+         * Whether this archive has been replaced because the JAR file has been modified.
+         * Guarded by the monitor of this archive.
+         */
+        private boolean replaced;
+
+        /**
+         * Opens and indexes the given JAR file.
+         *
+         * @param file path to the JAR file
+         * @throws IOException if the file cannot be read as a ZIP file
+         */
+        Archive(final Path file) throws IOException {
+            this.file = file;
+            final BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            size = attributes.size();
+            lastModified = attributes.lastModifiedTime().toMillis();
+            zip = new ZipFile(file.toFile());
+            try {
+                multiRelease = isMultiRelease(zip);
+                packages = new HashMap<>();
+                Enumeration<? extends ZipEntry> entries = zip.entries();
+                while (entries.hasMoreElements()) {
+                    final ZipEntry entry = entries.nextElement();
+                    if (entry.isDirectory()) {
+                        continue;
+                    }
+                    String name = entry.getName();
+                    int version = 0;
+                    if (multiRelease && name.startsWith(VERSIONS)) {
+                        int s = name.indexOf('/', VERSIONS.length());
+                        if (s < 0) {
+                            continue;
+                        }
+                        try {
+                            version = Integer.parseInt(name.substring(VERSIONS.length(), s));
+                        } catch (NumberFormatException e) {
+                            continue;
+                        }
+                        name = name.substring(s + 1);
+                    }
+                    final int s = name.lastIndexOf('/');
+                    final String directory = (s >= 0) ? name.substring(0, s) : "";
+                    packages.computeIfAbsent(directory, (key) -> new ArrayList<>())
+                            .add(new Entry(name.substring(s + 1), version, entry));
+                }
+            } catch (IOException | RuntimeException e) {
+                zip.close();
+                throw e;
+            }
+        }
+
+        /**
+         * {@return whether the manifest of the given JAR file declares a multi-release JAR}.
+         */
+        private static boolean isMultiRelease(final ZipFile zip) throws IOException {
+            final ZipEntry entry = zip.getEntry(JarFile.MANIFEST_NAME);
+            if (entry != null) {
+                try (InputStream in = zip.getInputStream(entry)) {
+                    String value = new Manifest(in).getMainAttributes().getValue(Attributes.Name.MULTI_RELEASE);
+                    return Boolean.parseBoolean(value);
+                }
+            }
+            return false;
+        }
+
+        /**
+         * {@return whether the JAR file has not been modified since it has been opened}.
+         */
+        boolean isCurrent() {
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                return attributes.size() == size && attributes.lastModifiedTime().toMillis() == lastModified;
+            } catch (IOException e) {
+                return false;
+            }
+        }
+
+        /**
+         * Closes the JAR file, ignoring errors since the archive will not be used anymore.
+         */
+        private void close() {
+            try {
+                zip.close();
+            } catch (IOException e) {
+                // Ignore since the archive is no longer used.
+            }
+        }
+
+        /**
+         * {@return the package directories of this archive}.
+         * Directories use {@code '/'} separators. The root directory is the empty string.
+         */
+        Collection<String> directories() {
+            return packages.keySet();
+        }
+
+        /**
+         * {@return the entries in the given package directory, as seen by the given Java release}.
+         * For multi-release JAR files, the entries specific to the highest release not greater than
+         * the given release replace the base entries of the same name.
+         *
+         * @param directory the package directory with {@code '/'} separators
+         * @param release the Java release for which to select the entries of multi-release JAR files
+         */
+        List<Entry> list(final String directory, final int release) {
+            final List<Entry> entries = packages.getOrDefault(directory, List.of());
+            if (!multiRelease) {
+                return entries;
+            }
+            final var selected = new HashMap<String, Entry>();
+            for (Entry entry : entries) {
+                if (entry.version <= release) {
+                    selected.merge(entry.name, entry, (e1, e2) -> (e1.version >= e2.version) ? e1 : e2);
+                }
+            }
+            return new ArrayList<>(selected.values());
+        }
+    }
+}
@@ -72,6 +72,86 @@ public final class Options {
         this.logger = logger;
     }
 
+    /**
+     * Returns the number of arguments after the given option if that option affects only the diagnostics,
+     * or -1 if the option may affect the compiler output. The diagnostics-only options control warnings,
+     * verbosity or the memory of the compiler, but do not change the generated class files.
+     * Unknown options are conservatively considered as affecting the output.
+     *
+     * @param option the option to classify
+     * @return number of arguments of the given diagnostics-only option, or -1 if the option may affect the output
+     */
+    private static int diagnosticArguments(final String option) {
+        switch (option) {
+            case "-verbose":
+            case "-nowarn":
+            case "-deprecation":
+            case "-Xlint":
+            case "-Xdoclint":
+                return 0;
+            case "-Xmaxwarns":
+            case "-Xmaxerrs":
+                return 1;
+            default:
+                if (option.startsWith("-J")
+                        || option.startsWith("-Xlint:")
+                        || option.startsWith("-Xdoclint:")
+                        || option.startsWith("-Xdiags:")) {
+                    return 0;
+                }
+                return -1;
+        }
+    }
+
+    /**
+     * Computes a digest of the options which may affect the compiler output.
+     * Options which affect only the diagnostics (warnings, verbosity, memory) are excluded,
+     * so that changing them does not cause a recompilation.
+     *
+     * @return the first 64 bits of the SHA-256 digest of the output-affecting options
+     *
+     * @see IncrementalBuild.Aspect#OPTIONS
+     */
+    long outputDigest() {
+        return digest(false);
+    }
+
+    /**
+     * Computes a digest of the options which affect only the diagnostics.
+     * This is the complement of {@link #outputDigest()}.
+     *
+     * @return the first 64 bits of the SHA-256 digest of the diagnostics-only options
+     */
+    long diagnosticsDigest() {
+        return digest(true);
+    }
+
+    /**
+     * Computes a digest of the options which affect only the diagnostics, or of all other options.
+     *
+     * @param diagnostics {@code true} for the diagnostics-only options, or {@code false} for the other options
+     * @return the first 64 bits of the SHA-256 digest of the selected options
+     */
+    private long digest(final boolean diagnostics) {
+        final var selected = new ArrayList<String>(options.size());
+        final int size = options.size();
+        for (int i = 0; i < size; i++) {
+            final String option = options.get(i);
+            final int count = Math.min(diagnosticArguments(option), size - i - 1);
+            if (count < 0) {
+                if (!diagnostics) {
+                    selected.add(option);
+                }
+            } else {
+                if (diagnostics) {
+                    selected.addAll(options.subList(i, i + count + 1));
+                }
+                i += count;
+            }
+        }
+        return ClassScanner.digest(selected);
+    }
+
     /**
      * Strips white spaces and returns the result if non-empty, or {@code null} otherwise.
      *
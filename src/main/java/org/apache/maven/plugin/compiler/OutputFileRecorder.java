@@ -0,0 +1,244 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugin.compiler;
+
+import javax.tools.FileObject;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.UnaryOperator;
+
+/**
+ * A file manager which records the output files written by the compiler for each source file.
+ * The compiler specifies the source file as the "sibling" argument when requesting an output file.
+ * This class uses that information for building an exact mapping from source files to class files,
+ * including the secondary top-level classes and the files generated by annotation processors.
+ *
+ * <p>The output files of a generated source file are attributed to the source files that caused the
+ * generation, if known. Therefore, the mapping contains only the source files specified by the user.
+ * An output file having many originating files is recorded in the outputs of each of them.</p>
+ *
+ * <p>All methods delegate to the wrapped file manager,
+ * except the methods requesting an output file which are intercepted.</p>
+ */
+final class OutputFileRecorder extends ForwardingStandardJavaFileManager {
+    /**
+     * The output files (values) created for each source file (keys).
+     * The lists are modifiable for allowing the addition of new output files.
+     */
+    private final Map<Path, List<Path>> outputs;
+
+    /**
+     * The source files which are the origins of each output file.
+     * Used for attributing the outputs of a generated source file to the original sources.
+     */
+    private final Map<Path, Set<Path>> origins;
+
+    /**
+     * All files written by the compiler, including the files for which the origin is unknown.
+     */
+    private final Set<Path> files;
+
+    /**
+     * Creates a new recorder wrapping the given file manager.
+     *
+     * @param fileManager the file manager to which to delegate all operations
+     */
+    OutputFileRecorder(StandardJavaFileManager fileManager) {
+        super(fileManager);
+        outputs = new HashMap<>();
+        origins = new HashMap<>();
+        files = new LinkedHashSet<>();
+    }
+
+    /**
+     * Declares that the given source files have been given to the compiler.
+     * This is needed for recording an empty list of outputs for the source files
+     * which produce no output, for example {@code package-info.java} without annotation.
+     *
+     * @param sources paths to the source files given to the compiler
+     */
+    void compiled(Collection<Path> sources) {
+        for (Path source : sources) {
+            outputs.computeIfAbsent(source, (key) -> new ArrayList<>());
+        }
+    }
+
+    /**
+     * Assigns the recorded output files to the given source files.
+     * Source files that have not been compiled are left unchanged.
+     *
+     * @param sources the source files to update
+     */
+    void assignTo(Collection<SourceFile> sources) {
+        for (SourceFile source : sources) {
+            List<Path> files = outputs.get(source.file);
+            if (files != null) {
+                source.setOutputFiles(List.copyOf(files));
+            }
+        }
+    }
+
+    /**
+     * {@return all files written by the compiler}.
+     */
+    Set<Path> outputFiles() {
+        return Collections.unmodifiableSet(files);
+    }
+
+    /**
+     * Updates the recorded output files after they have been moved from a staging directory.
+     * Files which are not in the staging directory are left unchanged.
+     *
+     * @param stagingDirectory the directory where the compiler wrote the files
+     * @param outputDirectory the directory where the files have been moved
+     */
+    void relocate(final Path stagingDirectory, final Path outputDirectory) {
+        final UnaryOperator<Path> relocation = (file) -> {
+            if (file.startsWith(stagingDirectory)) {
+                return outputDirectory.resolve(stagingDirectory.relativize(file));
+            }
+            return file;
+        };
+        for (List<Path> list : outputs.values()) {
+            list.replaceAll(relocation);
+        }
+        final var relocated = new ArrayList<Path>(files.size());
+        for (Path file : files) {
+            relocated.add(relocation.apply(file));
+        }
+        files.clear();
+        files.addAll(relocated);
+    }
+
+    /**
+     * Records that the compiler created the given output file for the given sibling.
+     *
+     * @param output the file created by the compiler, or {@code null} if none
+     * @param sibling the source file which is the origin of the output, or {@code null} if unknown
+     */
+    private void record(final FileObject output, final FileObject sibling) {
+        if (output != null) {
+            final Path target = asPathOrNull(output);
+            if (target != null) {
+                files.add(target);
+                final Path source = (sibling != null) ? asPathOrNull(sibling) : null;
+                if (source != null) {
+                    final Set<Path> sources = origins.get(source);
+                    for (Path origin : (sources != null) ? List.copyOf(sources) : List.of(source)) {
+                        if (origins.computeIfAbsent(target, (key) -> new LinkedHashSet<>()).add(origin)) {
+                            outputs.computeIfAbsent(origin, (key) -> new ArrayList<>()).add(target);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the path of the given file object, or {@code null} if the file is not on the default file system.
+     */
+    private Path asPathOrNull(final FileObject file) {
+        try {
+            return fileManager.asPath(file);
+        } catch (IllegalArgumentException | UnsupportedOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns a file for output of the given class and records the sibling as its origin.
+     */
+    @Override
+    public JavaFileObject getJavaFileForOutput(
+            Location location, String className, JavaFileObject.Kind kind, FileObject sibling) throws IOException {
+        JavaFileObject output = super.getJavaFileForOutput(location, className, kind, sibling);
+        record(output, sibling);
+        return output;
+    }
+
+    /**
+     * Returns a file for output of the given resource and records the sibling as its origin.
+     */
+    @Override
+    public FileObject getFileForOutput(Location location, String packageName, String relativeName, FileObject sibling)
+            throws IOException {
+        FileObject output = super.getFileForOutput(location, packageName, relativeName, sibling);
+        record(output, sibling);
+        return output;
+    }
+
+    /**
+     * Returns a file for output of the given class and records all originating files.
+     * This method overrides the method added in Java 18. It is not annotated with
+     * {@code @Override} because this plugin can be compiled with Java 17.
+     *
+     * @param location an output location
+     * @param className name of a class
+     * @param kind the kind of file
+     * @param originatingFiles the files which are contributing to this output
+     * @return a file object for output
+     * @throws IOException if an I/O error occurred
+     */
+    public JavaFileObject getJavaFileForOutputForOriginatingFiles(
+            Location location, String className, JavaFileObject.Kind kind, FileObject... originatingFiles)
+            throws IOException {
+        JavaFileObject output = fileManager.getJavaFileForOutput(
+                location, className, kind, (originatingFiles.length != 0) ? originatingFiles[0] : null);
+        record(output, null);
+        for (FileObject sibling : originatingFiles) {
+            record(output, sibling);
+        }
+        return output;
+    }
+
+    /**
+     * Returns a file for output of the given resource and records all originating files.
+     * This method overrides the method added in Java 18. It is not annotated with
+     * {@code @Override} because this plugin can be compiled with Java 17.
+     *
+     * @param location an output location
+     * @param packageName a package name
+     * @param relativeName a relative name
+     * @param originatingFiles the files which are contributing to this output
+     * @return a file object for output
+     * @throws IOException if an I/O error occurred
+     */
+    public FileObject getFileForOutputForOriginatingFiles(
+            Location location, String packageName, String relativeName, FileObject... originatingFiles)
+            throws IOException {
+        FileObject output = fileManager.getFileForOutput(
+                location, packageName, relativeName, (originatingFiles.length != 0) ? originatingFiles[0] : null);
+        record(output, null);
+        for (FileObject sibling : originatingFiles) {
+            record(output, sibling);
+        }
+        return output;
+    }
+}
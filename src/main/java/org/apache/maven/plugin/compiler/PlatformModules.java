@@ -0,0 +1,177 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugin.compiler;
+
+import javax.tools.JavaCompiler;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.module.ModuleFinder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * The modules of the Java platform seen by {@code javac --release N} when N is the version of the running compiler.
+ * With the {@code --release} option, javac opens the {@code ct.sym} file of the <abbr>JDK</abbr> and creates
+ * a file manager for the platform classes in each compilation task, and there is no public <abbr>API</abbr>
+ * for sharing that file manager between tasks. However, when the release is the version of the compiler running
+ * in this <abbr>JVM</abbr>, javac does not read the class signatures from {@code ct.sym}. Instead, it uses the
+ * modules of the run-time image which are listed in {@code ct.sym}. The same view of the platform can be obtained
+ * with the {@code --source}, {@code --target} and {@code --limit-modules} options, which avoid that work.
+ *
+ * <p>The list of modules depends only on the running Java environment.
+ * Therefore, it is read once and cached for the lifetime of the <abbr>JVM</abbr>,
+ * which may span many builds when Maven is executed as a daemon.</p>
+ */
+final class PlatformModules {
+    /**
+     * Options which are not allowed with {@code --release} or which change the modules of the platform.
+     * The replacement of {@code --release} is not done if any of those options is present, so that javac
+     * reports the same errors and sees the same platform as with {@code --release}.
+     */
+    private static final Set<String> CONFLICTS = Set.of(
+            "--source",
+            "-source",
+            "--target",
+            "-target",
+            "--system",
+            "--upgrade-module-path",
+            "--limit-modules",
+            "--add-modules",
+            "--add-exports",
+            "--add-reads",
+            "--patch-module",
+            "--boot-class-path",
+            "-bootclasspath",
+            "--extension-directories",
+            "-extdirs",
+            "--endorsed-directories",
+            "-endorseddirs");
+
+    /**
+     * The modules listed in {@code ct.sym} for each release, as a comma-separated list.
+     * Empty if the list is not available for a release.
+     */
+    private static final Map<String, Optional<String>> MODULES = new ConcurrentHashMap<>();
+
+    /**
+     * Do not allow instantiation of this class.
+     */
+    private PlatformModules() {}
+
+    /**
+     * Replaces the {@code --release} option by equivalent options if the release is the version of the compiler.
+     * This method returns the given options unchanged if the compiler is not the one of the running Java
+     * environment, if the release is another version, or if other options may interfere with the platform.
+     * The caller is responsible for verifying that the compilation does not involve modules,
+     * because the {@code --limit-modules} option applies also to the modules on the module-path.
+     *
+     * @param compiler the compiler which will receive the options
+     * @param options the compiler options
+     * @return the options to give to the compiler, or {@code options} if unchanged
+     */
+    static List<String> replaceRelease(final JavaCompiler compiler, final List<String> options) {
+        if (!"jdk.compiler".equals(compiler.getClass().getModule().getName())) {
+            return options;
+        }
+        int index = -1;
+        for (int i = 0; i < options.size(); i++) {
+            final String option = options.get(i);
+            if (option.equals("--release")) {
+                if (index >= 0 || ++i >= options.size()) {
+                    return options;
+                }
+                index = i;
+            } else {
+                final int s = option.indexOf('=');
+                final String name = (s >= 0) ? option.substring(0, s) : option;
+                if (name.equals("--release") || CONFLICTS.contains(name) || name.startsWith("-Xbootclasspath")) {
+                    return options;
+                }
+            }
+        }
+        if (index < 0) {
+            return options;
+        }
+        final String release = options.get(index).strip();
+        if (!release.equals(Integer.toString(Runtime.version().feature()))) {
+            return options;
+        }
+        final Optional<String> modules = MODULES.computeIfAbsent(release, PlatformModules::read);
+        if (modules.isEmpty()) {
+            return options;
+        }
+        final var replaced = new ArrayList<String>(options.size() + 4);
+        replaced.addAll(options.subList(0, index - 1));
+        replaced.add("--source");
+        replaced.add(release);
+        replaced.add("--target");
+        replaced.add(release);
+        replaced.add("--limit-modules");
+        replaced.add(modules.get());
+        replaced.addAll(options.subList(index + 1, options.size()));
+        return replaced;
+    }
+
+    /**
+     * Reads the modules listed in {@code ct.sym} for the given release.
+     * Only the modules present in the run-time image are retained, as done by javac.
+     *
+     * @param release the release, which should be the version of the running Java environment
+     * @return the modules as a comma-separated list, or an empty value if not available
+     */
+    private static Optional<String> read(final String release) {
+        final Path file = Path.of(System.getProperty("java.home"), "lib", "ct.sym");
+        final String version =
+                Integer.toString(Integer.parseInt(release), Character.MAX_RADIX).toUpperCase(Locale.ROOT);
+        try (ZipFile zip = new ZipFile(file.toFile())) {
+            final ZipEntry entry = zip.getEntry(version + "/system-modules");
+            if (entry == null) {
+                return Optional.empty();
+            }
+            final ModuleFinder finder = ModuleFinder.ofSystem();
+            final var modules = new StringJoiner(",");
+            try (var in = new BufferedReader(
+                    new InputStreamReader(zip.getInputStream(entry), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    line = line.strip();
+                    if (!line.isEmpty() && finder.find(line).isPresent()) {
+                        modules.add(line);
+                    }
+                }
+            }
+            return (modules.length() != 0) ? Optional.of(modules.toString()) : Optional.empty();
+        } catch (IOException | RuntimeException e) {
+            // Keep the `--release` option, javac will report the error if any.
+            return Optional.empty();
+        }
+    }
+}
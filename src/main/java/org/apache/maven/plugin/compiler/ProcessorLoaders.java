@@ -0,0 +1,270 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugin.compiler;
+
+import javax.annotation.processing.Processor;
+import javax.tools.JavaCompiler;
+
+import java.io.IOException;
+import java.lang.module.Configuration;
+import java.lang.module.ModuleFinder;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.maven.api.Event;
+import org.apache.maven.api.EventType;
+import org.apache.maven.api.Listener;
+import org.apache.maven.api.Session;
+import org.apache.maven.api.SessionData;
+
+/**
+ * The class loaders of annotation processors created during a Maven session.
+ * By default, javac creates a new class loader over the processor path in each compilation,
+ * so the processor classes are loaded and compiled by the <abbr>JIT</abbr> again in each module.
+ * With this cache, modules having the same processor path share the same class loader,
+ * and the processors are given to the compiler with {@link JavaCompiler.CompilationTask#setProcessors}.
+ * New processor instances are created for each compilation task, as required by the processor contract,
+ * but the classes are loaded only once per session.
+ *
+ * <p>The processors are created in the same way as javac would do. Processors on the processor path
+ * are loaded by a class loader having the compiler class loader as parent. Processors on the processor
+ * module-path are loaded in a module layer on top of the boot layer. If the processors cannot be created,
+ * then the compiler discovers them itself, so that errors are reported as usual.</p>
+ *
+ * <p>This class is thread-safe. The class loaders are closed when the session ends.</p>
+ */
+final class ProcessorLoaders implements Listener {
+    /**
+     * The key of the cache in the session data.
+     */
+    private static final SessionData.Key<ProcessorLoaders> KEY = SessionData.key(ProcessorLoaders.class);
+
+    /**
+     * The class loaders created in this session, indexed by processor path.
+     */
+    private final Map<Key, Loader> loaders;
+
+    /**
+     * Key of a processor class loader.
+     *
+     * @param modular whether the paths are on the processor module-path instead of the processor class-path
+     * @param paths the processor path
+     * @param stamps sizes and modification times of the files of the processor path, for detecting changes
+     */
+    private record Key(boolean modular, List<Path> paths, List<Long> stamps) {}
+
+    /**
+     * Creates an initially empty cache.
+     */
+    private ProcessorLoaders() {
+        loaders = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * {@return the cache for the given session}.
+     * The cache is created when first needed.
+     *
+     * @param session the current Maven session
+     */
+    static ProcessorLoaders forSession(final Session session) {
+        return session.getData().computeIfAbsent(KEY, () -> {
+            var cache = new ProcessorLoaders();
+            session.registerListener(cache);
+            return cache;
+        });
+    }
+
+    /**
+     * {@return the class loader for the given processor path}.
+     * The class loader is created when first needed. Directories are identified by their paths only,
+     * while files are identified by their paths, sizes and modification times.
+     *
+     * @param compiler the compiler which will execute the processors
+     * @param modular whether the paths are on the processor module-path instead of the processor class-path
+     * @param paths the processor path
+     * @throws IOException if the attributes of a file cannot be read
+     */
+    Loader get(final JavaCompiler compiler, final boolean modular, final List<Path> paths) throws IOException {
+        final var stamps = new ArrayList<Long>(paths.size() * 2);
+        for (Path path : paths) {
+            if (Files.isRegularFile(path)) {
+                final BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                stamps.add(attributes.size());
+                stamps.add(attributes.lastModifiedTime().toMillis());
+            }
+        }
+        final var key = new Key(modular, List.copyOf(paths), stamps);
+        Loader loader = loaders.get(key);
+        if (loader == null) {
+            loader = new Loader(compiler, modular, key.paths);
+            final Loader previous = loaders.putIfAbsent(key, loader);
+            if (previous != null) {
+                loader.close();
+                loader = previous;
+            }
+        }
+        return loader;
+    }
+
+    /**
+     * Closes all class loaders when the session ends.
+     *
+     * @param event the event notified by Maven
+     */
+    @Override
+    public void onEvent(final Event event) {
+        if (event.getType() == EventType.SESSION_ENDED) {
+            event.getSession().unregisterListener(this);
+            for (Loader loader : loaders.values()) {
+                loader.close();
+            }
+            loaders.clear();
+        }
+    }
+
+    /**
+     * The class loader of annotation processors, together with the processors discovered by the service loader.
+     */
+    static final class Loader {
+        /**
+         * The class loader for processors on the processor class-path, or {@code null} if modular.
+         */
+        private final URLClassLoader classLoader;
+
+        /**
+         * The service loader of the processors, created from the class loader or module layer.
+         */
+        private final ServiceLoader<Processor> serviceLoader;
+
+        /**
+         * The processors discovered by the service loader, or {@code null} if not yet discovered.
+         */
+        private List<ServiceLoader.Provider<Processor>> providers;
+
+        /**
+         * Creates a class loader for the given processor path.
+         *
+         * @param compiler the compiler which will execute the processors
+         * @param modular whether the paths are on the processor module-path
+         * @param paths the processor path
+         * @throws IOException if a path cannot be converted to an URL
+         */
+        Loader(final JavaCompiler compiler, final boolean modular, final List<Path> paths) throws IOException {
+            if (modular) {
+                final ModuleFinder finder = ModuleFinder.of(paths.toArray(Path[]::new));
+                final ModuleLayer boot = ModuleLayer.boot();
+                final Configuration cf = boot.configuration().resolveAndBind(ModuleFinder.of(), finder, Set.of());
+                final ModuleLayer layer = boot.defineModulesWithOneLoader(cf, ClassLoader.getSystemClassLoader());
+                classLoader = null;
+                serviceLoader = ServiceLoader.load(layer, Processor.class);
+            } else {
+                final var urls = new URL[paths.size()];
+                for (int i = 0; i < urls.length; i++) {
+                    try {
+                        urls[i] = paths.get(i).toUri().toURL();
+                    } catch (MalformedURLException e) {
+                        throw new IOException(e);
+                    }
+                }
+                classLoader = new URLClassLoader(urls, compiler.getClass().getClassLoader());
+                serviceLoader = ServiceLoader.load(Processor.class, classLoader);
+            }
+        }
+
+        /**
+         * {@return the processors discovered by the service loader}.
+         *
+         * @throws ServiceConfigurationError if the service configuration is invalid
+         */
+        private synchronized List<ServiceLoader.Provider<Processor>> providers() {
+            if (providers == null) {
+                providers = serviceLoader.stream().toList();
+            }
+            return providers;
+        }
+
+        /**
+         * Creates new instances of the processors to give to a compilation task.
+         * If {@code names} is null, the processors are discovered by the service loader.
+         * Otherwise, the processors of the given names are instantiated in the specified order.
+         *
+         * @param names comma-separated names of the processors, or {@code null} for discovering them
+         * @return new processor instances, or {@code null} if the compiler should create the processors itself
+         */
+        List<Processor> newProcessors(final String names) {
+            final var processors = new ArrayList<Processor>();
+            try {
+                if (names == null) {
+                    for (ServiceLoader.Provider<Processor> provider : providers()) {
+                        processors.add(provider.get());
+                    }
+                } else {
+                    for (String item : names.split(",")) {
+                        final String name = item.strip();
+                        if (classLoader != null) {
+                            processors.add(classLoader
+                                    .loadClass(name)
+                                    .asSubclass(Processor.class)
+                                    .getConstructor()
+                                    .newInstance());
+                        } else {
+                            final Processor processor = providers().stream()
+                                    .filter((provider) -> provider.type().getName().equals(name))
+                                    .findFirst()
+                                    .map(ServiceLoader.Provider::get)
+                                    .orElse(null);
+                            if (processor == null) {
+                                return null;
+                            }
+                            processors.add(processor);
+                        }
+                    }
+                }
+            } catch (ReflectiveOperationException | ServiceConfigurationError | LinkageError | RuntimeException e) {
+                // Let the compiler report the error.
+                return null;
+            }
+            return processors;
+        }
+
+        /**
+         * Closes the class loader, ignoring errors.
+         */
+        void close() {
+            if (classLoader != null) {
+                try {
+                    classLoader.close();
+                } catch (IOException e) {
+                    // Ignore since the class loader is no longer used.
+                }
+            }
+        }
+    }
+}
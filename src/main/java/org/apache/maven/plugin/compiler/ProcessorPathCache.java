@@ -0,0 +1,169 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugin.compiler;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.maven.api.DependencyCoordinates;
+import org.apache.maven.api.Exclusion;
+import org.apache.maven.api.PathScope;
+import org.apache.maven.api.RemoteRepository;
+import org.apache.maven.api.Session;
+import org.apache.maven.api.SessionData;
+import org.apache.maven.api.services.DependencyResolver;
+import org.apache.maven.api.services.DependencyResolverRequest;
+import org.apache.maven.api.services.DependencyResolverResult;
+
+/**
+ * The paths to annotation processors resolved from the {@code annotationProcessorPaths} parameter.
+ * In a multi-module project, the same annotation processor paths are typically declared in the parent
+ * <abbr>POM</abbr> and inherited by all modules. With this cache, the resolution is done only once
+ * per session for each distinct set of coordinates, managed dependencies and remote repositories.
+ *
+ * <p>This class is thread-safe. In a multi-threaded build, the modules resolve distinct sets of coordinates
+ * in parallel, while the modules needing a set of coordinates which is being resolved by another thread
+ * wait for that thread instead of resolving the same dependencies again. Failed resolutions and resolutions
+ * with exceptions are not cached, so that a subsequent execution tries again.</p>
+ *
+ * @deprecated Will be removed together with the {@code annotationProcessorPaths} parameter.
+ */
+@Deprecated(since = "4.0.0")
+final class ProcessorPathCache {
+    /**
+     * The key of the cache in the session data.
+     */
+    private static final SessionData.Key<ProcessorPathCache> KEY = SessionData.key(ProcessorPathCache.class);
+
+    /**
+     * The paths resolved or being resolved for each set of coordinates.
+     */
+    private final Map<Key, CompletableFuture<List<Path>>> paths;
+
+    /**
+     * Key of a resolution of annotation processor paths. The elements are string representations
+     * of the coordinates, because the coordinate objects do not necessarily implement {@code equals}.
+     *
+     * @param coordinates the coordinates of the annotation processors, including versions and exclusions
+     * @param managed the managed dependencies of the project
+     * @param repositories the remote repositories of the project
+     */
+    private record Key(List<String> coordinates, List<String> managed, List<String> repositories) {}
+
+    /**
+     * Creates an initially empty cache.
+     */
+    private ProcessorPathCache() {
+        paths = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * {@return the cache for the given session}.
+     * The cache is created when first needed.
+     *
+     * @param session the current Maven session
+     */
+    static ProcessorPathCache forSession(final Session session) {
+        return session.getData().computeIfAbsent(KEY, ProcessorPathCache::new);
+    }
+
+    /**
+     * Resolves the given annotation processor coordinates, or returns the result of a previous resolution.
+     * If another thread is resolving the same coordinates, waits for that thread to finish.
+     *
+     * @param session the current Maven session
+     * @param coordinates the coordinates of the annotation processors
+     * @param managed the managed dependencies of the project
+     * @param repositories the remote repositories of the project
+     * @return the paths to the annotation processors and their dependencies, in a modifiable list
+     */
+    List<Path> resolve(
+            final Session session,
+            final List<DependencyCoordinates> coordinates,
+            final List<DependencyCoordinates> managed,
+            final List<RemoteRepository> repositories) {
+        final var key = new Key(toStrings(coordinates), toStrings(managed), repositories.stream()
+                .map((repository) -> repository.getId() + '=' + repository.getUrl())
+                .toList());
+        final var future = new CompletableFuture<List<Path>>();
+        final CompletableFuture<List<Path>> existing = paths.putIfAbsent(key, future);
+        if (existing != null) {
+            try {
+                return new ArrayList<>(existing.join());
+            } catch (CompletionException e) {
+                final Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException r) {
+                    throw r;
+                }
+                throw e;
+            }
+        }
+        final DependencyResolverResult result;
+        try {
+            final Session sessionWithRepo = session.withRemoteRepositories(repositories);
+            result = sessionWithRepo
+                    .getService(DependencyResolver.class)
+                    .resolve(DependencyResolverRequest.builder()
+                            .session(sessionWithRepo)
+                            .dependencies(coordinates)
+                            .managedDependencies(managed)
+                            .requestType(DependencyResolverRequest.RequestType.RESOLVE)
+                            .pathScope(PathScope.MAIN_RUNTIME)
+                            .build());
+        } catch (RuntimeException | Error e) {
+            paths.remove(key, future);
+            future.completeExceptionally(e);
+            throw e;
+        }
+        final List<Path> resolved = List.copyOf(result.getPaths());
+        if (!result.getExceptions().isEmpty()) {
+            paths.remove(key, future);
+        }
+        future.complete(resolved);
+        return new ArrayList<>(resolved);
+    }
+
+    /**
+     * {@return string representations of the given coordinates, including the information used by the resolver}.
+     */
+    private static List<String> toStrings(final Collection<DependencyCoordinates> coordinates) {
+        final var list = new ArrayList<String>(coordinates.size());
+        for (DependencyCoordinates c : coordinates) {
+            final var sb = new StringBuilder(c.getId())
+                    .append(':')
+                    .append(c.getType() != null ? c.getType().id() : "")
+                    .append(':')
+                    .append(c.getScope() != null ? c.getScope().id() : "")
+                    .append(':')
+                    .append(c.getOptional());
+            c.getExclusions().stream()
+                    .map((Exclusion e) -> e.getGroupId() + ':' + e.getArtifactId())
+                    .sorted()
+                    .forEach((e) -> sb.append('!').append(e));
+            list.add(sb.toString());
+        }
+        return list;
+    }
+}
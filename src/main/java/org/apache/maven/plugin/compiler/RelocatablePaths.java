@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugin.compiler;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Converts paths to strings relative to well-known directories, and conversely.
+ * This is used by the files saved by the incremental build, so that the build directory can be restored
+ * in another location (for example, by a continuous integration system caching the {@code target} directory
+ * between agents having different workspaces) without being considered as a different project.
+ *
+ * <p>A path inside a well-known directory is encoded as the name of that directory between {@code ${…}},
+ * followed by the path relative to that directory. Other paths are encoded as absolute paths.
+ * When many directories contain the path, the most specific one is used.</p>
+ */
+final class RelocatablePaths {
+    /**
+     * An instance which stores all paths as absolute paths.
+     */
+    static final RelocatablePaths NONE = new RelocatablePaths(Map.of());
+
+    /**
+     * The well-known directories, sorted with the most specific directories first.
+     */
+    private final List<Map.Entry<String, Path>> directories;
+
+    /**
+     * The well-known directories, indexed by their encoded names.
+     */
+    private final Map<String, Path> byName;
+
+    /**
+     * Creates a new converter for the given directories.
+     *
+     * @param directories the well-known directories, indexed by names such as {@code "project.basedir"}
+     */
+    RelocatablePaths(final Map<String, Path> directories) {
+        this.directories = new ArrayList<>(directories.size());
+        byName = new HashMap<>();
+        for (Map.Entry<String, Path> entry : directories.entrySet()) {
+            final String name = "${" + entry.getKey() + '}';
+            final Path directory = entry.getValue().toAbsolutePath().normalize();
+            this.directories.add(Map.entry(name, directory));
+            byName.put(name, directory);
+        }
+        this.directories.sort(Comparator.comparingInt((Map.Entry<String, Path> entry) ->
+                        entry.getValue().getNameCount())
+                .reversed());
+    }
+
+    /**
+     * {@return the string representation of the given path, relative to a well-known directory if possible}.
+     *
+     * @param path the path to encode
+     */
+    String encode(final Path path) {
+        if (path.isAbsolute()) {
+            for (Map.Entry<String, Path> entry : directories) {
+                final Path directory = entry.getValue();
+                if (path.startsWith(directory)) {
+                    if (path.getNameCount() == directory.getNameCount()) {
+                        return entry.getKey();
+                    }
+                    return entry.getKey() + File.separatorChar + directory.relativize(path);
+                }
+            }
+        }
+        return path.toString();
+    }
+
+    /**
+     * {@return the path for the given string representation}.
+     * This is the converse of {@link #encode(Path)}.
+     *
+     * @param path the string representation of the path to decode
+     */
+    Path decode(final String path) {
+        if (path.startsWith("${")) {
+            final int end = path.indexOf('}') + 1;
+            if (end > 0) {
+                final Path directory = byName.get(path.substring(0, end));
+                if (directory != null) {
+                    if (end == path.length()) {
+                        return directory;
+                    }
+                    return directory.resolve(path.substring(end + 1));
+                }
+            }
+        }
+        return Path.of(path);
+    }
+}
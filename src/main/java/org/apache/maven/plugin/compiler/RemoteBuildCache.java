@@ -0,0 +1,334 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugin.compiler;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.maven.api.Session;
+import org.apache.maven.api.SessionData;
+import org.apache.maven.api.plugin.Log;
+
+/**
+ * A remote tier of the {@linkplain BuildCache build cache}, accessed with the HTTP protocol.
+ * Each entry of the local cache is transferred as a ZIP bundle containing the entry directory.
+ * The bundle of the entry identified by a key is at the {@code <url>/<key>.zip} address.
+ * Bundles are downloaded with a {@code GET} request and uploaded with a {@code PUT} request.
+ * Any HTTP server accepting those requests, for example a WebDAV server, can be used.
+ *
+ * <p>The remote cache is an optimization which shall never cause a build failure. If the server
+ * does not complete a request within the timeout or returns an error, a warning is logged and the remote cache
+ * is disabled for the remaining of the Maven session, which continues as if there was no remote cache.
+ * The timeout applies to the whole request including the transfer of the bundle,
+ * so that a server which stops sending data in the middle of a response cannot block the build.</p>
+ */
+final class RemoteBuildCache {
+    /**
+     * The key of the disabled servers in the session data.
+     */
+    private static final SessionData.Key<DisabledServers> KEY = SessionData.key(DisabledServers.class);
+
+    /**
+     * The extension of the bundle files.
+     */
+    private static final String EXTENSION = ".zip";
+
+    /**
+     * The base URLs of the servers which failed during a Maven session.
+     * Those servers are no longer contacted by the next modules of the same session.
+     */
+    private static final class DisabledServers {
+        /**
+         * The base URLs of the servers which failed.
+         */
+        final Set<URI> urls = ConcurrentHashMap.newKeySet();
+    }
+
+    /**
+     * The base URL of the cache, with a trailing slash.
+     */
+    private final URI baseURL;
+
+    /**
+     * Maximal time to wait for the completion of each request, including the transfer of the bundle.
+     */
+    private final Duration timeout;
+
+    /**
+     * The client used for all requests.
+     */
+    private final HttpClient client;
+
+    /**
+     * Where to report warnings.
+     */
+    private final Log logger;
+
+    /**
+     * The servers for which a previous request failed. Those servers are no longer contacted.
+     */
+    private final DisabledServers disabled;
+
+    /**
+     * Creates a new remote cache which is not shared with other modules.
+     * Failures of this cache do not disable the caches created by other invocations of this constructor.
+     *
+     * @param url the base URL of the cache
+     * @param timeout maximal time to wait for the completion of each request
+     * @param logger where to report warnings
+     */
+    RemoteBuildCache(String url, Duration timeout, Log logger) {
+        this(url, timeout, new DisabledServers(), logger);
+    }
+
+    /**
+     * Creates a new remote cache with the given set of disabled servers.
+     *
+     * @param url the base URL of the cache
+     * @param timeout maximal time to wait for the completion of each request
+     * @param disabled the servers for which a previous request failed
+     * @param logger where to report warnings
+     */
+    private RemoteBuildCache(String url, Duration timeout, DisabledServers disabled, Log logger) {
+        baseURL = URI.create(url.endsWith("/") ? url : url + '/');
+        this.timeout = timeout;
+        this.disabled = disabled;
+        this.logger = logger;
+        client = HttpClient.newBuilder()
+                .connectTimeout(timeout)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+    }
+
+    /**
+     * Creates a new remote cache for a module of the given Maven session. If a request to the server fails,
+     * the server is no longer contacted by any remote cache created by this method for the same session.
+     *
+     * @param session the current Maven session
+     * @param url the base URL of the cache
+     * @param timeout maximal time to wait for the completion of each request
+     * @param logger where to report warnings
+     * @return the remote cache
+     */
+    static RemoteBuildCache forSession(Session session, String url, Duration timeout, Log logger) {
+        return new RemoteBuildCache(url, timeout, session.getData().computeIfAbsent(KEY, DisabledServers::new), logger);
+    }
+
+    /**
+     * {@return whether a previous request to the server failed during the session}.
+     */
+    private boolean isDisabled() {
+        return disabled.urls.contains(baseURL);
+    }
+
+    /**
+     * Sends the given request and waits for the response body, up to the timeout.
+     * Contrarily to {@link HttpRequest.Builder#timeout(Duration)}, which applies only until the response
+     * headers are received, the timeout of this method applies also to the transfer of the response body.
+     *
+     * @param <T> the type of the response body
+     * @param request the request to send
+     * @param handler the handler of the response body
+     * @return the response with its body fully received
+     * @throws IOException if the request failed or did not complete within the timeout
+     * @throws InterruptedException if the thread has been interrupted while waiting for the response
+     */
+    private <T> HttpResponse<T> send(final HttpRequest request, final HttpResponse.BodyHandler<T> handler)
+            throws IOException, InterruptedException {
+        final CompletableFuture<HttpResponse<T>> future = client.sendAsync(request, handler);
+        try {
+            return future.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw new HttpTimeoutException("Request not completed within " + timeout.toMillis() + " ms.");
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            throw e;
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * {@return the URI of the bundle of the entry identified by the given key}.
+     */
+    private URI bundle(final String key) {
+        return baseURL.resolve(key + EXTENSION);
+    }
+
+    /**
+     * Downloads the bundle of the entry identified by the given key and extracts it in the given directory.
+     * If the server does not have the entry or cannot be reached, then this method returns {@code false}.
+     *
+     * @param key the key of the entry to download
+     * @param target an empty directory where to extract the files of the entry
+     * @return whether the entry has been downloaded
+     * @throws IOException if an error occurred while writing the files
+     */
+    boolean download(final String key, final Path target) throws IOException {
+        if (isDisabled()) {
+            return false;
+        }
+        final Path bundle = target.resolveSibling(target.getFileName() + EXTENSION);
+        try {
+            final int status;
+            try {
+                HttpRequest request =
+                        HttpRequest.newBuilder(bundle(key)).timeout(timeout).GET().build();
+                status = send(request, HttpResponse.BodyHandlers.ofFile(bundle)).statusCode();
+            } catch (IOException e) {
+                disable("Cannot download from the remote build cache at " + baseURL + '.', e);
+                return false;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            if (status != HttpURLConnection.HTTP_OK) {
+                if (status != HttpURLConnection.HTTP_NOT_FOUND) {
+                    disable("The remote build cache at " + baseURL + " answered with status " + status + '.', null);
+                }
+                return false;
+            }
+            return extract(bundle, target);
+        } finally {
+            Files.deleteIfExists(bundle);
+        }
+    }
+
+    /**
+     * Extracts the given bundle in the given directory.
+     *
+     * @param bundle the downloaded bundle
+     * @param target an empty directory where to extract the files of the entry
+     * @return whether the bundle is a valid entry
+     */
+    private boolean extract(final Path bundle, final Path target) {
+        try (ZipInputStream in = new ZipInputStream(new BufferedInputStream(Files.newInputStream(bundle)))) {
+            boolean hasManifest = false;
+            ZipEntry entry;
+            while ((entry = in.getNextEntry()) != null) {
+                final Path file = target.resolve(entry.getName()).normalize();
+                if (!file.startsWith(target) || file.equals(target)) {
+                    throw new IOException("Illegal entry in the remote build cache bundle: " + entry.getName());
+                }
+                if (entry.isDirectory()) {
+                    Files.createDirectories(file);
+                } else {
+                    Files.createDirectories(file.getParent());
+                    Files.copy(in, file);
+                    hasManifest |= file.getParent().equals(target)
+                            && file.getFileName().toString().equals(BuildCache.MANIFEST);
+                }
+            }
+            return hasManifest;
+        } catch (IOException e) {
+            disable("Cannot download from the remote build cache at " + baseURL + '.', e);
+            return false;
+        }
+    }
+
+    /**
+     * Uploads the files of the given entry directory as a bundle identified by the given key.
+     * Failures are logged but otherwise ignored.
+     *
+     * @param key the key of the entry to upload
+     * @param source the directory of the entry in the local cache
+     * @param workDirectory directory where to create the temporary bundle file
+     * @throws IOException if an error occurred while reading the local files
+     */
+    void upload(final String key, final Path source, final Path workDirectory) throws IOException {
+        if (isDisabled()) {
+            return;
+        }
+        final Path bundle = Files.createTempFile(workDirectory, key, EXTENSION);
+        try {
+            try (ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(bundle)))) {
+                final List<Path> files;
+                try (Stream<Path> stream = Files.walk(source)) {
+                    files = stream.filter(Files::isRegularFile).sorted().toList();
+                }
+                for (Path file : files) {
+                    out.putNextEntry(new ZipEntry(
+                            source.relativize(file).toString().replace(File.separatorChar, '/')));
+                    Files.copy(file, out);
+                    out.closeEntry();
+                }
+            }
+            final HttpRequest request = HttpRequest.newBuilder(bundle(key))
+                    .timeout(timeout)
+                    .header("Content-Type", "application/zip")
+                    .PUT(HttpRequest.BodyPublishers.ofFile(bundle))
+                    .build();
+            final int status;
+            try {
+                status = send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+            } catch (IOException e) {
+                disable("Cannot upload to the remote build cache at " + baseURL + '.', e);
+                return;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (status / 100 != 2) {
+                disable("The remote build cache at " + baseURL + " answered with status " + status + '.', null);
+            }
+        } finally {
+            Files.deleteIfExists(bundle);
+        }
+    }
+
+    /**
+     * Logs a warning and disables the remote cache for the remaining of the session.
+     */
+    private void disable(final String message, final Exception cause) {
+        if (disabled.urls.add(baseURL)) {
+            if (cause != null) {
+                logger.warn(message + " The remote cache is disabled for this build: " + cause);
+            } else {
+                logger.warn(message + " The remote cache is disabled for this build.");
+            }
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugin.compiler;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.maven.api.PathScope;
+import org.apache.maven.api.PathType;
+import org.apache.maven.api.Project;
+import org.apache.maven.api.Session;
+import org.apache.maven.api.SessionData;
+import org.apache.maven.api.services.DependencyResolver;
+import org.apache.maven.api.services.DependencyResolverRequest;
+import org.apache.maven.api.services.DependencyResolverResult;
+
+/**
+ * The results of dependency resolutions done during a Maven session.
+ * Many executions of the compiler plugin on the same project resolve the same dependencies,
+ * for example when the same sources are compiled for different releases. With this cache,
+ * the dependency graph of a project is resolved only once per scope and kinds of paths.
+ * The cached results give also access to the module names and descriptors already read
+ * by the resolver, without reading the <abbr>JAR</abbr> files again.
+ *
+ * <p>Results with exceptions are not cached, so that a subsequent execution reports the errors again.
+ * This class is thread-safe. Two threads may resolve the same dependencies concurrently,
+ * in which case the result of the first thread is kept.</p>
+ */
+final class ResolverCache {
+    /**
+     * The key of the cache in the session data.
+     */
+    private static final SessionData.Key<ResolverCache> KEY = SessionData.key(ResolverCache.class);
+
+    /**
+     * The results of dependency resolutions.
+     */
+    private final Map<Key, DependencyResolverResult> results;
+
+    /**
+     * Key of a dependency resolution.
+     *
+     * @param pom the <abbr>POM</abbr> file of the project
+     * @param project the project identifier
+     * @param scope the scope of the dependencies to resolve
+     * @param pathTypes the kinds of paths where the dependencies can be placed
+     */
+    private record Key(Path pom, String project, PathScope scope, Set<PathType> pathTypes) {}
+
+    /**
+     * Creates an initially empty cache.
+     */
+    private ResolverCache() {
+        results = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * {@return the cache for the given session}.
+     * The cache is created when first needed.
+     *
+     * @param session the current Maven session
+     */
+    static ResolverCache forSession(final Session session) {
+        return session.getData().computeIfAbsent(KEY, ResolverCache::new);
+    }
+
+    /**
+     * Resolves the dependencies of the given project, or returns the result of a previous resolution.
+     *
+     * @param resolver the resolver to use if the result is not in the cache
+     * @param session the current Maven session
+     * @param project the project for which to resolve the dependencies
+     * @param scope the scope of the dependencies to resolve
+     * @param pathTypes the kinds of paths where the dependencies can be placed
+     * @return the result of the dependency resolution
+     */
+    DependencyResolverResult resolve(
+            final DependencyResolver resolver,
+            final Session session,
+            final Project project,
+            final PathScope scope,
+            final Set<? extends PathType> pathTypes) {
+        final var key = new Key(project.getPomPath(), project.getId(), scope, Set.copyOf(pathTypes));
+        DependencyResolverResult result = results.get(key);
+        if (result == null) {
+            result = resolver.resolve(DependencyResolverRequest.builder()
+                    .session(session)
+                    .project(project)
+                    .requestType(DependencyResolverRequest.RequestType.RESOLVE)
+                    .pathScope(scope)
+                    .pathTypeFilter(pathTypes)
+                    .build());
+            if (result.getExceptions().isEmpty()) {
+                final DependencyResolverResult previous = results.putIfAbsent(key, result);
+                if (previous != null) {
+                    result = previous;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * {@return a copy of the dependency paths of the given result, organized by the path types where to place them}.
+     * The map and the lists are modifiable, and modifications do not change the cached result.
+     *
+     * @param result the result of a dependency resolution
+     */
+    static Map<PathType, List<Path>> dispatchedPaths(final DependencyResolverResult result) {
+        final Map<PathType, List<Path>> paths = result.getDispatchedPaths();
+        final var copy = new LinkedHashMap<PathType, List<Path>>(paths.size() + 4);
+        for (Map.Entry<PathType, List<Path>> entry : paths.entrySet()) {
+            copy.put(entry.getKey(), new ArrayList<>(entry.getValue()));
+        }
+        return copy;
+    }
+}
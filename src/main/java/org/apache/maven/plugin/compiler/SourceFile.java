@@ -18,8 +18,13 @@
  */
 package org.apache.maven.plugin.compiler;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.zip.CRC32C;
 
 /**
  * A single source file, associated with the root directory from which it belong.
@@ -45,10 +50,24 @@ final class SourceFile {
      */
     final long lastModified;
 
+    /**
+     * Sentinel value of {@link #checksum} meaning that the checksum has not yet been computed.
+     */
+    static final long UNKNOWN_CHECKSUM = -1;
+
+    /**
+     * CRC32C checksum of the file content, or {@link #UNKNOWN_CHECKSUM} if not yet computed.
+     * This value may be copied from the previous build when the {@link #lastModified} value
+     * shows that the file has not been modified, in order to avoid reading the file again.
+     *
+     * @see #checksum()
+     */
+    private long checksum = UNKNOWN_CHECKSUM;
+
     /**
      * Whether this source has been flagged as new or modified since the last build.
      *
-     * @see IncrementalBuildHelper#inputFileTreeChanges
+     * @see IncrementalBuild#inputFileTreeChanges
      */
     boolean isNewOrModified;
 
@@ -68,10 +87,18 @@ final class SourceFile {
     /**
      * The path of the {@code .class} file, created when first requested.
      *
-     * @see #getOutputFile(boolean)
+     * @see #getOutputFile()
      */
     private Path outputFile;
 
+    /**
+     * All files written by the compiler for this source file, or {@code null} if unknown.
+     * This list is obtained from the compiler, or from the previous build if this file did not change.
+     *
+     * @see #getOutputFiles()
+     */
+    private List<Path> outputFiles;
+
     /**
      * Creates a new source file.
      *
@@ -89,22 +116,47 @@ final class SourceFile {
     }
 
     /**
-     * Returns the file resulting from the compilation of this source file. If the output file has been
-     * {@linkplain javax.tools.JavaFileManager#getFileForOutput obtained from the compiler}, that value
-     * if returned. Otherwise if {@code infer} is {@code true}, then the output file is inferred using
-     * {@linkplain #toOutputFile heuristic rules}.
+     * {@return the CRC32C checksum of the file content}.
+     * The file is read when this method is first invoked, unless the checksum has been
+     * {@linkplain #assumeChecksum(long) copied from the previous build}.
      *
-     * @param  infer whether to allow this method to infer a default path using heuristic rules
-     * @return path to the output file, or {@code null} if unspecified and {@code infer} is {@code false}
-     */
-    Path getOutputFile(boolean infer) {
-        if (!infer) {
-            /*
-             * TODO: add a `setOutputFile(Path)` method after we clarified how to get this information from the compiler.
-             *       It may be from javax.tools.JavaFileManager.getFileForOutput(...).
-             */
-            return null;
+     * @throws IOException if an error occurred while reading the file
+     */
+    long checksum() throws IOException {
+        if (checksum == UNKNOWN_CHECKSUM) {
+            var crc = new CRC32C();
+            try (InputStream in = Files.newInputStream(file)) {
+                @SuppressWarnings("checkstyle:MagicNumber")
+                var buffer = new byte[8192];
+                int n;
+                while ((n = in.read(buffer)) >= 0) {
+                    crc.update(buffer, 0, n);
+                }
+            }
+            checksum = crc.getValue();
         }
+        return checksum;
+    }
+
+    /**
+     * Sets the checksum to the given value without reading the file. This method should be invoked
+     * only when the {@linkplain #lastModified last modification time} shows that the file content
+     * is the same as the one for which the given checksum was computed.
+     *
+     * @param value checksum computed during a previous build, or {@link #UNKNOWN_CHECKSUM}
+     */
+    void assumeChecksum(long value) {
+        checksum = value;
+    }
+
+    /**
+     * Returns the main file resulting from the compilation of this source file.
+     * The output file is inferred using {@linkplain #toOutputFile heuristic rules}.
+     * The actual files written by the compiler are given by {@link #getOutputFiles()}.
+     *
+     * @return path to the output file
+     */
+    Path getOutputFile() {
         if (outputFile == null) {
             outputFile = toOutputFile(
                     directory.root,
@@ -116,6 +168,26 @@ final class SourceFile {
         return outputFile;
     }
 
+    /**
+     * {@return all files written by the compiler for this source file, or {@code null} if unknown}.
+     * This list may contain secondary top-level classes, inner classes and files generated by
+     * annotation processors. It may be empty, for example for a {@code package-info.java} file.
+     */
+    List<Path> getOutputFiles() {
+        return outputFiles;
+    }
+
+    /**
+     * Sets the files written by the compiler for this source file.
+     *
+     * @param files all files written by the compiler for this source file
+     *
+     * @see OutputFileRecorder
+     */
+    void setOutputFiles(List<Path> files) {
+        outputFiles = files;
+    }
+
     /**
      * Infers the path to the output file using heuristic rules.
      * If the extension of the file is the one of {@linkplain SourceDirectory#fileKind source file kind}
@@ -0,0 +1,249 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugin.compiler;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+
+import org.apache.maven.api.plugin.Log;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Tests the local build cache.
+ */
+public class BuildCacheTestCase {
+    /**
+     * Directory where to create the output directory and the cache.
+     */
+    @TempDir
+    Path tempDir;
+
+    /**
+     * The directory where the "compiler" writes its outputs.
+     */
+    private Path output;
+
+    /**
+     * The root directory of the cache.
+     */
+    private Path directory;
+
+    /**
+     * Where to report warnings.
+     */
+    private Log logger;
+
+    /**
+     * Creates the output directory and the logger.
+     *
+     * @throws IOException if the directory cannot be created
+     */
+    @BeforeEach
+    public void createOutput() throws IOException {
+        output = Files.createDirectories(tempDir.resolve("output"));
+        directory = tempDir.resolve("cache");
+        logger = mock(Log.class);
+    }
+
+    /**
+     * Creates a build cache with the given inputs in its key.
+     */
+    private BuildCache cache(String inputs) {
+        return cache(inputs, Long.MAX_VALUE);
+    }
+
+    /**
+     * Creates a build cache with the given inputs in its key and the given maximal size.
+     */
+    private BuildCache cache(String inputs, long maxSize) {
+        var cache = new BuildCache(directory, maxSize, List.of(output), null, logger);
+        cache.addToKey(inputs);
+        return cache;
+    }
+
+    /**
+     * Stores a single class file of the given size in the entry identified by the given inputs.
+     *
+     * @return the directory of the new entry
+     */
+    private Path store(String inputs, int size, long maxSize) throws IOException {
+        final BuildCache cache = cache(inputs, maxSize);
+        cache.store(List.of(Files.write(output.resolve(inputs + ".class"), new byte[size])), List.of());
+        return directory.resolve(cache.key());
+    }
+
+    /**
+     * Writes the given source files and returns them as the sources of a compilation.
+     *
+     * @param contents the content of each source file, with file names as keys
+     */
+    private List<SourceFile> sources(String... contents) throws IOException {
+        final Path root = Files.createDirectories(tempDir.resolve("src"));
+        final SourceDirectory dir = SourceDirectory.fromPaths(List.of(root), output).get(0);
+        final var sources = new SourceFile[contents.length / 2];
+        for (int i = 0; i < sources.length; i++) {
+            final Path file = Files.writeString(root.resolve(contents[i * 2]), contents[i * 2 + 1]);
+            sources[i] = new SourceFile(dir, file, Files.readAttributes(file, BasicFileAttributes.class), false);
+        }
+        return List.of(sources);
+    }
+
+    /**
+     * Creates a build cache with the given sources in its key.
+     */
+    private BuildCache cache(List<SourceFile> sources) throws IOException {
+        var cache = new BuildCache(directory, Long.MAX_VALUE, List.of(output), null, logger);
+        cache.addSourcesToKey(sources);
+        return cache;
+    }
+
+    /**
+     * Verifies that a full compilation after a restore does not alter the cache entry.
+     * The compiler overwrites the existing class files in place, which would write through
+     * the restored files if they were sharing their content with the cache.
+     *
+     * @throws IOException if an error occurred while reading or writing the files
+     */
+    @Test
+    public void testRecompileAfterRestore() throws IOException {
+        final byte[] original = {(byte) 0xCA, (byte) 0xFE, 1};
+        final Path classFile = Files.write(output.resolve("A.class"), original);
+        cache("inputs").store(List.of(classFile), List.of());
+
+        Files.delete(classFile);
+        assertTrue(cache("inputs").restore(List.of()));
+        Files.write(classFile, new byte[] {(byte) 0xCA, (byte) 0xFE, 2});
+
+        Files.delete(classFile);
+        assertTrue(cache("inputs").restore(List.of()));
+        assertArrayEquals(original, Files.readAllBytes(classFile));
+        verify(logger, never()).warn(any(CharSequence.class));
+    }
+
+    /**
+     * Verifies that switching back to a previous version of the sources restores the previous outputs,
+     * while a version never compiled before is a cache miss.
+     *
+     * @throws IOException if an error occurred while reading or writing the files
+     */
+    @Test
+    public void testBranchSwitch() throws IOException {
+        final Path classFile = output.resolve("A.class");
+        final byte[] master = {(byte) 0xCA, (byte) 0xFE, 1};
+        final byte[] branch = {(byte) 0xCA, (byte) 0xFE, 2};
+        Files.write(classFile, master);
+        cache(sources("A.java", "class A {}")).store(List.of(classFile), List.of());
+
+        List<SourceFile> sources = sources("A.java", "class A { int field; }");
+        assertFalse(cache(sources).restore(sources));
+        Files.write(classFile, branch);
+        cache(sources).store(List.of(classFile), List.of());
+
+        sources = sources("A.java", "class A {}");
+        assertTrue(cache(sources).restore(sources));
+        assertArrayEquals(master, Files.readAllBytes(classFile));
+
+        sources = sources("A.java", "class A { int field; }");
+        assertTrue(cache(sources).restore(sources));
+        assertArrayEquals(branch, Files.readAllBytes(classFile));
+        verify(logger, never()).warn(any(CharSequence.class));
+    }
+
+    /**
+     * Verifies that the least recently used entries are evicted when the cache exceeds its maximal size,
+     * and that restoring an entry makes it recently used.
+     *
+     * @throws IOException if an error occurred while reading or writing the files
+     */
+    @Test
+    public void testEviction() throws IOException {
+        final long maxSize = 250;
+        final long now = System.currentTimeMillis();
+        final Path first = store("first", 100, maxSize);
+        Files.setLastModifiedTime(first, FileTime.fromMillis(now - 20000));
+        final Path second = store("second", 100, maxSize);
+        Files.setLastModifiedTime(second, FileTime.fromMillis(now - 10000));
+        assertTrue(cache("first", maxSize).restore(List.of()));
+
+        final Path third = store("third", 100, maxSize);
+        assertTrue(Files.isDirectory(first));
+        assertFalse(Files.exists(second));
+        assertTrue(Files.isDirectory(third));
+        assertFalse(cache("second", maxSize).restore(List.of()));
+    }
+
+    /**
+     * Verifies that an entry modified after it has been stored is discarded with a warning,
+     * and that the output directory is not modified.
+     *
+     * @throws IOException if an error occurred while reading or writing the files
+     */
+    @Test
+    public void testCorruptedEntry() throws IOException {
+        final Path entry = store("inputs", 10, Long.MAX_VALUE);
+        Files.write(entry.resolve("0").resolve("inputs.class"), new byte[] {1, 2, 3});
+        Files.delete(output.resolve("inputs.class"));
+
+        assertFalse(cache("inputs").restore(List.of()));
+        assertFalse(Files.exists(entry));
+        assertFalse(Files.exists(output.resolve("inputs.class")));
+        verify(logger).warn(any(CharSequence.class));
+    }
+
+    /**
+     * Verifies that the output files of each source file are given back when an entry is restored.
+     * This information is needed by the next incremental build for deleting the outputs of removed sources.
+     *
+     * @throws IOException if an error occurred while reading or writing the files
+     */
+    @Test
+    public void testOutputsOfSources() throws IOException {
+        final Path a = Files.write(output.resolve("A.class"), new byte[] {1});
+        final Path inner = Files.write(output.resolve("A$Inner.class"), new byte[] {2});
+        final Path b = Files.write(output.resolve("B.class"), new byte[] {3});
+        List<SourceFile> sources = sources("A.java", "class A { class Inner {} }", "B.java", "class B {}");
+        sources.get(0).setOutputFiles(List.of(a, inner));
+        sources.get(1).setOutputFiles(List.of(b));
+        cache(sources).store(List.of(a, inner, b), sources);
+        for (Path file : List.of(a, inner, b)) {
+            Files.delete(file);
+        }
+
+        sources = sources("A.java", "class A { class Inner {} }", "B.java", "class B {}");
+        assertTrue(cache(sources).restore(sources));
+        assertEquals(List.of(a, inner), sources.get(0).getOutputFiles());
+        assertEquals(List.of(b), sources.get(1).getOutputFiles());
+        assertTrue(Files.isRegularFile(inner));
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugin.compiler;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests the build stamp written in the output directory of a module after compilation.
+ */
+public class BuildStampTestCase {
+    /**
+     * Directory where to create the output directory and the stamp.
+     */
+    @TempDir
+    Path tempDir;
+
+    /**
+     * The directory of the compiled classes.
+     */
+    private Path output;
+
+    /**
+     * Compiles a small package in the output directory.
+     *
+     * @throws IOException if an error occurred while writing the files
+     */
+    @BeforeEach
+    public void compile() throws IOException {
+        output = tempDir.resolve("classes");
+        TestSources.compile(
+                output,
+                Map.of(
+                        "p/A.java", "package p; public class A { public int value() { return 1; } }",
+                        "p/B.java", "package p; class B { int count; }"));
+    }
+
+    /**
+     * Moves the modification time of the stamp before the modification time of the output directory,
+     * as if a tool modified the directory after the stamp was written.
+     */
+    private void makeStampOlder() throws IOException {
+        final FileTime time = Files.getLastModifiedTime(output);
+        Files.setLastModifiedTime(BuildStamp.file(output), FileTime.fromMillis(time.toMillis() - 10000));
+    }
+
+    /**
+     * Verifies that a stamp can be read after it has been written, and that its fingerprint
+     * is the same as the fingerprint computed by scanning the directory.
+     *
+     * @throws IOException if an error occurred while reading or writing the files
+     */
+    @Test
+    public void testRoundTrip() throws IOException {
+        assertNull(BuildStamp.read(output));
+        BuildStamp.write(output, null, 1000, null);
+        final BuildStamp stamp = BuildStamp.read(output);
+        assertNotNull(stamp);
+        assertEquals(1000, stamp.generation);
+        assertEquals(ClassScanner.fingerprint(output), stamp.fingerprint);
+    }
+
+    /**
+     * Verifies that the stamp is deleted before compilation, and that the generation increases
+     * even if the clock went backward.
+     *
+     * @throws IOException if an error occurred while reading or writing the files
+     */
+    @Test
+    public void testInvalidate() throws IOException {
+        BuildStamp.write(output, null, 1000, null);
+        final BuildStamp previous = BuildStamp.invalidate(output);
+        assertNotNull(previous);
+        assertFalse(Files.exists(BuildStamp.file(output)));
+        assertNull(BuildStamp.read(output));
+
+        BuildStamp.write(output, previous, 500, Set.of());
+        final BuildStamp stamp = BuildStamp.read(output);
+        assertEquals(1001, stamp.generation);
+        assertEquals(previous.fingerprint, stamp.fingerprint);
+    }
+
+    /**
+     * Verifies that the fingerprint is updated when a class written by the compiler has a new member.
+     *
+     * @throws IOException if an error occurred while reading or writing the files
+     */
+    @Test
+    public void testIncrementalUpdate() throws IOException {
+        BuildStamp.write(output, null, 1000, null);
+        final BuildStamp previous = BuildStamp.invalidate(output);
+        TestSources.compile(output, Map.of("p/B.java", "package p; class B { int count; int size; }"));
+        BuildStamp.write(output, previous, 2000, Set.of(output.resolve("p").resolve("B.class")));
+        final BuildStamp stamp = BuildStamp.read(output);
+        assertNotEquals(previous.fingerprint, stamp.fingerprint);
+        assertEquals(ClassScanner.fingerprint(output), stamp.fingerprint);
+    }
+
+    /**
+     * Verifies that a stamp older than the output directory is checked against the class files.
+     * The stamp is still trusted if the class files did not change, but not if a class file has been added.
+     *
+     * @throws IOException if an error occurred while reading or writing the files
+     */
+    @Test
+    public void testDirectoryModifiedAfterStamp() throws IOException {
+        BuildStamp.write(output, null, 1000, null);
+        makeStampOlder();
+        assertNotNull(BuildStamp.read(output));
+
+        Files.copy(output.resolve("p").resolve("B.class"), output.resolve("C.class"));
+        makeStampOlder();
+        assertNull(BuildStamp.read(output));
+    }
+
+    /**
+     * Verifies that a stamp which is not older than the output directory is trusted without listing
+     * the class files. The class files of a sub-directory are modified without changing the modification
+     * time of the output directory, which is not detected.
+     *
+     * @throws IOException if an error occurred while reading or writing the files
+     */
+    @Test
+    public void testTrustedStamp() throws IOException {
+        BuildStamp.write(output, null, 1000, null);
+        final FileTime time = Files.getLastModifiedTime(output);
+        Files.copy(output.resolve("p").resolve("B.class"), output.resolve("p").resolve("C.class"));
+        Files.setLastModifiedTime(output, time);
+        assertTrue(Files.getLastModifiedTime(BuildStamp.file(output)).compareTo(time) >= 0);
+        assertNotNull(BuildStamp.read(output));
+    }
+}
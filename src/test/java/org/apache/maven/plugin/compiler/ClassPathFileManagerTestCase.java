@@ -0,0 +1,240 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugin.compiler;
+
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.maven.api.Event;
+import org.apache.maven.api.EventType;
+import org.apache.maven.api.Session;
+import org.apache.maven.api.plugin.testing.stubs.SessionMock;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Tests the listing and lookup of class-path files with the JAR files cached for the session.
+ * The class-path contains a directory, a JAR file with a class of the same name as in the directory,
+ * and a multi-release JAR file.
+ */
+public class ClassPathFileManagerTestCase {
+    /**
+     * Directory where to create the class-path elements.
+     */
+    @TempDir
+    Path tempDir;
+
+    /**
+     * The session which holds the opened JAR files.
+     */
+    private Session session;
+
+    /**
+     * The JAR files opened in the session.
+     */
+    private JarArchives archives;
+
+    /**
+     * The standard file manager wrapped by the tested file manager.
+     */
+    private StandardJavaFileManager standard;
+
+    /**
+     * The file managers to release after the test.
+     */
+    private final List<ClassPathFileManager> created = new ArrayList<>();
+
+    /**
+     * Compiles the class-path elements and declares them to the standard file manager.
+     *
+     * @throws IOException if an error occurred while creating the files
+     */
+    @BeforeEach
+    public void createClassPath() throws IOException {
+        session = SessionMock.getMockSession(tempDir.resolve("repository").toString());
+        archives = JarArchives.forSession(session);
+
+        final Path directory = tempDir.resolve("directory").resolve("classes");
+        TestSources.compile(
+                directory, Map.of("p/A.java", "package p; public class A { public void fromDirectory() {} }"));
+
+        final Path library = tempDir.resolve("library").resolve("classes");
+        TestSources.compile(
+                library,
+                Map.of(
+                        "p/A.java", "package p; public class A { public void fromJar() {} }",
+                        "p/Other.java", "package p; public class Other {}"));
+
+        final Path multiRelease = tempDir.resolve("multi-release").resolve("classes");
+        TestSources.compile(multiRelease, Map.of("m/M.java", "package m; public class M {}"));
+        final Path java11 = tempDir.resolve("java11").resolve("classes");
+        TestSources.compile(java11, Map.of("m/M.java", "package m; public class M { public void java11() {} }"));
+        final Path versioned = multiRelease.resolve("META-INF/versions/11/m/M.class");
+        Files.createDirectories(versioned.getParent());
+        Files.copy(java11.resolve("m/M.class"), versioned);
+        Files.writeString(multiRelease.resolve("META-INF").resolve("MANIFEST.MF"), "Manifest-Version: 1.0\n"
+                + "Multi-Release: true\n");
+
+        standard = ToolProvider.getSystemJavaCompiler().getStandardFileManager(null, null, null);
+        standard.setLocationFromPaths(
+                StandardLocation.CLASS_PATH,
+                List.of(
+                        directory,
+                        TestSources.jar(library, tempDir.resolve("library.jar")),
+                        TestSources.jar(multiRelease, tempDir.resolve("multi-release.jar"))));
+    }
+
+    /**
+     * Releases the file managers and closes the JAR files as Maven does at the end of the session.
+     *
+     * @throws IOException if an error occurred while closing the standard file manager
+     */
+    @AfterEach
+    public void endSession() throws IOException {
+        for (ClassPathFileManager fileManager : created) {
+            fileManager.release();
+        }
+        standard.close();
+        final Event event = mock(Event.class);
+        doReturn(EventType.SESSION_ENDED).when(event).getType();
+        doReturn(session).when(event).getSession();
+        archives.onEvent(event);
+    }
+
+    /**
+     * Creates a file manager for the given compiler options.
+     */
+    private ClassPathFileManager fileManager(String... options) {
+        final var fileManager = new ClassPathFileManager(standard, archives, null, List.of(options), null);
+        created.add(fileManager);
+        return fileManager;
+    }
+
+    /**
+     * {@return the content of the given file}.
+     */
+    private static byte[] content(JavaFileObject file) throws IOException {
+        try (InputStream in = file.openInputStream()) {
+            return in.readAllBytes();
+        }
+    }
+
+    /**
+     * {@return the content of the given class file of the temporary directory}.
+     */
+    private byte[] content(String path) throws IOException {
+        return Files.readAllBytes(tempDir.resolve(path));
+    }
+
+    /**
+     * Verifies that a class is searched in class-path order, and only in the elements
+     * which may contain its package.
+     *
+     * @throws IOException if an error occurred while reading the files
+     */
+    @Test
+    public void testLookup() throws IOException {
+        final ClassPathFileManager fileManager = fileManager();
+        final JavaFileObject a =
+                fileManager.getJavaFileForInput(StandardLocation.CLASS_PATH, "p.A", JavaFileObject.Kind.CLASS);
+        assertArrayEquals(content("directory/classes/p/A.class"), content(a));
+        assertEquals("p.A", fileManager.inferBinaryName(StandardLocation.CLASS_PATH, a));
+
+        final JavaFileObject other =
+                fileManager.getJavaFileForInput(StandardLocation.CLASS_PATH, "p.Other", JavaFileObject.Kind.CLASS);
+        assertArrayEquals(content("library/classes/p/Other.class"), content(other));
+        assertNull(fileManager.getJavaFileForInput(
+                StandardLocation.CLASS_PATH, "p.Missing", JavaFileObject.Kind.CLASS));
+        assertNull(fileManager.getJavaFileForInput(StandardLocation.CLASS_PATH, "x.A", JavaFileObject.Kind.CLASS));
+    }
+
+    /**
+     * Verifies the listing of a package, with and without the sub-packages.
+     *
+     * @throws IOException if an error occurred while reading the files
+     */
+    @Test
+    public void testList() throws IOException {
+        final ClassPathFileManager fileManager = fileManager();
+        final var names = new HashSet<String>();
+        int count = 0;
+        for (JavaFileObject file : fileManager.list(
+                StandardLocation.CLASS_PATH, "p", Set.of(JavaFileObject.Kind.CLASS), false)) {
+            names.add(fileManager.inferBinaryName(StandardLocation.CLASS_PATH, file));
+            count++;
+        }
+        assertEquals(Set.of("p.A", "p.Other"), names);
+        assertEquals(3, count, "The class in the JAR file is hidden by the directory, but still listed.");
+
+        names.clear();
+        for (JavaFileObject file :
+                fileManager.list(StandardLocation.CLASS_PATH, "", Set.of(JavaFileObject.Kind.CLASS), true)) {
+            names.add(fileManager.inferBinaryName(StandardLocation.CLASS_PATH, file));
+        }
+        assertTrue(names.containsAll(Set.of("p.A", "p.Other", "m.M")), names.toString());
+    }
+
+    /**
+     * Verifies that the entries of a multi-release JAR file are selected according the target release.
+     *
+     * @throws IOException if an error occurred while reading the files
+     */
+    @Test
+    public void testMultiRelease() throws IOException {
+        JavaFileObject m = fileManager("--release", "17")
+                .getJavaFileForInput(StandardLocation.CLASS_PATH, "m.M", JavaFileObject.Kind.CLASS);
+        assertArrayEquals(content("multi-release/classes/META-INF/versions/11/m/M.class"), content(m));
+
+        m = fileManager("--release", "8")
+                .getJavaFileForInput(StandardLocation.CLASS_PATH, "m.M", JavaFileObject.Kind.CLASS);
+        assertArrayEquals(content("multi-release/classes/m/M.class"), content(m));
+    }
+
+    /**
+     * Verifies the target release inferred from the compiler options.
+     */
+    @Test
+    public void testRelease() {
+        assertEquals(11, ClassPathFileManager.release(List.of("--release", "11")));
+        assertEquals(17, ClassPathFileManager.release(List.of("--release=17")));
+        assertEquals(8, ClassPathFileManager.release(List.of("-target", "1.8")));
+        assertEquals(Runtime.version().feature(), ClassPathFileManager.release(List.of("-g")));
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugin.compiler;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.maven.api.Event;
+import org.apache.maven.api.EventType;
+import org.apache.maven.api.Session;
+import org.apache.maven.api.plugin.testing.stubs.SessionMock;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Tests the persistent index of the packages contained in the JAR files of the class-path.
+ */
+public class ClassPathIndexTestCase {
+    /**
+     * Directory where to create the JAR files and the index.
+     */
+    @TempDir
+    Path tempDir;
+
+    /**
+     * The session which holds the opened JAR files.
+     */
+    private Session session;
+
+    /**
+     * The JAR files opened in the session.
+     */
+    private JarArchives archives;
+
+    /**
+     * A JAR file containing the {@code p} package.
+     */
+    private Path first;
+
+    /**
+     * A JAR file containing the {@code q} package and declaring an annotation processor.
+     */
+    private Path second;
+
+    /**
+     * The file where the index is saved.
+     */
+    private Path file;
+
+    /**
+     * Creates the JAR files.
+     *
+     * @throws IOException if an error occurred while creating the files
+     */
+    @BeforeEach
+    public void createJars() throws IOException {
+        session = SessionMock.getMockSession(tempDir.resolve("repository").toString());
+        archives = JarArchives.forSession(session);
+        first = jar("first", "p/A.java", "package p; public class A {}");
+        second = jar("second", "q/B.java", "package q; public class B {}");
+        file = tempDir.resolve("status").resolve("default-compile.classpath");
+    }
+
+    /**
+     * Closes the JAR files as Maven does at the end of the session.
+     */
+    @AfterEach
+    public void endSession() {
+        final Event event = mock(Event.class);
+        doReturn(EventType.SESSION_ENDED).when(event).getType();
+        doReturn(session).when(event).getSession();
+        archives.onEvent(event);
+    }
+
+    /**
+     * Compiles the given source and archives the result in a JAR file of the given name.
+     * If the name is {@code "second"}, the JAR file declares also an annotation processor.
+     */
+    private Path jar(String name, String source, String content) throws IOException {
+        final Path output = tempDir.resolve(name).resolve("classes");
+        TestSources.compile(output, Map.of(source, content));
+        if (name.equals("second")) {
+            final Path service = output.resolve("META-INF/services/javax.annotation.processing.Processor");
+            Files.createDirectories(service.getParent());
+            Files.writeString(service, "q.Processor\n");
+        }
+        return TestSources.jar(output, tempDir.resolve(name + ".jar"));
+    }
+
+    /**
+     * Verifies that the packages and the annotation processors are remembered after the index has been saved,
+     * without opening the JAR files again.
+     *
+     * @throws IOException if an error occurred while reading or writing the files
+     */
+    @Test
+    public void testRoundTrip() throws IOException {
+        ClassPathIndex index = ClassPathIndex.read(file, RelocatablePaths.NONE);
+        assertEquals(List.of(first, second), index.unindexed(List.of(first, second)));
+        assertEquals(Set.of("p"), index.packages(first, archives));
+        assertTrue(index.hasProcessors(List.of(first, second), archives));
+        index.write();
+
+        index = ClassPathIndex.read(file, RelocatablePaths.NONE);
+        assertEquals(List.of(), index.unindexed(List.of(first, second)));
+        assertTrue(index.packages(second, null).contains("q")); // Would fail if the JAR file was opened.
+        assertFalse(index.hasProcessors(List.of(first), null));
+        assertTrue(index.hasProcessors(List.of(first, second), null));
+    }
+
+    /**
+     * Verifies that a modified JAR file is opened again for updating the index.
+     *
+     * @throws IOException if an error occurred while reading or writing the files
+     */
+    @Test
+    public void testModifiedJar() throws IOException {
+        ClassPathIndex index = ClassPathIndex.read(file, RelocatablePaths.NONE);
+        index.packages(first, archives);
+        index.write();
+
+        final FileTime time = Files.getLastModifiedTime(first);
+        jar("first", "r/C.java", "package r; public class C {}");
+        Files.setLastModifiedTime(first, FileTime.fromMillis(time.toMillis() + 2000));
+        index = ClassPathIndex.read(file, RelocatablePaths.NONE);
+        assertEquals(List.of(first), index.unindexed(List.of(first)));
+        assertEquals(Set.of("p", "r"), index.packages(first, archives));
+    }
+
+    /**
+     * Verifies that only the JAR files used by the last compilation are saved.
+     *
+     * @throws IOException if an error occurred while reading or writing the files
+     */
+    @Test
+    public void testRemovedJar() throws IOException {
+        ClassPathIndex index = ClassPathIndex.read(file, RelocatablePaths.NONE);
+        index.hasProcessors(List.of(first, second), archives);
+        index.write();
+
+        index = ClassPathIndex.read(file, RelocatablePaths.NONE);
+        index.hasProcessors(List.of(first), null);
+        index.write();
+
+        index = ClassPathIndex.read(file, RelocatablePaths.NONE);
+        assertEquals(List.of(second), index.unindexed(List.of(first, second)));
+    }
+
+    /**
+     * Verifies that the annotation processors declared in a directory are detected.
+     *
+     * @throws IOException if an error occurred while reading the files
+     */
+    @Test
+    public void testDirectoryProcessors() throws IOException {
+        final ClassPathIndex index = ClassPathIndex.read(file, RelocatablePaths.NONE);
+        assertFalse(index.hasProcessors(List.of(tempDir.resolve("first").resolve("classes")), archives));
+        assertTrue(index.hasProcessors(List.of(tempDir.resolve("second").resolve("classes")), archives));
+    }
+}
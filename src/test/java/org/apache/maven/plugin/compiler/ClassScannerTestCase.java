@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugin.compiler;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.objectweb.asm.ClassReader;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests the fingerprints and the references computed by {@link ClassScanner}.
+ * Each test compiles two versions of a class and compares their fingerprints.
+ */
+public class ClassScannerTestCase {
+    /**
+     * Directory where to compile the classes.
+     */
+    @TempDir
+    Path tempDir;
+
+    /**
+     * The source of the class which is modified by the tests.
+     */
+    private static final String ORIGINAL = "package p;\n"
+            + "public class A {\n"
+            + "    public static final int CONSTANT = 1;\n"
+            + "    private int secret;\n"
+            + "    public int value() { return 1; }\n"
+            + "    void helper() {}\n"
+            + "}\n";
+
+    /**
+     * Fingerprints of the output directory and of a JAR file containing the compiled class.
+     *
+     * @param directory fingerprint of the directory, which includes the package-private members
+     * @param jar fingerprint of the JAR file, which includes only the public and protected members
+     */
+    private record Fingerprints(long directory, long jar) {}
+
+    /**
+     * Compiles the given source of class {@code p.A} and computes the fingerprints of the result.
+     */
+    private Fingerprints compile(String name, String source) throws IOException {
+        final Path output = tempDir.resolve(name).resolve("classes");
+        TestSources.compile(output, Map.of("p/A.java", source));
+        final Path jar = TestSources.jar(output, tempDir.resolve(name).resolve("a.jar"));
+        return new Fingerprints(ClassScanner.fingerprint(output), ClassScanner.fingerprint(jar));
+    }
+
+    /**
+     * Verifies that changes in method bodies and private members do not change the fingerprints.
+     * Such changes do not require the recompilation of dependent classes.
+     *
+     * @throws IOException if an error occurred while compiling or reading the classes
+     */
+    @Test
+    public void testImplementationChange() throws IOException {
+        final Fingerprints original = compile("original", ORIGINAL);
+        final Fingerprints modified = compile(
+                "modified",
+                ORIGINAL.replace("return 1;", "return secret + 2;").replace("int secret", "short secret"));
+        assertEquals(original, modified);
+    }
+
+    /**
+     * Verifies that a change in the signature of a public method changes both fingerprints.
+     *
+     * @throws IOException if an error occurred while compiling or reading the classes
+     */
+    @Test
+    public void testSignatureChange() throws IOException {
+        final Fingerprints original = compile("original", ORIGINAL);
+        final Fingerprints modified =
+                compile("modified", ORIGINAL.replace("public int value()", "public long value()"));
+        assertNotEquals(original.directory(), modified.directory());
+        assertNotEquals(original.jar(), modified.jar());
+    }
+
+    /**
+     * Verifies that a change in the value of a constant changes both fingerprints,
+     * because constant values are inlined in the dependent classes.
+     *
+     * @throws IOException if an error occurred while compiling or reading the classes
+     */
+    @Test
+    public void testConstantChange() throws IOException {
+        final Fingerprints original = compile("original", ORIGINAL);
+        final Fingerprints modified = compile("modified", ORIGINAL.replace("CONSTANT = 1", "CONSTANT = 2"));
+        assertNotEquals(original.directory(), modified.directory());
+        assertNotEquals(original.jar(), modified.jar());
+    }
+
+    /**
+     * Verifies that a change in a package-private member changes the fingerprint of the directory,
+     * which may be accessed by tests in the same package, but not the fingerprint of the JAR file.
+     *
+     * @throws IOException if an error occurred while compiling or reading the classes
+     */
+    @Test
+    public void testPackagePrivateChange() throws IOException {
+        final Fingerprints original = compile("original", ORIGINAL);
+        final Fingerprints modified = compile("modified", ORIGINAL.replace("void helper()", "void helper(int n)"));
+        assertNotEquals(original.directory(), modified.directory());
+        assertEquals(original.jar(), modified.jar());
+    }
+
+    /**
+     * Verifies that the scan for the dependency graph collects the references from method bodies.
+     *
+     * @throws IOException if an error occurred while compiling or reading the classes
+     */
+    @Test
+    public void testReferences() throws IOException {
+        final Path output = tempDir.resolve("classes");
+        TestSources.compile(
+                output,
+                Map.of(
+                        "p/B.java",
+                        "package p; class B extends Thread { void run(int n) { new java.util.ArrayList<>(); } }"));
+        final ClassScanner scanner =
+                ClassScanner.scan(new ClassReader(Files.readAllBytes(output.resolve("p").resolve("B.class"))));
+        assertEquals("B.java", scanner.sourceName);
+        assertEquals("java/lang/Thread", scanner.supertypes[0]);
+        assertTrue(scanner.references.contains("java/util/ArrayList"), "Reference from a method body.");
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugin.compiler;
+
+import javax.annotation.processing.Processor;
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.maven.api.Event;
+import org.apache.maven.api.EventType;
+import org.apache.maven.api.Session;
+import org.apache.maven.api.plugin.testing.stubs.SessionMock;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Tests the class loaders of annotation processors shared by the compilations of a session.
+ */
+public class ProcessorLoadersTestCase {
+    /**
+     * Source code of the annotation processor.
+     */
+    private static final String PROCESSOR = """
+            package q;
+
+            import java.util.Set;
+            import javax.annotation.processing.*;
+            import javax.lang.model.element.TypeElement;
+
+            @SupportedAnnotationTypes("*")
+            public class P extends AbstractProcessor {
+                @Override
+                public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment env) {
+                    return false;
+                }
+            }
+            """;
+
+    /**
+     * Directory where to create the processor path.
+     */
+    @TempDir
+    Path tempDir;
+
+    /**
+     * The session which holds the class loaders.
+     */
+    private Session session;
+
+    /**
+     * The class loaders created in the session.
+     */
+    private ProcessorLoaders loaders;
+
+    /**
+     * The compiler which would execute the processors.
+     */
+    private JavaCompiler compiler;
+
+    /**
+     * Creates the session and the cache of class loaders.
+     */
+    @BeforeEach
+    public void createSession() {
+        session = SessionMock.getMockSession(tempDir.resolve("repository").toString());
+        loaders = ProcessorLoaders.forSession(session);
+        compiler = ToolProvider.getSystemJavaCompiler();
+    }
+
+    /**
+     * Closes the class loaders as Maven does at the end of the session.
+     */
+    @AfterEach
+    public void endSession() {
+        final Event event = mock(Event.class);
+        doReturn(EventType.SESSION_ENDED).when(event).getType();
+        doReturn(session).when(event).getSession();
+        loaders.onEvent(event);
+    }
+
+    /**
+     * Compiles the annotation processor and archives it in a JAR file declaring it as a service.
+     *
+     * @param modular whether to declare the processor in a module descriptor
+     */
+    private Path processorJar(boolean modular) throws IOException {
+        final Path output = tempDir.resolve("processor").resolve("classes");
+        final var sources = new HashMap<String, String>(Map.of("q/P.java", PROCESSOR));
+        if (modular) {
+            sources.put(
+                    "module-info.java",
+                    "module q { requires java.compiler; provides javax.annotation.processing.Processor with q.P; }");
+        } else {
+            final Path service = output.resolve("META-INF/services/javax.annotation.processing.Processor");
+            Files.createDirectories(service.getParent());
+            Files.writeString(service, "q.P\n");
+        }
+        TestSources.compile(output, sources);
+        return TestSources.jar(output, tempDir.resolve("processor.jar"));
+    }
+
+    /**
+     * Verifies that the same processor path gives the same class loader, and that each discovery creates
+     * new processor instances of classes loaded only once.
+     *
+     * @throws IOException if an error occurred while creating the processor path
+     */
+    @Test
+    public void testSharedLoader() throws IOException {
+        final List<Path> paths = List.of(processorJar(false));
+        assertSame(loaders, ProcessorLoaders.forSession(session));
+        final ProcessorLoaders.Loader loader = loaders.get(compiler, false, paths);
+        assertSame(loader, loaders.get(compiler, false, List.copyOf(paths)));
+        final Processor first = find(loader.newProcessors(null));
+        final Processor second = find(loader.newProcessors(null));
+        assertNotSame(first, second);
+        assertSame(first.getClass(), second.getClass());
+    }
+
+    /**
+     * {@return the processor compiled by this test among the given processors}.
+     * Other processors may be inherited from the parent class loader.
+     */
+    private static Processor find(List<Processor> processors) {
+        return processors.stream()
+                .filter((p) -> p.getClass().getName().equals("q.P"))
+                .findFirst()
+                .orElseThrow();
+    }
+
+    /**
+     * Verifies that the processors can be selected by name, and that an unknown name
+     * lets the compiler create the processors itself.
+     *
+     * @throws IOException if an error occurred while creating the processor path
+     */
+    @Test
+    public void testNamedProcessors() throws IOException {
+        final ProcessorLoaders.Loader loader = loaders.get(compiler, false, List.of(processorJar(false)));
+        final List<Processor> processors = loader.newProcessors(" q.P ");
+        assertNotNull(processors);
+        assertEquals("q.P", processors.get(0).getClass().getName());
+        assertNull(loader.newProcessors("q.Missing"));
+    }
+
+    /**
+     * Verifies that a modified JAR file and the end of the session give a new class loader.
+     *
+     * @throws IOException if an error occurred while creating or modifying the processor path
+     */
+    @Test
+    public void testModifiedJar() throws IOException {
+        final Path jar = processorJar(false);
+        final ProcessorLoaders.Loader loader = loaders.get(compiler, false, List.of(jar));
+        Files.setLastModifiedTime(jar, FileTime.fromMillis(Files.getLastModifiedTime(jar).toMillis() - 10000));
+        final ProcessorLoaders.Loader modified = loaders.get(compiler, false, List.of(jar));
+        assertNotSame(loader, modified);
+        endSession();
+        assertNotSame(modified, loaders.get(compiler, false, List.of(jar)));
+    }
+
+    /**
+     * Verifies that the processors on the processor module-path are discovered and selected by name.
+     *
+     * @throws IOException if an error occurred while creating the processor path
+     */
+    @Test
+    public void testModularProcessors() throws IOException {
+        final ProcessorLoaders.Loader loader = loaders.get(compiler, true, List.of(processorJar(true)));
+        final List<Processor> processors = loader.newProcessors(null);
+        assertEquals(1, processors.size());
+        assertEquals("q", processors.get(0).getClass().getModule().getName());
+        assertEquals(1, loader.newProcessors("q.P").size());
+        assertNull(loader.newProcessors("q.Missing"));
+    }
+}
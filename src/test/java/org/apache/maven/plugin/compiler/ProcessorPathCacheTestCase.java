@@ -0,0 +1,198 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugin.compiler;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.api.DependencyCoordinates;
+import org.apache.maven.api.RemoteRepository;
+import org.apache.maven.api.Session;
+import org.apache.maven.api.plugin.testing.stubs.SessionMock;
+import org.apache.maven.api.services.DependencyResolver;
+import org.apache.maven.api.services.DependencyResolverRequest;
+import org.apache.maven.api.services.DependencyResolverResult;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Tests the cache of annotation processor paths.
+ */
+@SuppressWarnings("deprecation")
+public class ProcessorPathCacheTestCase {
+    /**
+     * Directory of the local repository of the session.
+     */
+    @TempDir
+    Path tempDir;
+
+    /**
+     * The session which holds the cache.
+     */
+    private Session session;
+
+    /**
+     * The resolver, which counts the number of resolutions.
+     */
+    private DependencyResolver resolver;
+
+    /**
+     * The coordinates of the annotation processor.
+     */
+    private List<DependencyCoordinates> coordinates;
+
+    /**
+     * The remote repositories of the project.
+     */
+    private List<RemoteRepository> repositories;
+
+    /**
+     * Creates the session, the resolver and the coordinates of an annotation processor.
+     */
+    @BeforeEach
+    public void createSession() {
+        session = SessionMock.getMockSession(tempDir.resolve("repository").toString());
+        resolver = mock(DependencyResolver.class);
+        doReturn(session).when(session).withRemoteRepositories(any());
+        doReturn(resolver).when(session).getService(DependencyResolver.class);
+        coordinates = List.of(coordinates("org.test:processor:jar:1.0"));
+        repositories = List.of(repository("central", "https://repo.maven.apache.org/maven2"));
+    }
+
+    /**
+     * {@return mock coordinates of the given identifier, without exclusions}.
+     */
+    private static DependencyCoordinates coordinates(String id) {
+        final DependencyCoordinates c = mock(DependencyCoordinates.class);
+        doReturn(id).when(c).getId();
+        doReturn(List.of()).when(c).getExclusions();
+        return c;
+    }
+
+    /**
+     * {@return a mock remote repository of the given identifier and URL}.
+     */
+    private static RemoteRepository repository(String id, String url) {
+        final RemoteRepository repository = mock(RemoteRepository.class);
+        doReturn(id).when(repository).getId();
+        doReturn(url).when(repository).getUrl();
+        return repository;
+    }
+
+    /**
+     * {@return a mock result with the given exceptions and a path of one element}.
+     */
+    private DependencyResolverResult result(List<Exception> exceptions) {
+        final DependencyResolverResult result = mock(DependencyResolverResult.class);
+        doReturn(exceptions).when(result).getExceptions();
+        doReturn(List.of(tempDir.resolve("processor.jar"))).when(result).getPaths();
+        return result;
+    }
+
+    /**
+     * Verifies that the same coordinates are resolved only once per session, that the returned lists
+     * are modifiable copies, and that different coordinates or repositories are resolved separately.
+     */
+    @Test
+    public void testSameCoordinates() {
+        doReturn(result(List.of())).when(resolver).resolve(any(DependencyResolverRequest.class));
+        final ProcessorPathCache cache = ProcessorPathCache.forSession(session);
+        assertSame(cache, ProcessorPathCache.forSession(session));
+        final List<Path> paths = cache.resolve(session, coordinates, List.of(), repositories);
+        assertEquals(List.of(tempDir.resolve("processor.jar")), paths);
+        paths.add(tempDir.resolve("other.jar"));
+        final List<DependencyCoordinates> same = List.of(coordinates("org.test:processor:jar:1.0"));
+        assertEquals(1, cache.resolve(session, same, List.of(), repositories).size());
+        verify(resolver, times(1)).resolve(any(DependencyResolverRequest.class));
+
+        cache.resolve(session, List.of(coordinates("org.test:processor:jar:2.0")), List.of(), repositories);
+        cache.resolve(session, coordinates, List.of(), List.of(repository("central", "https://mirror.test")));
+        verify(resolver, times(3)).resolve(any(DependencyResolverRequest.class));
+    }
+
+    /**
+     * Verifies that failed resolutions and resolutions with exceptions are not cached.
+     */
+    @Test
+    public void testFailures() {
+        final ProcessorPathCache cache = ProcessorPathCache.forSession(session);
+        doThrow(new IllegalStateException("Offline")).when(resolver).resolve(any(DependencyResolverRequest.class));
+        assertThrows(IllegalStateException.class, () -> cache.resolve(session, coordinates, List.of(), repositories));
+
+        doReturn(result(List.of(new Exception("Missing artifact"))), result(List.of()))
+                .when(resolver)
+                .resolve(any(DependencyResolverRequest.class));
+        cache.resolve(session, coordinates, List.of(), repositories);
+        cache.resolve(session, coordinates, List.of(), repositories);
+        cache.resolve(session, coordinates, List.of(), repositories);
+        verify(resolver, times(3)).resolve(any(DependencyResolverRequest.class));
+    }
+
+    /**
+     * Verifies that a thread needing the coordinates being resolved by another thread waits for the result
+     * instead of resolving the same coordinates again.
+     *
+     * @throws Exception if an error occurred while waiting for the threads
+     */
+    @Test
+    public void testConcurrentResolution() throws Exception {
+        final var started = new CountDownLatch(1);
+        final var release = new CountDownLatch(1);
+        final DependencyResolverResult result = result(List.of());
+        doAnswer((invocation) -> {
+                    started.countDown();
+                    assertTrue(release.await(10, TimeUnit.SECONDS));
+                    return result;
+                })
+                .when(resolver)
+                .resolve(any(DependencyResolverRequest.class));
+        final ProcessorPathCache cache = ProcessorPathCache.forSession(session);
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final Future<List<Path>> first =
+                    executor.submit(() -> cache.resolve(session, coordinates, List.of(), repositories));
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            final Future<List<Path>> second =
+                    executor.submit(() -> cache.resolve(session, coordinates, List.of(), repositories));
+            release.countDown();
+            assertEquals(first.get(10, TimeUnit.SECONDS), second.get(10, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+        verify(resolver, times(1)).resolve(any(DependencyResolverRequest.class));
+    }
+}
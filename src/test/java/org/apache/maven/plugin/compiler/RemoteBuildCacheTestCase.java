@@ -0,0 +1,247 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugin.compiler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.maven.api.plugin.Log;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Tests the remote tier of the build cache against an embedded HTTP server.
+ * The server keeps the uploaded bundles in memory, so the tests do not need network access.
+ */
+public class RemoteBuildCacheTestCase {
+    /**
+     * Directory where to create the output directories and the local caches.
+     */
+    @TempDir
+    Path tempDir;
+
+    /**
+     * The stand-in server for the remote cache.
+     */
+    private HttpServer server;
+
+    /**
+     * The bundles stored by the server, indexed by request path.
+     */
+    private final Map<String, byte[]> bundles = new ConcurrentHashMap<>();
+
+    /**
+     * Delay in milliseconds before the server answers, for simulating a slow server.
+     */
+    private volatile long delay;
+
+    /**
+     * Whether the server stops sending data after the response headers, for simulating a stalled transfer.
+     */
+    private volatile boolean stall;
+
+    /**
+     * Starts the stand-in server on a random port of the loopback address.
+     *
+     * @throws IOException if the server cannot be started
+     */
+    @BeforeEach
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/cache/", this::handle);
+        server.start();
+    }
+
+    /**
+     * Stops the stand-in server.
+     */
+    @AfterEach
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    /**
+     * Answers a {@code GET} or {@code PUT} request on a bundle.
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (delay != 0) {
+                TimeUnit.MILLISECONDS.sleep(delay);
+            }
+            final String path = exchange.getRequestURI().getPath();
+            switch (exchange.getRequestMethod()) {
+                case "GET": {
+                    byte[] bundle = bundles.get(path);
+                    if (bundle == null) {
+                        exchange.sendResponseHeaders(HttpURLConnection.HTTP_NOT_FOUND, -1);
+                    } else {
+                        exchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, bundle.length);
+                        try (OutputStream out = exchange.getResponseBody()) {
+                            if (stall) {
+                                out.write(bundle, 0, bundle.length / 2);
+                                out.flush();
+                                TimeUnit.SECONDS.sleep(5);
+                            }
+                            out.write(bundle);
+                        }
+                    }
+                    break;
+                }
+                case "PUT": {
+                    try (InputStream in = exchange.getRequestBody()) {
+                        bundles.put(path, in.readAllBytes());
+                    }
+                    exchange.sendResponseHeaders(HttpURLConnection.HTTP_CREATED, -1);
+                    break;
+                }
+                default: {
+                    exchange.sendResponseHeaders(HttpURLConnection.HTTP_BAD_METHOD, -1);
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * {@return the URL of the stand-in server}.
+     */
+    private String url() {
+        return "http://" + server.getAddress().getHostString() + ':' + server.getAddress().getPort() + "/cache";
+    }
+
+    /**
+     * Creates a build cache with a new local directory and the given remote tier.
+     */
+    private BuildCache cache(String name, Path output, RemoteBuildCache remote, Log logger) {
+        var cache = new BuildCache(tempDir.resolve(name), Long.MAX_VALUE, List.of(output), remote, logger);
+        cache.addToKey("same inputs");
+        return cache;
+    }
+
+    /**
+     * Verifies that an entry stored by one machine can be restored by another machine.
+     *
+     * @throws IOException if an error occurred while reading or writing the files
+     */
+    @Test
+    public void testRoundTrip() throws IOException {
+        final Log logger = mock(Log.class);
+        final Path output = Files.createDirectories(tempDir.resolve("output").resolve("p"));
+        final Path classFile = Files.write(output.resolve("A.class"), new byte[] {(byte) 0xCA, (byte) 0xFE});
+        final var remote = new RemoteBuildCache(url(), Duration.ofSeconds(10), logger);
+        cache("first", output.getParent(), remote, logger).store(List.of(classFile), List.of());
+        assertEquals(1, bundles.size());
+
+        Files.delete(classFile);
+        assertTrue(cache("second", output.getParent(), remote, logger).restore(List.of()));
+        assertTrue(Files.isRegularFile(classFile));
+        assertEquals(2, Files.size(classFile));
+        verify(logger, never()).warn(any(CharSequence.class));
+    }
+
+    /**
+     * Verifies that a missing entry is not an error.
+     *
+     * @throws IOException if an error occurred while reading or writing the files
+     */
+    @Test
+    public void testMissingEntry() throws IOException {
+        final Log logger = mock(Log.class);
+        final var remote = new RemoteBuildCache(url(), Duration.ofSeconds(10), logger);
+        assertFalse(cache("local", tempDir.resolve("output"), remote, logger).restore(List.of()));
+        verify(logger, never()).warn(any(CharSequence.class));
+    }
+
+    /**
+     * Verifies that an unreachable server degrades to a cache miss with a warning.
+     *
+     * @throws IOException if an error occurred while reading or writing the files
+     */
+    @Test
+    public void testUnreachableServer() throws IOException {
+        final Log logger = mock(Log.class);
+        final String url = url();
+        server.stop(0);
+        final var remote = new RemoteBuildCache(url, Duration.ofSeconds(10), logger);
+        assertFalse(cache("local", tempDir.resolve("output"), remote, logger).restore(List.of()));
+        verify(logger).warn(any(CharSequence.class));
+    }
+
+    /**
+     * Verifies that a slow server degrades to a cache miss with a warning.
+     *
+     * @throws IOException if an error occurred while reading or writing the files
+     */
+    @Test
+    public void testSlowServer() throws IOException {
+        final Log logger = mock(Log.class);
+        delay = 2000;
+        final var remote = new RemoteBuildCache(url(), Duration.ofMillis(200), logger);
+        assertFalse(cache("local", tempDir.resolve("output"), remote, logger).restore(List.of()));
+        verify(logger).warn(any(CharSequence.class));
+    }
+
+    /**
+     * Verifies that a server which stops sending the bundle after the response headers
+     * degrades to a cache miss with a warning, without waiting for the end of the transfer.
+     *
+     * @throws IOException if an error occurred while reading or writing the files
+     */
+    @Test
+    public void testStalledTransfer() throws IOException {
+        final Log logger = mock(Log.class);
+        final Path output = Files.createDirectories(tempDir.resolve("output"));
+        final Path classFile = Files.write(output.resolve("A.class"), new byte[] {(byte) 0xCA, (byte) 0xFE});
+        final var remote = new RemoteBuildCache(url(), Duration.ofMillis(500), logger);
+        cache("first", output, remote, logger).store(List.of(classFile), List.of());
+        assertEquals(1, bundles.size());
+
+        stall = true;
+        final long start = System.nanoTime();
+        final var other = new RemoteBuildCache(url(), Duration.ofMillis(500), logger);
+        assertFalse(cache("second", output, other, logger).restore(List.of()));
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(4), "Should not wait for the transfer.");
+        verify(logger).warn(any(CharSequence.class));
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugin.compiler;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.maven.api.JavaPathType;
+import org.apache.maven.api.PathScope;
+import org.apache.maven.api.PathType;
+import org.apache.maven.api.Project;
+import org.apache.maven.api.Session;
+import org.apache.maven.api.plugin.testing.stubs.SessionMock;
+import org.apache.maven.api.services.DependencyResolver;
+import org.apache.maven.api.services.DependencyResolverRequest;
+import org.apache.maven.api.services.DependencyResolverResult;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Tests the cache of dependency resolution results.
+ */
+public class ResolverCacheTestCase {
+    /**
+     * Directory of the local repository of the session.
+     */
+    @TempDir
+    Path tempDir;
+
+    /**
+     * The session which holds the cache.
+     */
+    private Session session;
+
+    /**
+     * The project for which to resolve the dependencies.
+     */
+    private Project project;
+
+    /**
+     * The resolver, which counts the number of resolutions.
+     */
+    private DependencyResolver resolver;
+
+    /**
+     * Creates the session, the project and the resolver.
+     */
+    @BeforeEach
+    public void createSession() {
+        session = SessionMock.getMockSession(tempDir.resolve("repository").toString());
+        project = mock(Project.class);
+        doReturn(tempDir.resolve("pom.xml")).when(project).getPomPath();
+        doReturn("org.test:project:jar:1.0").when(project).getId();
+        resolver = mock(DependencyResolver.class);
+    }
+
+    /**
+     * {@return a mock result with the given exceptions and a class-path of one element}.
+     */
+    private DependencyResolverResult result(List<Exception> exceptions) {
+        final DependencyResolverResult result = mock(DependencyResolverResult.class);
+        doReturn(exceptions).when(result).getExceptions();
+        doReturn(Map.of(JavaPathType.CLASSES, List.of(tempDir.resolve("dependency.jar"))))
+                .when(result)
+                .getDispatchedPaths();
+        return result;
+    }
+
+    /**
+     * Verifies that the same dependencies are resolved only once per session,
+     * and that a different scope or different kinds of paths are resolved separately.
+     */
+    @Test
+    public void testSameKey() {
+        final DependencyResolverResult result = result(List.of());
+        doReturn(result).when(resolver).resolve(any(DependencyResolverRequest.class));
+        final Set<PathType> types = Set.of(JavaPathType.CLASSES, JavaPathType.MODULES);
+        final ResolverCache cache = ResolverCache.forSession(session);
+        assertSame(cache, ResolverCache.forSession(session));
+        assertSame(result, cache.resolve(resolver, session, project, PathScope.MAIN_COMPILE, types));
+        assertSame(result, cache.resolve(resolver, session, project, PathScope.MAIN_COMPILE, Set.copyOf(types)));
+        verify(resolver, times(1)).resolve(any(DependencyResolverRequest.class));
+
+        cache.resolve(resolver, session, project, PathScope.TEST_COMPILE, types);
+        cache.resolve(resolver, session, project, PathScope.MAIN_COMPILE, Set.of(JavaPathType.CLASSES));
+        verify(resolver, times(3)).resolve(any(DependencyResolverRequest.class));
+    }
+
+    /**
+     * Verifies that a result with exceptions is not cached, so that the next execution resolves again.
+     */
+    @Test
+    public void testResultWithExceptions() {
+        final DependencyResolverResult failed = result(List.of(new Exception("Missing artifact")));
+        final DependencyResolverResult success = result(List.of());
+        doReturn(failed, success).when(resolver).resolve(any(DependencyResolverRequest.class));
+        final Set<PathType> types = Set.of(JavaPathType.CLASSES);
+        final ResolverCache cache = ResolverCache.forSession(session);
+        assertSame(failed, cache.resolve(resolver, session, project, PathScope.MAIN_COMPILE, types));
+        assertSame(success, cache.resolve(resolver, session, project, PathScope.MAIN_COMPILE, types));
+        assertSame(success, cache.resolve(resolver, session, project, PathScope.MAIN_COMPILE, types));
+        verify(resolver, times(2)).resolve(any(DependencyResolverRequest.class));
+    }
+
+    /**
+     * Verifies that modifications of the dispatched paths do not change the cached result.
+     */
+    @Test
+    public void testDispatchedPathsCopy() {
+        final DependencyResolverResult result = result(List.of());
+        final Map<PathType, List<Path>> paths = ResolverCache.dispatchedPaths(result);
+        assertEquals(result.getDispatchedPaths(), paths);
+        assertNotSame(result.getDispatchedPaths().get(JavaPathType.CLASSES), paths.get(JavaPathType.CLASSES));
+        paths.get(JavaPathType.CLASSES).add(tempDir.resolve("other.jar"));
+        paths.put(JavaPathType.MODULES, new ArrayList<>());
+        assertEquals(1, result.getDispatchedPaths().size());
+        assertEquals(1, result.getDispatchedPaths().get(JavaPathType.CLASSES).size());
+        assertEquals(1, ResolverCache.dispatchedPaths(result).get(JavaPathType.CLASSES).size());
+    }
+}
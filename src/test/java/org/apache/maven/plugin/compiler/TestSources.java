@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugin.compiler;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Compiles small Java sources for the tests which need real class files.
+ */
+final class TestSources {
+    /**
+     * Do not allow instantiation of this class.
+     */
+    private TestSources() {}
+
+    /**
+     * Compiles the given sources in the given output directory. The source files are written
+     * in a {@code "src"} sibling of the output directory, replacing any previous files of the same name.
+     *
+     * @param output the directory where to write the class files
+     * @param sources content of the source files, with paths relative to the source directory as keys
+     * @param options additional compiler options
+     * @throws IOException if an error occurred while writing a source file
+     */
+    static void compile(Path output, Map<String, String> sources, String... options) throws IOException {
+        final Path directory = output.resolveSibling("src");
+        final var arguments = new ArrayList<String>(List.of(options));
+        arguments.add("-d");
+        arguments.add(Files.createDirectories(output).toString());
+        for (Map.Entry<String, String> entry : sources.entrySet()) {
+            final Path file = directory.resolve(entry.getKey());
+            Files.createDirectories(file.getParent());
+            arguments.add(Files.writeString(file, entry.getValue()).toString());
+        }
+        final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        assertEquals(0, compiler.run(null, null, null, arguments.toArray(String[]::new)), "Compilation failed.");
+    }
+
+    /**
+     * Creates a JAR file with all files of the given directory.
+     *
+     * @param directory the directory of the files to archive
+     * @param jar the JAR file to create
+     * @return the given JAR file
+     * @throws IOException if an error occurred while reading or writing the files
+     */
+    static Path jar(Path directory, Path jar) throws IOException {
+        final List<Path> files;
+        try (Stream<Path> stream = Files.walk(directory)) {
+            files = stream.filter(Files::isRegularFile).sorted().toList();
+        }
+        try (OutputStream out = Files.newOutputStream(jar);
+                ZipOutputStream zip = new ZipOutputStream(out)) {
+            for (Path file : files) {
+                zip.putNextEntry(new ZipEntry(directory.relativize(file).toString().replace('\\', '/')));
+                Files.copy(file, zip);
+                zip.closeEntry();
+            }
+        }
+        return jar;
+    }
+}